@@ -0,0 +1,12 @@
+package com.simpleAnalytics.Analytics.cache;
+
+/**
+ * A cached value and the time until which it is fresh. Expired entries stay readable only when
+ * stale-while-revalidate is enabled, and only while they are being refreshed.
+ */
+record CacheEntry(Object value, long freshUntil) {
+
+    boolean isFresh() {
+        return System.currentTimeMillis() < freshUntil;
+    }
+}
@@ -0,0 +1,151 @@
+package com.simpleAnalytics.Analytics.cache;
+
+import com.simpleAnalytics.Analytics.config.AnalyticsProperties;
+import com.simpleAnalytics.Analytics.exception.InvalidQueryException;
+import com.simpleAnalytics.Analytics.model.dto.Cardinality;
+import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
+import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import com.simpleAnalytics.Analytics.model.dto.request.AnalyticsQueryRequest;
+import com.simpleAnalytics.Analytics.repository.AnalyticsQueryBuilder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Builds cache keys from a canonical fingerprint of every query input: bucket-aligned time range,
+ * sorted filters, granularity, limits and cardinality. Keys look like {@code <appId>:<method>:<hash>}.
+ */
+@Component("queryKeyGenerator")
+@RequiredArgsConstructor
+public class QueryKeyGenerator implements KeyGenerator {
+
+    private final AnalyticsProperties properties;
+    private final AnalyticsQueryBuilder queryBuilder;
+
+    @Override
+    public Object generate(Object target, Method method, Object... params) {
+        StringBuilder canonical = new StringBuilder(method.getName());
+        UUID appId = null;
+        for (Object param : params) {
+            canonical.append('|');
+            appendCanonical(canonical, param);
+            if (appId == null) {
+                appId = appIdOf(param);
+            }
+        }
+        return appId + ":" + method.getName() + ":" + hash(canonical.toString());
+    }
+
+    /**
+     * Hash of the canonical form of the given values, for caches that are keyed by hand
+     */
+    public String fingerprint(Object... params) {
+        StringBuilder canonical = new StringBuilder();
+        for (Object param : params) {
+            canonical.append('|');
+            appendCanonical(canonical, param);
+        }
+        return hash(canonical.toString());
+    }
+
+    /**
+     * Widen a time range to whole alignment buckets, so that repeated loads of a sliding range
+     * share one cache entry. Queries must run on the aligned range for the cached value to match.
+     */
+    public TimeRange align(TimeRange timeRange) {
+        long bucket = properties.getCache().getRangeAlignmentSeconds();
+        if (bucket <= 1) {
+            return timeRange;
+        }
+        long start = timeRange.getStartDate().toEpochSecond(ZoneOffset.UTC);
+        long end = timeRange.getEndDate().toEpochSecond(ZoneOffset.UTC);
+        long alignedEnd = -Math.floorDiv(-end, bucket) * bucket;
+        if (alignedEnd == end && timeRange.getEndDate().getNano() > 0) {
+            alignedEnd += bucket;
+        }
+        return TimeRange.builder()
+                .startDate(LocalDateTime.ofEpochSecond(Math.floorDiv(start, bucket) * bucket, 0, ZoneOffset.UTC))
+                .endDate(LocalDateTime.ofEpochSecond(alignedEnd, 0, ZoneOffset.UTC))
+                .build();
+    }
+
+    private void appendCanonical(StringBuilder canonical, Object param) {
+        if (param instanceof TimeRange timeRange) {
+            TimeRange aligned = align(timeRange);
+            canonical.append(aligned.getStartDate()).append('~').append(aligned.getEndDate());
+        } else if (param instanceof AnalyticsQueryRequest request) {
+            canonical.append(request.getAppId()).append(',');
+            appendCanonical(canonical, request.getTimeRange());
+            canonical.append(',').append(request.getGranularity()).append(',');
+            appendCanonical(canonical, request.getFilters());
+            canonical.append(',').append(request.getGroupBy())
+                    .append(',').append(request.getMetrics())
+                    .append(',').append(request.getLimit())
+                    .append(',').append(request.getOffset())
+                    .append(',').append(request.getOrderBy())
+                    .append(',').append(request.getOrderDirection())
+                    .append(',');
+            appendCanonical(canonical, request.getCardinality());
+        } else if (param instanceof Cardinality cardinality) {
+            canonical.append(cardinality.getMode()).append('/').append(cardinality.getPrecision());
+        } else if (param instanceof List<?> list && list.isEmpty()) {
+            // no filters and an empty filter list mean the same thing
+            canonical.append("null");
+        } else if (param instanceof List<?> list && list.stream().allMatch(FilterCriteria.class::isInstance)) {
+            // filter order never changes the result
+            canonical.append(list.stream()
+                    .map(filter -> canonicalFilter((FilterCriteria) filter))
+                    .sorted()
+                    .toList());
+        } else {
+            canonical.append(param);
+        }
+    }
+
+    private String canonicalFilter(FilterCriteria filter) {
+        List<String> values = filter.getValues() == null ? List.of()
+                : filter.getValues().stream().map(String::valueOf).sorted().toList();
+        String column;
+        try {
+            column = queryBuilder.columnExpression(filter.getField());
+        } catch (IllegalArgumentException e) {
+            // keys are generated before the cached method runs, so reject the filter here with a 400
+            throw new InvalidQueryException(e.getMessage(), e);
+        }
+        return column
+                + ' ' + filter.getOperator()
+                + ' ' + filter.getValue()
+                + ' ' + values;
+    }
+
+    private static UUID appIdOf(Object param) {
+        if (param instanceof UUID uuid) {
+            return uuid;
+        }
+        if (param instanceof AnalyticsQueryRequest request) {
+            return request.getAppId();
+        }
+        return null;
+    }
+
+    private static String hash(String canonical) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM ships SHA-256
+            return Integer.toHexString(Objects.hashCode(canonical));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.simpleAnalytics.Analytics.cache;
+
+import com.simpleAnalytics.Analytics.exception.AnalyticsException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent callers with the same key share one execution: the first caller runs the
+ * loader and the others wait for its result. Nothing is kept once the call finishes, so the
+ * shared result must not be modified by its callers.
+ */
+public class SingleFlight {
+
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object key, Supplier<T> loader) {
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            return (T) await(existing);
+        }
+        try {
+            T value = loader.get();
+            call.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> call) {
+        try {
+            return call.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AnalyticsException("Interrupted while waiting for a shared query", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new AnalyticsException("Shared query failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.simpleAnalytics.Analytics.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+
+/**
+ * Encodes cached results as Smile, Jackson's binary JSON, which is smaller than typed JSON text
+ * and cheaper to decode. The top-level value always carries its class, so a cached {@code long}
+ * comes back as a Long rather than whatever integer type fits.
+ */
+public class SmileCacheSerializer implements RedisSerializer<Object> {
+
+    private final ObjectMapper mapper = SmileMapper.builder(SmileFactory.builder()
+                    // repeated strings such as class names and event types are written once
+                    .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                    .build())
+            .addModule(new JavaTimeModule())
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .activateDefaultTyping(BasicPolymorphicTypeValidator.builder()
+                            .allowIfSubType("com.simpleAnalytics.Analytics.")
+                            .allowIfSubType("java.util.")
+                            .allowIfSubType("java.lang.")
+                            .allowIfSubType("java.time.")
+                            .build(),
+                    ObjectMapper.DefaultTyping.NON_FINAL)
+            .build();
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return mapper.writeValueAsBytes(new Envelope(value));
+        } catch (IOException e) {
+            throw new SerializationException("Could not encode cached value", e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return mapper.readValue(bytes, Envelope.class).value();
+        } catch (IOException e) {
+            throw new SerializationException("Could not decode cached value", e);
+        }
+    }
+
+    record Envelope(@JsonTypeInfo(use = JsonTypeInfo.Id.CLASS, include = JsonTypeInfo.As.WRAPPER_ARRAY) Object value) {
+    }
+}
@@ -0,0 +1,109 @@
+package com.simpleAnalytics.Analytics.cache;
+
+import com.simpleAnalytics.Analytics.config.AnalyticsProperties;
+import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
+import com.simpleAnalytics.Analytics.model.enums.TimeGranularity;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stores the counts of finished time series buckets per (appId, granularity, filters), so a
+ * refresh only has to query the buckets that can still change. Each series is a set of Redis
+ * hashes, one per month of buckets, which lets old months expire on their own.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TimeSeriesBucketCache {
+
+    private static final String KEY_PREFIX = "analytics:buckets:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final AnalyticsProperties properties;
+    private final QueryKeyGenerator queryKeyGenerator;
+
+    /**
+     * Key prefix shared by all buckets of one series
+     */
+    public String seriesKey(UUID appId, TimeGranularity granularity, List<FilterCriteria> filters) {
+        return KEY_PREFIX + appId + ":" + granularity + ":" + queryKeyGenerator.fingerprint(filters);
+    }
+
+    /**
+     * Buckets ending at or before this time are final; later events are assumed to have arrived.
+     * An event inserted after its bucket was sealed (consumer lag, DLQ replay) is not counted in the
+     * cached bucket until the bucket expires after sealedBucketTtlHours.
+     */
+    public LocalDateTime sealedBefore() {
+        return LocalDateTime.now().minusSeconds(properties.getCache().getBucketSealDelaySeconds());
+    }
+
+    /**
+     * Look up sealed buckets; missing buckets are absent from the result
+     */
+    public Map<LocalDateTime, Long> getSealed(String seriesKey, List<LocalDateTime> buckets) {
+        Map<LocalDateTime, Long> sealed = new HashMap<>();
+        if (buckets.isEmpty() || !properties.getCache().isEnabled()) {
+            return sealed;
+        }
+        HashOperations<String, String, String> hashes = redisTemplate.opsForHash();
+        try {
+            for (Map.Entry<String, List<LocalDateTime>> shard : byShard(seriesKey, buckets).entrySet()) {
+                List<String> values = hashes.multiGet(shard.getKey(),
+                        shard.getValue().stream().map(LocalDateTime::toString).toList());
+                for (int i = 0; i < values.size(); i++) {
+                    if (values.get(i) != null) {
+                        sealed.put(shard.getValue().get(i), Long.parseLong(values.get(i)));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // a cache outage only costs a full query
+            log.warn("Failed to read sealed buckets for {}: {}", seriesKey, e.getMessage());
+            sealed.clear();
+        }
+        return sealed;
+    }
+
+    /**
+     * Store buckets that will no longer change
+     */
+    public void putSealed(String seriesKey, Map<LocalDateTime, Long> buckets) {
+        if (buckets.isEmpty() || !properties.getCache().isEnabled()) {
+            return;
+        }
+        HashOperations<String, String, String> hashes = redisTemplate.opsForHash();
+        Duration ttl = Duration.ofHours(properties.getCache().getSealedBucketTtlHours());
+        try {
+            for (Map.Entry<String, List<LocalDateTime>> shard : byShard(seriesKey, buckets.keySet()).entrySet()) {
+                Map<String, String> values = new LinkedHashMap<>();
+                shard.getValue().forEach(bucket -> values.put(bucket.toString(), buckets.get(bucket).toString()));
+                hashes.putAll(shard.getKey(), values);
+                redisTemplate.expire(shard.getKey(), ttl);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to store sealed buckets for {}: {}", seriesKey, e.getMessage());
+        }
+    }
+
+    private static Map<String, List<LocalDateTime>> byShard(String seriesKey, Iterable<LocalDateTime> buckets) {
+        Map<String, List<LocalDateTime>> shards = new LinkedHashMap<>();
+        for (LocalDateTime bucket : buckets) {
+            String shardKey = seriesKey + ":" + bucket.getYear() + "-" + bucket.getMonthValue();
+            shards.computeIfAbsent(shardKey, key -> new ArrayList<>()).add(bucket);
+        }
+        return shards;
+    }
+}
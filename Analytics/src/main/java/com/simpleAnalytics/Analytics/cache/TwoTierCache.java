@@ -0,0 +1,184 @@
+package com.simpleAnalytics.Analytics.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * Near cache: a bounded in-process tier in front of a shared Redis cache. Reads go local first,
+ * writes go to Redis and then locally, and every write or eviction is announced so other replicas
+ * drop their local copy.
+ * <p>
+ * Loads through {@code @Cacheable(sync = true)} are coalesced, so concurrent misses for a key run
+ * the method once. With a refresh executor, an expired entry is still served while one background
+ * load replaces it; if that load fails the entry is evicted rather than served until it ages out.
+ */
+@Slf4j
+public class TwoTierCache implements Cache {
+
+    private final Cache remote;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> local;
+    // (cache name, key) of a changed entry; a null key means the whole cache
+    private final BiConsumer<String, Object> invalidationPublisher;
+    private final Duration ttl;
+    // runs stale-while-revalidate refreshes; null serves nothing stale
+    private final Executor refreshExecutor;
+    private final SingleFlight loads = new SingleFlight();
+    private final Set<Object> refreshing = ConcurrentHashMap.newKeySet();
+
+    public TwoTierCache(Cache remote, com.github.benmanes.caffeine.cache.Cache<Object, Object> local,
+                        BiConsumer<String, Object> invalidationPublisher, Duration ttl, Executor refreshExecutor) {
+        this.remote = remote;
+        this.local = local;
+        this.invalidationPublisher = invalidationPublisher;
+        this.ttl = ttl;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    @Override
+    public String getName() {
+        return remote.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        CacheEntry entry = lookup(key);
+        return entry != null && entry.isFresh() ? new SimpleValueWrapper(entry.value()) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException(
+                    "Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        CacheEntry entry = lookup(key);
+        if (entry != null && (entry.isFresh() || refreshInBackground(key, valueLoader))) {
+            return (T) entry.value();
+        }
+        return loads.execute(key, () -> load(key, valueLoader));
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (value != null) {
+            CacheEntry entry = new CacheEntry(value, System.currentTimeMillis() + ttl.toMillis());
+            remote.put(key, entry);
+            local.put(key, entry);
+        } else {
+            // Redis is configured not to cache nulls, so a null result just clears both tiers
+            remote.evict(key);
+            local.invalidate(key);
+        }
+        invalidationPublisher.accept(getName(), key);
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        local.invalidate(key);
+        invalidationPublisher.accept(getName(), key);
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.invalidateAll();
+        invalidationPublisher.accept(getName(), null);
+    }
+
+    /**
+     * Drop the local copy after another replica changed the entry
+     */
+    void evictLocal(Object key) {
+        if (key == null) {
+            local.invalidateAll();
+        } else {
+            local.invalidate(key);
+        }
+    }
+
+    private CacheEntry lookup(Object key) {
+        if (local.getIfPresent(key) instanceof CacheEntry entry) {
+            return entry;
+        }
+        ValueWrapper wrapper = remote.get(key);
+        // values written before entries carried their freshness read as misses
+        if (wrapper != null && wrapper.get() instanceof CacheEntry entry) {
+            local.put(key, entry);
+            return entry;
+        }
+        return null;
+    }
+
+    private <T> T load(Object key, Callable<T> valueLoader) {
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, value);
+        return value;
+    }
+
+    /**
+     * Start a single background refresh of an expired entry
+     *
+     * @return whether the stale value may be served meanwhile
+     */
+    private boolean refreshInBackground(Object key, Callable<?> valueLoader) {
+        if (refreshExecutor == null) {
+            return false;
+        }
+        if (!refreshing.add(key)) {
+            return true;
+        }
+        // the loader runs the cached method on a refresh thread, which should log under the caller's MDC
+        Map<String, String> callerContext = MDC.getCopyOfContextMap();
+        try {
+            refreshExecutor.execute(() -> {
+                if (callerContext != null) {
+                    MDC.setContextMap(callerContext);
+                }
+                try {
+                    loads.execute(key, () -> load(key, valueLoader));
+                } catch (RuntimeException e) {
+                    // drop the stale value, so the next request loads synchronously and sees the failure
+                    log.warn("Background refresh of {} in {} failed, evicting the stale entry", key, getName(), e);
+                    evict(key);
+                } finally {
+                    refreshing.remove(key);
+                    MDC.clear();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,98 @@
+package com.simpleAnalytics.Analytics.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.simpleAnalytics.Analytics.config.AnalyticsProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Wraps every cache of a remote (Redis) cache manager in a {@link TwoTierCache} and keeps the
+ * local tiers of all replicas coherent over Redis pub/sub.
+ */
+@Slf4j
+public class TwoTierCacheManager implements CacheManager {
+
+    private static final String SEPARATOR = "\n";
+
+    private final CacheManager remote;
+    private final StringRedisTemplate redisTemplate;
+    private final AnalyticsProperties.CacheProperties properties;
+    // how long entries of each cache are fresh; others use the default TTL
+    private final Map<String, Duration> ttls;
+    private final Executor refreshExecutor;
+    private final Map<String, TwoTierCache> caches = new ConcurrentHashMap<>();
+    // lets a replica skip its own invalidations, which would throw away what it just cached
+    private final String instanceId = UUID.randomUUID().toString();
+
+    /**
+     * @param refreshExecutor runs stale-while-revalidate refreshes, or null to never serve stale entries
+     */
+    public TwoTierCacheManager(CacheManager remote, StringRedisTemplate redisTemplate,
+                               AnalyticsProperties.CacheProperties properties, Map<String, Duration> ttls,
+                               Executor refreshExecutor) {
+        this.remote = remote;
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.ttls = ttls;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache existing = caches.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        Cache remoteCache = remote.getCache(name);
+        if (remoteCache == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, key -> new TwoTierCache(
+                remoteCache,
+                Caffeine.newBuilder()
+                        .maximumSize(properties.getLocalMaxEntries())
+                        .expireAfterWrite(Duration.ofSeconds(properties.getLocalTtlSeconds()))
+                        .build(),
+                this::publishInvalidation,
+                ttls.getOrDefault(name, Duration.ofSeconds(properties.getTtlSeconds())),
+                refreshExecutor));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remote.getCacheNames();
+    }
+
+    private void publishInvalidation(String cacheName, Object key) {
+        String message = instanceId + SEPARATOR + cacheName + SEPARATOR + (key != null ? key : "");
+        try {
+            redisTemplate.convertAndSend(properties.getInvalidationChannel(), message);
+        } catch (Exception e) {
+            // peers fall back to their local TTL
+            log.warn("Failed to publish cache invalidation for {}: {}", cacheName, e.getMessage());
+        }
+    }
+
+    /**
+     * Apply an invalidation published by any replica
+     */
+    public void onInvalidation(String message) {
+        String[] parts = message.split(SEPARATOR, 3);
+        if (parts.length < 3 || instanceId.equals(parts[0])) {
+            return;
+        }
+        TwoTierCache cache = caches.get(parts[1]);
+        if (cache != null) {
+            cache.evictLocal(parts[2].isEmpty() ? null : parts[2]);
+        }
+    }
+}
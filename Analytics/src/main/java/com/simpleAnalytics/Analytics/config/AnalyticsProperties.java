@@ -1,5 +1,6 @@
 package com.simpleAnalytics.Analytics.config;
 
+import com.simpleAnalytics.Analytics.model.enums.CardinalityMode;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
@@ -12,6 +13,10 @@ public class AnalyticsProperties {
     private QueryProperties query = new QueryProperties();
     private CacheProperties cache = new CacheProperties();
     private RateLimitProperties rateLimit = new RateLimitProperties();
+    private ExecutorProperties executor = new ExecutorProperties();
+    private RollupProperties rollup = new RollupProperties();
+    private ExportProperties export = new ExportProperties();
+    private RetentionProperties retention = new RetentionProperties();
 
     @Data
     public static class QueryProperties {
@@ -20,6 +25,9 @@ public class AnalyticsProperties {
         private int maxResultSize = 10000;
         private int defaultLimit = 100;
         private int defaultPageSize = 50;
+        private CardinalityMode defaultCardinality = CardinalityMode.EXACT;
+        private CardinalityMode dashboardCardinality = CardinalityMode.UNIQ_COMBINED;
+        private boolean coalescingEnabled = true;
     }
 
     @Data
@@ -29,6 +37,14 @@ public class AnalyticsProperties {
         private int ttlSeconds = 300;
         private int dashboardTtlSeconds = 180;
         private int realtimeTtlSeconds = 30;
+        private int rangeAlignmentSeconds = 60;
+        private long localMaxEntries = 10000;
+        private int localTtlSeconds = 15;
+        private String invalidationChannel = "analytics:cache:invalidate";
+        private int bucketSealDelaySeconds = 120;
+        private int sealedBucketTtlHours = 168;
+        private boolean staleWhileRevalidate = false;
+        private int staleSeconds = 300;
     }
 
     @Data
@@ -38,4 +54,34 @@ public class AnalyticsProperties {
         private int requestsPerMinute = 60;
         private int requestsPerHour = 1000;
     }
+
+    @Data
+    public static class ExecutorProperties {
+
+        private int threads = 16;
+        private int queueCapacity = 256;
+        private long dashboardTimeoutMs = 30000;
+        private int refreshThreads = 2;
+    }
+
+    @Data
+    public static class RollupProperties {
+
+        private boolean enabled = true;
+    }
+
+    @Data
+    public static class ExportProperties {
+
+        private int maxRows = 10_000_000;
+        private int maxExecutionSeconds = 600;
+        private int bufferSize = 65536;
+    }
+
+    @Data
+    public static class RetentionProperties {
+
+        private boolean useUserProfile = false;
+        private long maxBytesBeforeExternalGroupBy = 1_073_741_824L;
+    }
 }
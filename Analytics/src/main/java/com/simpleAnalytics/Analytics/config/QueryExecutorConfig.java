@@ -0,0 +1,60 @@
+package com.simpleAnalytics.Analytics.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dedicated, bounded executor for ClickHouse queries that are fanned out in parallel
+ */
+@Slf4j
+@Configuration
+public class QueryExecutorConfig {
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService analyticsQueryExecutor(AnalyticsProperties properties) {
+        AnalyticsProperties.ExecutorProperties executor = properties.getExecutor();
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                executor.getThreads(), executor.getThreads(),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(executor.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "analytics-query-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // shed load instead of queueing dashboards without bound
+                new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        log.info("Analytics query executor configured with {} threads", executor.getThreads());
+        return pool;
+    }
+
+    /**
+     * Runs stale-while-revalidate cache refreshes, apart from the query executor so a refresh that
+     * fans out cannot wait on itself. When full, a refresh is skipped and the next request retries.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService analyticsRefreshExecutor(AnalyticsProperties properties) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                properties.getExecutor().getRefreshThreads(), properties.getExecutor().getRefreshThreads(),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(64),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "analytics-refresh-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -3,6 +3,8 @@ package com.simpleAnalytics.Analytics.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.simpleAnalytics.Analytics.cache.SmileCacheSerializer;
+import com.simpleAnalytics.Analytics.cache.TwoTierCacheManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
@@ -13,11 +15,17 @@ import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 @Slf4j
 @Configuration
@@ -54,29 +62,51 @@ public class RedisConfig {
 
     @Bean
     public CacheManager cacheManager(RedisConnectionFactory connectionFactory,
-            ObjectMapper redisObjectMapper) {
-        GenericJackson2JsonRedisSerializer jsonSerializer
-                = new GenericJackson2JsonRedisSerializer(redisObjectMapper);
-
+            StringRedisTemplate stringRedisTemplate, AnalyticsProperties properties,
+            ExecutorService analyticsRefreshExecutor) {
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
-                .entryTtl(Duration.ofMinutes(5))
                 .disableCachingNullValues()
                 .serializeKeysWith(
                         RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer())
                 )
                 .serializeValuesWith(
-                        RedisSerializationContext.SerializationPair.fromSerializer(jsonSerializer)
+                        RedisSerializationContext.SerializationPair.fromSerializer(new SmileCacheSerializer())
                 );
 
         // Different TTL for different cache types
-        RedisCacheConfiguration dashboardConfig = config.entryTtl(Duration.ofMinutes(3));
-        RedisCacheConfiguration realtimeConfig = config.entryTtl(Duration.ofSeconds(30));
-        RedisCacheConfiguration defaultConfig = config.entryTtl(Duration.ofMinutes(5));
+        AnalyticsProperties.CacheProperties cache = properties.getCache();
+        Duration defaultTtl = Duration.ofSeconds(cache.getTtlSeconds());
+        Map<String, Duration> ttls = Map.of(
+                "dashboard", Duration.ofSeconds(cache.getDashboardTtlSeconds()),
+                "realtime", Duration.ofSeconds(cache.getRealtimeTtlSeconds())
+        );
+        // expired entries have to outlive their TTL in Redis to be served while they refresh
+        Duration staleWindow = cache.isStaleWhileRevalidate() ? Duration.ofSeconds(cache.getStaleSeconds()) : Duration.ZERO;
 
-        return RedisCacheManager.builder(connectionFactory)
-                .cacheDefaults(defaultConfig)
-                .withCacheConfiguration("dashboard", dashboardConfig)
-                .withCacheConfiguration("realtime", realtimeConfig)
-                .build();
+        RedisCacheManager.RedisCacheManagerBuilder builder = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(config.entryTtl(defaultTtl.plus(staleWindow)));
+        ttls.forEach((name, ttl) -> builder.withCacheConfiguration(name, config.entryTtl(ttl.plus(staleWindow))));
+        RedisCacheManager redisCacheManager = builder.build();
+        redisCacheManager.initializeCaches();
+
+        log.info("Two-tier cache configured with {} local entries per cache, stale-while-revalidate {}",
+                cache.getLocalMaxEntries(), cache.isStaleWhileRevalidate() ? "on" : "off");
+        return new TwoTierCacheManager(redisCacheManager, stringRedisTemplate, cache, ttls,
+                cache.isStaleWhileRevalidate() ? analyticsRefreshExecutor : null);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListener(RedisConnectionFactory connectionFactory,
+            CacheManager cacheManager, AnalyticsProperties properties) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        // other Analytics replicas publish the entries they changed so local tiers stay coherent
+        if (cacheManager instanceof TwoTierCacheManager twoTierCacheManager) {
+            container.addMessageListener(
+                    (message, pattern) -> twoTierCacheManager.onInvalidation(
+                            new String(message.getBody(), StandardCharsets.UTF_8)),
+                    new ChannelTopic(properties.getCache().getInvalidationChannel()));
+        }
+        return container;
     }
 }
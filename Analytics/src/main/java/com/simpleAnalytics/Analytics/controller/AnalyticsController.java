@@ -1,20 +1,31 @@
 package com.simpleAnalytics.Analytics.controller;
 
+import com.simpleAnalytics.Analytics.model.dto.Cardinality;
 import com.simpleAnalytics.Analytics.model.dto.TimeRange;
 import com.simpleAnalytics.Analytics.model.dto.request.AnalyticsQueryRequest;
+import com.simpleAnalytics.Analytics.model.dto.request.ExportRequest;
+import com.simpleAnalytics.Analytics.model.dto.request.FunnelRequest;
+import com.simpleAnalytics.Analytics.model.dto.request.RetentionRequest;
 import com.simpleAnalytics.Analytics.model.dto.response.*;
+import com.simpleAnalytics.Analytics.model.entity.Event;
+import com.simpleAnalytics.Analytics.model.enums.CardinalityMode;
+import com.simpleAnalytics.Analytics.model.enums.ExportFormat;
 import com.simpleAnalytics.Analytics.model.enums.TimeGranularity;
 import com.simpleAnalytics.Analytics.service.AnalyticsService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
@@ -37,7 +48,9 @@ public class AnalyticsController {
     public ResponseEntity<AnalyticsResponse<DashboardOverview>> getOverview(
             @Parameter(description = "Application ID") @PathVariable UUID appId,
             @Parameter(description = "Start date") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
-            @Parameter(description = "End date") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+            @Parameter(description = "End date") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @Parameter(description = "Distinct-count mode, approximate by default") @RequestParam(required = false) CardinalityMode cardinality,
+            @Parameter(description = "HyperLogLog precision (12-20) for UNIQ_COMBINED") @RequestParam(required = false) Integer precision) {
 
         log.info("GET /api/v1/analytics/{}/overview - startDate: {}, endDate: {}", appId, startDate, endDate);
 
@@ -47,13 +60,15 @@ public class AnalyticsController {
                 .endDate(endDate)
                 .build();
 
-        DashboardOverview overview = analyticsService.getDashboardOverview(appId, timeRange);
+        Cardinality resolved = analyticsService.resolveCardinality(cardinality, precision, true);
+        DashboardOverview overview = analyticsService.getDashboardOverview(appId, timeRange, resolved);
 
         AnalyticsResponse<DashboardOverview> response = AnalyticsResponse.<DashboardOverview>builder()
                 .data(overview)
                 .metadata(AnalyticsResponse.ResponseMetadata.builder()
                         .queryTime(queryStart)
                         .executionTimeMs(java.time.Duration.between(queryStart, LocalDateTime.now()).toMillis())
+                        .cardinality(resolved)
                         .build())
                 .build();
 
@@ -88,7 +103,9 @@ public class AnalyticsController {
     public ResponseEntity<AnalyticsResponse<Long>> getUserCount(
             @PathVariable UUID appId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) CardinalityMode cardinality,
+            @RequestParam(required = false) Integer precision) {
 
         log.info("GET /api/v1/analytics/{}/users/count", appId);
 
@@ -97,10 +114,14 @@ public class AnalyticsController {
                 .endDate(endDate)
                 .build();
 
-        long count = analyticsService.getUniqueUserCount(appId, timeRange, null);
+        Cardinality resolved = analyticsService.resolveCardinality(cardinality, precision, false);
+        long count = analyticsService.getUniqueUserCount(appId, timeRange, null, resolved);
 
         AnalyticsResponse<Long> response = AnalyticsResponse.<Long>builder()
                 .data(count)
+                .metadata(AnalyticsResponse.ResponseMetadata.builder()
+                        .cardinality(resolved)
+                        .build())
                 .build();
 
         return ResponseEntity.ok(response);
@@ -111,7 +132,9 @@ public class AnalyticsController {
     public ResponseEntity<AnalyticsResponse<List<EventBreakdown>>> getEventBreakdown(
             @PathVariable UUID appId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) CardinalityMode cardinality,
+            @RequestParam(required = false) Integer precision) {
 
         log.info("GET /api/v1/analytics/{}/events/breakdown", appId);
 
@@ -120,10 +143,14 @@ public class AnalyticsController {
                 .endDate(endDate)
                 .build();
 
-        List<EventBreakdown> breakdown = analyticsService.getEventBreakdown(appId, timeRange, null);
+        Cardinality resolved = analyticsService.resolveCardinality(cardinality, precision, false);
+        List<EventBreakdown> breakdown = analyticsService.getEventBreakdown(appId, timeRange, null, resolved);
 
         AnalyticsResponse<List<EventBreakdown>> response = AnalyticsResponse.<List<EventBreakdown>>builder()
                 .data(breakdown)
+                .metadata(AnalyticsResponse.ResponseMetadata.builder()
+                        .cardinality(resolved)
+                        .build())
                 .build();
 
         return ResponseEntity.ok(response);
@@ -152,6 +179,65 @@ public class AnalyticsController {
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/{appId}/events")
+    @Operation(summary = "List events", description = "List raw events newest first, paged by cursor")
+    public ResponseEntity<AnalyticsResponse<List<Event>>> getEvents(
+            @PathVariable UUID appId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @Parameter(description = "nextCursor of the previous page") @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+
+        log.info("GET /api/v1/analytics/{}/events", appId);
+
+        TimeRange timeRange = TimeRange.builder()
+                .startDate(startDate)
+                .endDate(endDate)
+                .build();
+
+        EventPage page = analyticsService.getEventPage(appId, timeRange, null, cursor, limit);
+
+        AnalyticsResponse<List<Event>> response = AnalyticsResponse.<List<Event>>builder()
+                .data(page.getEvents())
+                .pagination(AnalyticsResponse.PaginationInfo.builder()
+                        .pageSize(page.getPageSize())
+                        .hasNext(page.isHasNext())
+                        .hasPrevious(cursor != null && !cursor.isBlank())
+                        .nextCursor(page.getNextCursor())
+                        .build())
+                .build();
+
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/{appId}/events/export")
+    @Operation(summary = "Export events", description = "Stream raw events as NDJSON, CSV, Parquet or Arrow")
+    public void exportEvents(
+            @PathVariable UUID appId,
+            @RequestParam(defaultValue = "NDJSON") ExportFormat format,
+            @Valid @RequestBody ExportRequest request,
+            HttpServletResponse response) throws IOException {
+
+        log.info("POST /api/v1/analytics/{}/events/export - format: {}", appId, format);
+
+        response.setContentType(format.getContentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("events-" + appId + "." + format.getFileExtension())
+                .build()
+                .toString());
+        try {
+            analyticsService.exportEvents(appId, request.getTimeRange(), request.getFilters(), format,
+                    response.getOutputStream());
+        } catch (RuntimeException e) {
+            // before the first byte the usual error response can still replace the export
+            if (!response.isCommitted()) {
+                response.reset();
+            }
+            throw e;
+        }
+        response.flushBuffer();
+    }
+
     @GetMapping("/{appId}/timeseries?granularity")
     @Operation(summary = "Get time series data", description = "Get time series event data with custom granularity")
     public ResponseEntity<AnalyticsResponse<List<TimeSeriesData>>> getTimeSeries(
@@ -234,4 +320,129 @@ public class AnalyticsController {
 
         return ResponseEntity.ok(response);
     }
+
+    @GetMapping("/{appId}/context/metadata/{key}")
+    @Operation(summary = "Get metadata breakdown", description = "Get breakdown by the value of a promoted metadata key")
+    public ResponseEntity<AnalyticsResponse<List<Map<String, Object>>>> getMetadataBreakdown(
+            @PathVariable UUID appId,
+            @PathVariable String key,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+
+        TimeRange timeRange = TimeRange.builder()
+                .startDate(startDate)
+                .endDate(endDate)
+                .build();
+
+        List<Map<String, Object>> breakdown = analyticsService.getMetadataBreakdown(appId, timeRange, key, null);
+
+        AnalyticsResponse<List<Map<String, Object>>> response = AnalyticsResponse.<List<Map<String, Object>>>builder()
+                .data(breakdown)
+                .build();
+
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/{appId}/query")
+    @Operation(summary = "Run analytics query", description = "Compute several metrics per time bucket and group-by dimensions in one query")
+    public ResponseEntity<AnalyticsResponse<List<Map<String, Object>>>> query(
+            @PathVariable UUID appId,
+            @Valid @RequestBody AnalyticsQueryRequest request) {
+
+        log.info("POST /api/v1/analytics/{}/query - metrics: {}, groupBy: {}", appId, request.getMetrics(), request.getGroupBy());
+
+        LocalDateTime queryStart = LocalDateTime.now();
+        Cardinality requested = request.getCardinality();
+        Cardinality resolved = analyticsService.resolveCardinality(
+                requested != null ? requested.getMode() : null,
+                requested != null ? requested.getPrecision() : null,
+                false);
+        request.setAppId(appId);
+        request.setCardinality(resolved);
+
+        List<Map<String, Object>> rows = analyticsService.getAggregation(request);
+
+        AnalyticsResponse<List<Map<String, Object>>> response = AnalyticsResponse.<List<Map<String, Object>>>builder()
+                .data(rows)
+                .metadata(AnalyticsResponse.ResponseMetadata.builder()
+                        .queryTime(queryStart)
+                        .executionTimeMs(java.time.Duration.between(queryStart, LocalDateTime.now()).toMillis())
+                        .cardinality(resolved)
+                        .build())
+                .build();
+
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/{appId}/funnel")
+    @Operation(summary = "Get funnel analysis", description = "Get step-by-step conversion for an ordered list of event types")
+    public ResponseEntity<AnalyticsResponse<FunnelAnalysis>> getFunnel(
+            @PathVariable UUID appId,
+            @Valid @RequestBody FunnelRequest request) {
+
+        log.info("POST /api/v1/analytics/{}/funnel - steps: {}", appId, request.getSteps());
+
+        request.setAppId(appId);
+        FunnelAnalysis funnel = analyticsService.getFunnelAnalysis(request);
+
+        AnalyticsResponse<FunnelAnalysis> response = AnalyticsResponse.<FunnelAnalysis>builder()
+                .data(funnel)
+                .build();
+
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/{appId}/retention")
+    @Operation(summary = "Get cohort retention", description = "Get how many users first seen on a day come back after each period")
+    public ResponseEntity<AnalyticsResponse<RetentionAnalysis>> getRetention(
+            @PathVariable UUID appId,
+            @Valid @RequestBody RetentionRequest request) {
+
+        log.info("POST /api/v1/analytics/{}/retention - cohortDate: {}", appId, request.getCohortDate());
+
+        request.setAppId(appId);
+        RetentionAnalysis retention = analyticsService.getRetentionAnalysis(request);
+
+        AnalyticsResponse<RetentionAnalysis> response = AnalyticsResponse.<RetentionAnalysis>builder()
+                .data(retention)
+                .build();
+
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/{appId}/users/activity")
+    @Operation(summary = "Get new vs returning users", description = "Get users first seen in the time range, per day, and users who came back in it")
+    public ResponseEntity<AnalyticsResponse<UserActivity>> getUserActivity(
+            @PathVariable UUID appId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+
+        TimeRange timeRange = TimeRange.builder()
+                .startDate(startDate)
+                .endDate(endDate)
+                .build();
+
+        UserActivity activity = analyticsService.getUserActivity(appId, timeRange);
+
+        AnalyticsResponse<UserActivity> response = AnalyticsResponse.<UserActivity>builder()
+                .data(activity)
+                .build();
+
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/{appId}/users/{actorId}")
+    @Operation(summary = "Get user profile", description = "Get when a user was first and last seen and how many events they sent")
+    public ResponseEntity<AnalyticsResponse<UserProfile>> getUserProfile(
+            @PathVariable UUID appId,
+            @PathVariable UUID actorId) {
+
+        UserProfile profile = analyticsService.getUserProfile(appId, actorId);
+
+        AnalyticsResponse<UserProfile> response = AnalyticsResponse.<UserProfile>builder()
+                .data(profile)
+                .build();
+
+        return ResponseEntity.ok(response);
+    }
 }
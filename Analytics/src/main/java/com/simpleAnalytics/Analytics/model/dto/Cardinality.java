@@ -0,0 +1,63 @@
+package com.simpleAnalytics.Analytics.model.dto;
+
+import com.simpleAnalytics.Analytics.model.enums.CardinalityMode;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Distinct-count mode used by a query, reported back with the response
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Cardinality {
+
+    public static final int MIN_PRECISION = 12;
+    public static final int MAX_PRECISION = 20;
+
+    private CardinalityMode mode;
+
+    @Min(MIN_PRECISION)
+    @Max(MAX_PRECISION)
+    private Integer precision; // HyperLogLog precision, UNIQ_COMBINED only
+
+    public static Cardinality exact() {
+        return Cardinality.builder()
+                .mode(CardinalityMode.EXACT)
+                .build();
+    }
+
+    public static Cardinality of(CardinalityMode mode, Integer precision) {
+        return Cardinality.builder()
+                .mode(mode)
+                .precision(mode == CardinalityMode.UNIQ_COMBINED ? precision : null)
+                .build();
+    }
+
+    /**
+     * Distinct count of an expression, e.g. uniqCombined(14)(userId)
+     */
+    public String aggregate(String expression) {
+        return function("") + "(" + expression + ")";
+    }
+
+    /**
+     * Distinct count of an expression over rows matching a condition
+     */
+    public String aggregateIf(String expression, String condition) {
+        return function("If") + "(" + expression + ", " + condition + ")";
+    }
+
+    private String function(String combinator) {
+        String function = mode.getClickHouseFunction() + combinator;
+        if (mode == CardinalityMode.UNIQ_COMBINED && precision != null) {
+            function += "(" + precision + ")";
+        }
+        return function;
+    }
+}
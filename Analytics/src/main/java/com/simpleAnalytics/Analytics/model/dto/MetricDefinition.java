@@ -0,0 +1,27 @@
+package com.simpleAnalytics.Analytics.model.dto;
+
+import com.simpleAnalytics.Analytics.model.enums.MetricType;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One metric of a generic analytics query
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MetricDefinition {
+
+    @NotNull(message = "Metric type is required")
+    private MetricType type;
+
+    private String field; // "user" (default for UNIQUE_COUNT), "session", a column or "metadata.<key>"
+
+    @Pattern(regexp = "^[a-zA-Z0-9_]{1,64}$", message = "Alias may only contain letters, digits and underscores")
+    private String alias; // result column name, derived from type and field when missing
+}
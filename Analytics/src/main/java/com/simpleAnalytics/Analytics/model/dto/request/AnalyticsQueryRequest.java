@@ -1,9 +1,11 @@
 package com.simpleAnalytics.Analytics.model.dto.request;
 
+import com.simpleAnalytics.Analytics.model.dto.Cardinality;
 import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
+import com.simpleAnalytics.Analytics.model.dto.MetricDefinition;
 import com.simpleAnalytics.Analytics.model.dto.TimeRange;
-import com.simpleAnalytics.Analytics.model.enums.MetricType;
 import com.simpleAnalytics.Analytics.model.enums.TimeGranularity;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
@@ -20,24 +22,28 @@ import java.util.UUID;
  * Generic analytics query request
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class AnalyticsQueryRequest {
 
-    @NotNull(message = "App ID is required")
-    private UUID appId;
+    private UUID appId; // taken from the path
 
     @NotNull(message = "Time range is required")
     private TimeRange timeRange;
 
     private TimeGranularity granularity;
 
+    @Valid
     private List<FilterCriteria> filters;
 
     private List<String> groupBy;
 
-    private List<MetricType> metrics;
+    @Valid
+    private List<MetricDefinition> metrics;
+
+    @Valid
+    private Cardinality cardinality; // null uses the configured default
 
     @Min(1)
     @Max(10000)
@@ -0,0 +1,28 @@
+package com.simpleAnalytics.Analytics.model.dto.request;
+
+import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
+import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Raw event export request
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportRequest {
+
+    @NotNull(message = "Time range is required")
+    private TimeRange timeRange;
+
+    @Valid
+    private List<FilterCriteria> filters;
+}
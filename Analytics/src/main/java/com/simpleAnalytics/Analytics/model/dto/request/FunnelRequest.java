@@ -2,6 +2,8 @@ package com.simpleAnalytics.Analytics.model.dto.request;
 
 import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
 import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import com.simpleAnalytics.Analytics.model.enums.FunnelMode;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
@@ -21,8 +23,7 @@ import java.util.UUID;
 @AllArgsConstructor
 public class FunnelRequest {
 
-    @NotNull(message = "App ID is required")
-    private UUID appId;
+    private UUID appId; // taken from the path
 
     @NotEmpty(message = "At least one step is required")
     private List<String> steps; // Event types for each step
@@ -30,7 +31,10 @@ public class FunnelRequest {
     @NotNull(message = "Time range is required")
     private TimeRange timeRange;
 
-    private Integer timeWindowMinutes = 60; // Time window between steps
+    private Integer timeWindowMinutes = 60; // Time window from the first step to the last
 
+    private FunnelMode mode; // null matches like DEFAULT
+
+    @Valid
     private List<FilterCriteria> filters;
 }
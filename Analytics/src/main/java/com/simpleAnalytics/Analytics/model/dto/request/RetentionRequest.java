@@ -20,14 +20,13 @@ import java.util.UUID;
 @AllArgsConstructor
 public class RetentionRequest {
 
-    @NotNull(message = "App ID is required")
-    private UUID appId;
+    private UUID appId; // taken from the path
 
     @NotNull(message = "Cohort date is required")
     private LocalDate cohortDate;
 
     @NotNull(message = "Time range is required")
-    private TimeRange timeRange;
+    private TimeRange timeRange; // how far back to look for earlier activity when finding new users
 
     private List<Integer> retentionPeriods; // Days to check (e.g., [1, 7, 14, 30])
 }
@@ -1,6 +1,7 @@
 package com.simpleAnalytics.Analytics.model.dto.response;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.simpleAnalytics.Analytics.model.dto.Cardinality;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -34,6 +35,7 @@ public class AnalyticsResponse<T> {
         private Long executionTimeMs;
         private Boolean cacheHit;
         private String query;
+        private Cardinality cardinality;
     }
 
     @Data
@@ -48,5 +50,6 @@ public class AnalyticsResponse<T> {
         private Integer totalPages;
         private Boolean hasNext;
         private Boolean hasPrevious;
+        private String nextCursor;
     }
 }
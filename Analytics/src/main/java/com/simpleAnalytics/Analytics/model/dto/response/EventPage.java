@@ -0,0 +1,24 @@
+package com.simpleAnalytics.Analytics.model.dto.response;
+
+import com.simpleAnalytics.Analytics.model.entity.Event;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of raw events, newest first
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventPage {
+
+    private List<Event> events;
+    private int pageSize; // events on this page, below the limit on the last one
+    private String nextCursor;
+    private boolean hasNext;
+}
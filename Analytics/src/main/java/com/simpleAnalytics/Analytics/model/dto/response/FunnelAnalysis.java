@@ -31,5 +31,6 @@ public class FunnelAnalysis {
         private Long userCount;
         private Double conversionRate;
         private Double dropoffRate;
+        private Double medianSecondsFromPreviousStep;
     }
 }
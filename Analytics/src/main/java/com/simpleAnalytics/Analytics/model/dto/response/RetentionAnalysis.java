@@ -0,0 +1,34 @@
+package com.simpleAnalytics.Analytics.model.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Retention of one cohort of new users
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RetentionAnalysis {
+
+    private LocalDate cohortDate;
+    private Long cohortSize;
+    private List<RetentionPeriod> periods;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RetentionPeriod {
+
+        private Integer day;
+        private Long retainedUsers;
+        private Double retentionRate;
+    }
+}
@@ -0,0 +1,22 @@
+package com.simpleAnalytics.Analytics.model.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * New versus returning users within a time range
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserActivity {
+
+    private Long newUsers;
+    private Long returningUsers;
+    private List<TimeSeriesData> newUsersByDay;
+}
@@ -0,0 +1,25 @@
+package com.simpleAnalytics.Analytics.model.enums;
+
+/**
+ * Accuracy of distinct counts, trading exactness for memory
+ */
+public enum CardinalityMode {
+    EXACT("uniqExact"), // full hash set, exact
+    UNIQ("uniq"), // adaptive sampling, ~1% error
+    UNIQ_COMBINED("uniqCombined"), // array, hash set, then HyperLogLog; precision 12-20
+    HLL("uniqHLL12"); // HyperLogLog with 2^12 cells, smallest state
+
+    private final String clickHouseFunction;
+
+    CardinalityMode(String clickHouseFunction) {
+        this.clickHouseFunction = clickHouseFunction;
+    }
+
+    public String getClickHouseFunction() {
+        return clickHouseFunction;
+    }
+
+    public boolean isApproximate() {
+        return this != EXACT;
+    }
+}
@@ -0,0 +1,33 @@
+package com.simpleAnalytics.Analytics.model.enums;
+
+/**
+ * Output formats for raw event exports; ClickHouse encodes the rows itself
+ */
+public enum ExportFormat {
+    NDJSON("JSONEachRow", "application/x-ndjson", "ndjson"),
+    CSV("CSVWithNames", "text/csv", "csv"),
+    PARQUET("Parquet", "application/vnd.apache.parquet", "parquet"),
+    ARROW("ArrowStream", "application/vnd.apache.arrow.stream", "arrows");
+
+    private final String clickHouseFormat;
+    private final String contentType;
+    private final String fileExtension;
+
+    ExportFormat(String clickHouseFormat, String contentType, String fileExtension) {
+        this.clickHouseFormat = clickHouseFormat;
+        this.contentType = contentType;
+        this.fileExtension = fileExtension;
+    }
+
+    public String getClickHouseFormat() {
+        return clickHouseFormat;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+}
@@ -0,0 +1,21 @@
+package com.simpleAnalytics.Analytics.model.enums;
+
+/**
+ * How windowFunnel matches a chain of steps
+ */
+public enum FunnelMode {
+    DEFAULT(null),
+    STRICT("strict_deduplication"), // a repeated step breaks the chain
+    STRICT_ORDER("strict_order"), // any other funnel event in between breaks the chain
+    STRICT_INCREASE("strict_increase"); // steps need strictly increasing timestamps
+
+    private final String clickHouseMode;
+
+    FunnelMode(String clickHouseMode) {
+        this.clickHouseMode = clickHouseMode;
+    }
+
+    public String getClickHouseMode() {
+        return clickHouseMode;
+    }
+}
@@ -4,13 +4,30 @@ package com.simpleAnalytics.Analytics.model.enums;
  * Types of metrics that can be calculated
  */
 public enum MetricType {
-    COUNT, // count(*)
-    UNIQUE_COUNT, // uniqExact(field)
-    SUM, // sum(field)
-    AVERAGE, // avg(field)
-    MIN, // min(field)
-    MAX, // max(field)
-    MEDIAN, // median(field)
-    PERCENTILE_95, // quantile(0.95)(field)
-    PERCENTILE_99       // quantile(0.99)(field)
+    COUNT("count"), // count(*)
+    UNIQUE_COUNT(null), // uniqExact(field), or the requested cardinality mode
+    SUM("sum"), // sum(field)
+    AVERAGE("avg"), // avg(field)
+    MIN("min"), // min(field)
+    MAX("max"), // max(field)
+    MEDIAN("median"), // median(field)
+    PERCENTILE_95("quantile(0.95)"), // quantile(0.95)(field)
+    PERCENTILE_99("quantile(0.99)");    // quantile(0.99)(field)
+
+    private final String clickHouseFunction;
+
+    MetricType(String clickHouseFunction) {
+        this.clickHouseFunction = clickHouseFunction;
+    }
+
+    public String getClickHouseFunction() {
+        return clickHouseFunction;
+    }
+
+    /**
+     * Whether the metric only makes sense over numbers
+     */
+    public boolean isNumeric() {
+        return this == SUM || this == AVERAGE || this == MEDIAN || this == PERCENTILE_95 || this == PERCENTILE_99;
+    }
 }
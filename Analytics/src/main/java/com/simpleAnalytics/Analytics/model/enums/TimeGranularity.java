@@ -1,5 +1,10 @@
 package com.simpleAnalytics.Analytics.model.enums;
 
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
 /**
  * Time granularity for time series data aggregation
  */
@@ -24,4 +29,37 @@ public enum TimeGranularity {
     public String getDisplayName() {
         return displayName;
     }
+
+    /**
+     * Start of the bucket containing the given time, matching the ClickHouse function
+     */
+    public LocalDateTime bucketStart(LocalDateTime time) {
+        return switch (this) {
+            case HOUR -> time.truncatedTo(ChronoUnit.HOURS);
+            case DAY -> time.truncatedTo(ChronoUnit.DAYS);
+            case WEEK -> time.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+            case MONTH -> time.toLocalDate().withDayOfMonth(1).atStartOfDay();
+        };
+    }
+
+    /**
+     * Start of the bucket following the one that starts at the given time
+     */
+    public LocalDateTime nextBucket(LocalDateTime bucketStart) {
+        return switch (this) {
+            case HOUR -> bucketStart.plusHours(1);
+            case DAY -> bucketStart.plusDays(1);
+            case WEEK -> bucketStart.plusWeeks(1);
+            case MONTH -> bucketStart.plusMonths(1);
+        };
+    }
+
+    public static TimeGranularity fromClickHouseFunction(String function) {
+        for (TimeGranularity granularity : values()) {
+            if (granularity.clickHouseFunction.equals(function)) {
+                return granularity;
+            }
+        }
+        throw new IllegalArgumentException("Unknown granularity function: " + function);
+    }
 }
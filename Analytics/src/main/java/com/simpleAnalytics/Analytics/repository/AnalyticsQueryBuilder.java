@@ -1,12 +1,20 @@
 package com.simpleAnalytics.Analytics.repository;
 
+import com.simpleAnalytics.Analytics.model.dto.Cardinality;
 import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
+import com.simpleAnalytics.Analytics.model.dto.MetricDefinition;
+import com.simpleAnalytics.Analytics.model.dto.request.AnalyticsQueryRequest;
 import com.simpleAnalytics.Analytics.model.enums.FilterOperator;
+import com.simpleAnalytics.Analytics.model.enums.MetricType;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * Builder for constructing ClickHouse SQL queries dynamically
@@ -17,6 +25,10 @@ public class AnalyticsQueryBuilder {
 
     private static final String TABLE_NAME = "event";
 
+    private static final String METADATA_PREFIX = "metadata.";
+
+    private static final Pattern METADATA_KEY = Pattern.compile("^[a-zA-Z0-9_.\\-]{1,64}$");
+
     /**
      * Build WHERE clause with filters
      */
@@ -43,11 +55,29 @@ public class AnalyticsQueryBuilder {
         return whereClause.toString();
     }
 
+    /**
+     * Whether every filter targets one of the given columns
+     */
+    public boolean referencesOnly(List<FilterCriteria> filters, Set<String> columns) {
+        if (filters == null) {
+            return true;
+        }
+        return filters.stream().allMatch(filter -> columns.contains(columnExpression(filter.getField())));
+    }
+
     /**
      * Build individual filter condition
      */
     private String buildFilterCondition(FilterCriteria filter, List<Object> params) {
-        String field = sanitizeFieldName(filter.getField());
+        String field = columnExpression(filter.getField());
+
+        if (isMetadataField(filter.getField())) {
+            String condition = buildMetadataCondition(filter, field, params);
+            if (condition != null) {
+                return condition;
+            }
+            filter = asText(filter);
+        }
         FilterOperator operator = filter.getOperator();
 
         switch (operator) {
@@ -105,10 +135,65 @@ public class AnalyticsQueryBuilder {
         return null;
     }
 
+    /**
+     * Promoted metadata values are strings: numbers compare numerically and a missing key is NULL.
+     * Returns null for operators that work on the plain string value.
+     */
+    private String buildMetadataCondition(FilterCriteria filter, String field, List<Object> params) {
+        String key = "'" + filter.getField().substring(METADATA_PREFIX.length()) + "'";
+        switch (filter.getOperator()) {
+            case GREATER_THAN:
+            case LESS_THAN:
+            case GREATER_THAN_OR_EQUAL:
+            case LESS_THAN_OR_EQUAL:
+                if (filter.getValue() instanceof Number) {
+                    params.add(filter.getValue());
+                    return "toFloat64OrNull(" + field + ") " + filter.getOperator().getSqlOperator() + " ?";
+                }
+                return null;
+            case IS_NULL:
+                return "NOT mapContains(metadata_props, " + key + ")";
+            case IS_NOT_NULL:
+                return "mapContains(metadata_props, " + key + ")";
+            default:
+                return null;
+        }
+    }
+
+    private static FilterCriteria asText(FilterCriteria filter) {
+        return FilterCriteria.builder()
+                .field(filter.getField())
+                .operator(filter.getOperator())
+                .value(filter.getValue() != null ? String.valueOf(filter.getValue()) : null)
+                .values(filter.getValues() != null
+                        ? filter.getValues().stream().map(value -> (Object) String.valueOf(value)).toList()
+                        : null)
+                .build();
+    }
+
+    /**
+     * Column expression for a field; "metadata.<key>" reads the key from the promoted
+     * metadata_props column, which holds only the keys EventConsumer is configured to promote
+     */
+    public String columnExpression(String fieldName) {
+        if (isMetadataField(fieldName)) {
+            String key = fieldName.substring(METADATA_PREFIX.length());
+            if (!METADATA_KEY.matcher(key).matches()) {
+                throw new IllegalArgumentException("Invalid metadata key: " + key);
+            }
+            return "metadata_props['" + key + "']";
+        }
+        return sanitizeFieldName(fieldName);
+    }
+
+    private static boolean isMetadataField(String fieldName) {
+        return fieldName != null && fieldName.regionMatches(true, 0, METADATA_PREFIX, 0, METADATA_PREFIX.length());
+    }
+
     /**
      * Sanitize field name to prevent SQL injection
      */
-    private String sanitizeFieldName(String fieldName) {
+    public String sanitizeFieldName(String fieldName) {
         // Map user-friendly names to actual column names
         switch (fieldName.toLowerCase()) {
             case "eventtype":
@@ -168,11 +253,133 @@ public class AnalyticsQueryBuilder {
             return "";
         }
 
-        String field = sanitizeFieldName(orderBy);
+        String field = columnExpression(orderBy);
         String dir = "DESC".equalsIgnoreCase(direction) ? "DESC" : "ASC";
         return " ORDER BY " + field + " " + dir;
     }
 
+    /**
+     * Rewrite the positional placeholders this builder emits as named ones (:p0, :p1, ...) for the
+     * ClickHouse client API, which binds and escapes parameters by name
+     */
+    public String toNamedParameters(String sql) {
+        StringBuilder named = new StringBuilder(sql.length() + 16);
+        int index = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') {
+                named.append(":p").append(index++);
+            } else {
+                named.append(c);
+            }
+        }
+        return named.toString();
+    }
+
+    /**
+     * Compile a generic query into one statement: optional time bucket and group-by dimensions,
+     * then every requested metric, each returned under its alias
+     */
+    public String buildAggregationQuery(AnalyticsQueryRequest request, Cardinality cardinality, List<Object> params) {
+        // alias -> expression, in result column order
+        Map<String, String> dimensions = new LinkedHashMap<>();
+        if (request.getGranularity() != null) {
+            dimensions.put("bucket", request.getGranularity().getClickHouseFunction() + "(timestamp)");
+        }
+        if (request.getGroupBy() != null) {
+            for (String field : request.getGroupBy()) {
+                addColumn(dimensions, field, columnExpression(field));
+            }
+        }
+        Map<String, String> metrics = new LinkedHashMap<>();
+        for (MetricDefinition metric : request.getMetrics()) {
+            addColumn(metrics, aliasOf(metric), buildMetric(metric, cardinality));
+            if (dimensions.containsKey(aliasOf(metric))) {
+                throw new IllegalArgumentException("Duplicate result column: " + aliasOf(metric));
+            }
+        }
+
+        List<String> columns = new ArrayList<>();
+        dimensions.forEach((alias, expression) -> columns.add(expression + " AS `" + alias + "`"));
+        metrics.forEach((alias, expression) -> columns.add(expression + " AS `" + alias + "`"));
+
+        params.add(request.getAppId());
+        params.add(request.getTimeRange().getStartDate());
+        params.add(request.getTimeRange().getEndDate());
+        StringBuilder sql = new StringBuilder("SELECT ")
+                .append(String.join(", ", columns))
+                .append(" FROM ").append(TABLE_NAME)
+                .append(" WHERE appId = ? AND event.timestamp BETWEEN ? AND ?")
+                .append(buildWhereClause(request.getFilters(), params));
+        if (!dimensions.isEmpty()) {
+            sql.append(" GROUP BY ").append(String.join(", ", dimensions.values()));
+        }
+
+        String orderBy = request.getOrderBy();
+        String direction = "ASC".equalsIgnoreCase(request.getOrderDirection()) ? "ASC" : "DESC";
+        if (orderBy == null || orderBy.isEmpty()) {
+            // time series read oldest first, breakdowns largest first
+            sql.append(request.getGranularity() != null
+                    ? " ORDER BY `bucket` ASC"
+                    : " ORDER BY `" + metrics.keySet().iterator().next() + "` DESC");
+        } else if (dimensions.containsKey(orderBy) || metrics.containsKey(orderBy)) {
+            sql.append(" ORDER BY `").append(orderBy).append("` ").append(direction);
+        } else {
+            throw new IllegalArgumentException("Can only order by a dimension or metric of the query: " + orderBy);
+        }
+
+        int limit = request.getLimit() != null ? request.getLimit() : 100;
+        int offset = request.getOffset() != null ? request.getOffset() : 0;
+        sql.append(buildLimitClause(limit, offset));
+        // aliases such as `source` must not replace the real columns in WHERE
+        sql.append(" SETTINGS prefer_column_name_to_alias = 1");
+        return sql.toString();
+    }
+
+    /**
+     * Result column name of a metric
+     */
+    public String aliasOf(MetricDefinition metric) {
+        if (metric.getAlias() != null) {
+            return metric.getAlias();
+        }
+        String alias = metric.getType().name().toLowerCase();
+        return metric.getField() == null ? alias : alias + "_" + metric.getField().replaceAll("[^a-zA-Z0-9_]", "_");
+    }
+
+    private String buildMetric(MetricDefinition metric, Cardinality cardinality) {
+        MetricType type = metric.getType();
+        String field = metric.getField();
+        if (type == MetricType.COUNT) {
+            return "count()";
+        }
+        if (type == MetricType.UNIQUE_COUNT) {
+            if (field == null || field.equalsIgnoreCase("user")) {
+                return cardinality.aggregate("COALESCE(userId, anonymousId)");
+            }
+            if (field.equalsIgnoreCase("session")) {
+                return cardinality.aggregate("sessionId");
+            }
+            return cardinality.aggregate(columnExpression(field));
+        }
+        if (field == null) {
+            throw new IllegalArgumentException(type + " requires a field");
+        }
+        if (isMetadataField(field)) {
+            // promoted metadata is stored as text; values that are not numbers are skipped
+            return type.getClickHouseFunction() + "(toFloat64OrNull(" + columnExpression(field) + "))";
+        }
+        if (type.isNumeric()) {
+            throw new IllegalArgumentException(type + " requires a numeric metadata.<key> field");
+        }
+        return type.getClickHouseFunction() + "(" + columnExpression(field) + ")";
+    }
+
+    private static void addColumn(Map<String, String> columns, String alias, String expression) {
+        if (columns.put(alias, expression) != null) {
+            throw new IllegalArgumentException("Duplicate result column: " + alias);
+        }
+    }
+
     /**
      * Build LIMIT clause
      */
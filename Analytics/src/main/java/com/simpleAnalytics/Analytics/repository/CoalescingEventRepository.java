@@ -0,0 +1,195 @@
+package com.simpleAnalytics.Analytics.repository;
+
+import com.simpleAnalytics.Analytics.cache.QueryKeyGenerator;
+import com.simpleAnalytics.Analytics.cache.SingleFlight;
+import com.simpleAnalytics.Analytics.config.AnalyticsProperties;
+import com.simpleAnalytics.Analytics.model.dto.Cardinality;
+import com.simpleAnalytics.Analytics.model.dto.EventCursor;
+import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
+import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import com.simpleAnalytics.Analytics.model.dto.request.AnalyticsQueryRequest;
+import com.simpleAnalytics.Analytics.model.entity.Event;
+import com.simpleAnalytics.Analytics.model.enums.ExportFormat;
+import com.simpleAnalytics.Analytics.model.enums.FunnelMode;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Sits in front of {@link EventRepositoryImpl} and lets concurrent identical queries share one
+ * ClickHouse execution, so a dashboard whose cache entry just expired costs one query instead of
+ * one per viewer. Queries are identical when their fingerprints match; unlike cache keys, time
+ * ranges are compared exactly.
+ */
+@Primary
+@Component
+public class CoalescingEventRepository implements EventRepository {
+
+    private final EventRepository delegate;
+    private final QueryKeyGenerator queryKeyGenerator;
+    private final AnalyticsProperties properties;
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    public CoalescingEventRepository(@Qualifier("eventRepositoryImpl") EventRepository delegate,
+                                     QueryKeyGenerator queryKeyGenerator, AnalyticsProperties properties) {
+        this.delegate = delegate;
+        this.queryKeyGenerator = queryKeyGenerator;
+        this.properties = properties;
+    }
+
+    @Override
+    public long getTotalEventCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
+        return coalesce(() -> delegate.getTotalEventCount(appId, timeRange, filters),
+                "getTotalEventCount", appId, timeRange, filters);
+    }
+
+    @Override
+    public long getUniqueUserCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters,
+            Cardinality cardinality) {
+        return coalesce(() -> delegate.getUniqueUserCount(appId, timeRange, filters, cardinality),
+                "getUniqueUserCount", appId, timeRange, filters, cardinality);
+    }
+
+    @Override
+    public long getUniqueSessionCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters,
+            Cardinality cardinality) {
+        return coalesce(() -> delegate.getUniqueSessionCount(appId, timeRange, filters, cardinality),
+                "getUniqueSessionCount", appId, timeRange, filters, cardinality);
+    }
+
+    @Override
+    public Map<String, Object> getPeriodComparisonMetrics(UUID appId, TimeRange current, TimeRange previous,
+            List<FilterCriteria> filters, Cardinality cardinality) {
+        return coalesce(() -> delegate.getPeriodComparisonMetrics(appId, current, previous, filters, cardinality),
+                "getPeriodComparisonMetrics", appId, current, previous, filters, cardinality);
+    }
+
+    @Override
+    public List<Map<String, Object>> getEventBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters,
+            Cardinality cardinality) {
+        return coalesce(() -> delegate.getEventBreakdown(appId, timeRange, filters, cardinality),
+                "getEventBreakdown", appId, timeRange, filters, cardinality);
+    }
+
+    @Override
+    public List<Map<String, Object>> getSourceBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
+        return coalesce(() -> delegate.getSourceBreakdown(appId, timeRange, filters),
+                "getSourceBreakdown", appId, timeRange, filters);
+    }
+
+    @Override
+    public List<Map<String, Object>> getTimeSeriesData(UUID appId, TimeRange timeRange,
+            String granularity, List<FilterCriteria> filters) {
+        return coalesce(() -> delegate.getTimeSeriesData(appId, timeRange, granularity, filters),
+                "getTimeSeriesData", appId, timeRange, granularity, filters);
+    }
+
+    @Override
+    public List<Map<String, Object>> getTopEvents(UUID appId, TimeRange timeRange,
+            int limit, List<FilterCriteria> filters) {
+        return coalesce(() -> delegate.getTopEvents(appId, timeRange, limit, filters),
+                "getTopEvents", appId, timeRange, limit, filters);
+    }
+
+    @Override
+    public List<Event> getEvents(UUID appId, TimeRange timeRange,
+            List<FilterCriteria> filters, int limit, int offset) {
+        return coalesce(() -> delegate.getEvents(appId, timeRange, filters, limit, offset),
+                "getEvents", appId, timeRange, filters, limit, offset);
+    }
+
+    @Override
+    public List<Event> getEventsAfter(UUID appId, TimeRange timeRange,
+            List<FilterCriteria> filters, EventCursor cursor, int limit) {
+        return coalesce(() -> delegate.getEventsAfter(appId, timeRange, filters, cursor, limit),
+                "getEventsAfter", appId, timeRange, filters, cursor, limit);
+    }
+
+    @Override
+    public void exportEvents(UUID appId, TimeRange timeRange, List<FilterCriteria> filters,
+            ExportFormat format, OutputStream out) {
+        // every export writes to its own stream, so there is nothing to share
+        delegate.exportEvents(appId, timeRange, filters, format, out);
+    }
+
+    @Override
+    public Map<String, Object> getCohortRetention(UUID appId, LocalDate cohortDate, List<Integer> periods,
+            LocalDateTime lookbackStart) {
+        return coalesce(() -> delegate.getCohortRetention(appId, cohortDate, periods, lookbackStart),
+                "getCohortRetention", appId, cohortDate, periods, lookbackStart);
+    }
+
+    @Override
+    public Map<String, Object> getFunnelData(UUID appId, List<String> steps, TimeRange timeRange,
+            int timeWindowMinutes, FunnelMode mode, List<FilterCriteria> filters) {
+        return coalesce(() -> delegate.getFunnelData(appId, steps, timeRange, timeWindowMinutes, mode, filters),
+                "getFunnelData", appId, steps, timeRange, timeWindowMinutes, mode, filters);
+    }
+
+    @Override
+    public List<Map<String, Object>> getDeviceBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
+        return coalesce(() -> delegate.getDeviceBreakdown(appId, timeRange, filters),
+                "getDeviceBreakdown", appId, timeRange, filters);
+    }
+
+    @Override
+    public List<Map<String, Object>> getBrowserBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
+        return coalesce(() -> delegate.getBrowserBreakdown(appId, timeRange, filters),
+                "getBrowserBreakdown", appId, timeRange, filters);
+    }
+
+    @Override
+    public List<Map<String, Object>> getOsBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
+        return coalesce(() -> delegate.getOsBreakdown(appId, timeRange, filters),
+                "getOsBreakdown", appId, timeRange, filters);
+    }
+
+    @Override
+    public List<Map<String, Object>> getLocaleBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
+        return coalesce(() -> delegate.getLocaleBreakdown(appId, timeRange, filters),
+                "getLocaleBreakdown", appId, timeRange, filters);
+    }
+
+    @Override
+    public List<Map<String, Object>> getMetadataBreakdown(UUID appId, TimeRange timeRange, String key,
+            List<FilterCriteria> filters) {
+        return coalesce(() -> delegate.getMetadataBreakdown(appId, timeRange, key, filters),
+                "getMetadataBreakdown", appId, timeRange, key, filters);
+    }
+
+    @Override
+    public List<Map<String, Object>> getAggregation(AnalyticsQueryRequest request, Cardinality cardinality) {
+        return coalesce(() -> delegate.getAggregation(request, cardinality),
+                "getAggregation", request, request.getTimeRange(), cardinality);
+    }
+
+    @Override
+    public List<Map<String, Object>> executeCustomQuery(String query, Object[] params) {
+        return coalesce(() -> delegate.executeCustomQuery(query, params),
+                "executeCustomQuery", query, params != null ? Arrays.asList(params) : null);
+    }
+
+    private <T> T coalesce(Supplier<T> query, String method, Object... args) {
+        if (!properties.getQuery().isCoalescingEnabled()) {
+            return query.get();
+        }
+        Object[] keyParts = new Object[args.length + 1];
+        keyParts[0] = method;
+        for (int i = 0; i < args.length; i++) {
+            // cache keys align time ranges, but a shared result must match the exact range
+            keyParts[i + 1] = args[i] instanceof TimeRange timeRange
+                    ? timeRange.getStartDate() + "~" + timeRange.getEndDate()
+                    : args[i];
+        }
+        return singleFlight.execute(queryKeyGenerator.fingerprint(keyParts), query);
+    }
+}
@@ -1,9 +1,17 @@
 package com.simpleAnalytics.Analytics.repository;
 
+import com.simpleAnalytics.Analytics.model.dto.Cardinality;
+import com.simpleAnalytics.Analytics.model.dto.EventCursor;
 import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
 import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import com.simpleAnalytics.Analytics.model.dto.request.AnalyticsQueryRequest;
 import com.simpleAnalytics.Analytics.model.entity.Event;
+import com.simpleAnalytics.Analytics.model.enums.ExportFormat;
+import com.simpleAnalytics.Analytics.model.enums.FunnelMode;
 
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -21,17 +29,26 @@ public interface EventRepository {
     /**
      * Get unique user count for an app
      */
-    long getUniqueUserCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters);
+    long getUniqueUserCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters,
+            Cardinality cardinality);
 
     /**
      * Get unique session count for an app
      */
-    long getUniqueSessionCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters);
+    long getUniqueSessionCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters,
+            Cardinality cardinality);
+
+    /**
+     * Get event count, unique users and unique sessions for the current and previous period in one scan
+     */
+    Map<String, Object> getPeriodComparisonMetrics(UUID appId, TimeRange current, TimeRange previous,
+            List<FilterCriteria> filters, Cardinality cardinality);
 
     /**
      * Get event breakdown by event type
      */
-    List<Map<String, Object>> getEventBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters);
+    List<Map<String, Object>> getEventBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters,
+            Cardinality cardinality);
 
     /**
      * Get source breakdown
@@ -57,15 +74,32 @@ public interface EventRepository {
             List<FilterCriteria> filters, int limit, int offset);
 
     /**
-     * Get user retention data
+     * Get events newest first, continuing after the cursor; a null cursor starts at the newest event
+     */
+    List<Event> getEventsAfter(UUID appId, TimeRange timeRange,
+            List<FilterCriteria> filters, EventCursor cursor, int limit);
+
+    /**
+     * Stream matching events to the output, encoded by ClickHouse in the given format
      */
-    List<Map<String, Object>> getUserRetention(UUID appId, TimeRange timeRange);
+    void exportEvents(UUID appId, TimeRange timeRange, List<FilterCriteria> filters,
+            ExportFormat format, OutputStream out);
 
     /**
-     * Get funnel data for multiple steps
+     * Get retention of the users first seen on the cohort date: cohortSize, and retained1..retainedN
+     * for users active again exactly that many days later
+     *
+     * @param lookbackStart earliest activity that disqualifies a user from being new
      */
-    List<Map<String, Object>> getFunnelData(UUID appId, List<String> steps,
-            TimeRange timeRange, int timeWindowMinutes);
+    Map<String, Object> getCohortRetention(UUID appId, LocalDate cohortDate, List<Integer> periods,
+            LocalDateTime lookbackStart);
+
+    /**
+     * Get funnel data for multiple steps in one pass: users reaching each step (step1..stepN) and
+     * the median seconds from each step to the next (medianSeconds1..medianSeconds(N-1))
+     */
+    Map<String, Object> getFunnelData(UUID appId, List<String> steps, TimeRange timeRange,
+            int timeWindowMinutes, FunnelMode mode, List<FilterCriteria> filters);
 
     /**
      * Get device breakdown
@@ -87,6 +121,17 @@ public interface EventRepository {
      */
     List<Map<String, Object>> getLocaleBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters);
 
+    /**
+     * Get breakdown by the value of a promoted metadata key
+     */
+    List<Map<String, Object>> getMetadataBreakdown(UUID appId, TimeRange timeRange, String key,
+                                                   List<FilterCriteria> filters);
+
+    /**
+     * Run a generic metrics query, one row per time bucket and group-by combination
+     */
+    List<Map<String, Object>> getAggregation(AnalyticsQueryRequest request, Cardinality cardinality);
+
     /**
      * Execute custom analytics query
      */
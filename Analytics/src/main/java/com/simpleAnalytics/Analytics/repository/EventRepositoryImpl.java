@@ -1,20 +1,41 @@
 package com.simpleAnalytics.Analytics.repository;
 
+import com.clickhouse.client.ClickHouseException;
+import com.clickhouse.client.ClickHouseRequest;
+import com.clickhouse.client.ClickHouseResponse;
+import com.clickhouse.data.ClickHouseFormat;
+import com.clickhouse.jdbc.ClickHouseStatement;
+import com.simpleAnalytics.Analytics.config.AnalyticsProperties;
+import com.simpleAnalytics.Analytics.exception.AnalyticsException;
 import com.simpleAnalytics.Analytics.exception.QueryTimeoutException;
+import com.simpleAnalytics.Analytics.model.dto.Cardinality;
+import com.simpleAnalytics.Analytics.model.dto.EventCursor;
 import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
 import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import com.simpleAnalytics.Analytics.model.dto.request.AnalyticsQueryRequest;
 import com.simpleAnalytics.Analytics.model.entity.Event;
+import com.simpleAnalytics.Analytics.model.enums.CardinalityMode;
+import com.simpleAnalytics.Analytics.model.enums.ExportFormat;
+import com.simpleAnalytics.Analytics.model.enums.FunnelMode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
 
 /**
  * Implementation of EventRepository for ClickHouse queries
@@ -26,6 +47,8 @@ public class EventRepositoryImpl implements EventRepository {
 
     private final JdbcTemplate clickHouseJdbcTemplate;
     private final AnalyticsQueryBuilder queryBuilder;
+    private final RollupRouter rollupRouter;
+    private final AnalyticsProperties properties;
 
     private static final String BASE_WHERE = " WHERE appId = ? AND event.timestamp BETWEEN ? AND ? ";
 
@@ -54,7 +77,8 @@ public class EventRepositoryImpl implements EventRepository {
     }
 
     @Override
-    public long getUniqueUserCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
+    public long getUniqueUserCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters,
+                                   Cardinality cardinality) {
         List<Object> params = new ArrayList<>();
         params.add(appId);
         params.add(timeRange.getStartDate());
@@ -62,7 +86,7 @@ public class EventRepositoryImpl implements EventRepository {
 
         String filterClause = queryBuilder.buildWhereClause(filters, params);
 
-        String sql = "SELECT uniqExact(COALESCE(userId, anonymousId)) FROM event " +
+        String sql = "SELECT " + cardinality.aggregate("COALESCE(userId, anonymousId)") + " FROM event " +
                      BASE_WHERE + filterClause;
 
         log.debug("Executing getUniqueUserCount: {}", sql);
@@ -76,7 +100,8 @@ public class EventRepositoryImpl implements EventRepository {
     }
 
     @Override
-    public long getUniqueSessionCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
+    public long getUniqueSessionCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters,
+                                      Cardinality cardinality) {
         List<Object> params = new ArrayList<>();
         params.add(appId);
         params.add(timeRange.getStartDate());
@@ -84,7 +109,7 @@ public class EventRepositoryImpl implements EventRepository {
 
         String filterClause = queryBuilder.buildWhereClause(filters, params);
 
-        String sql = "SELECT uniqExact(sessionId) FROM event" + 
+        String sql = "SELECT " + cardinality.aggregate("sessionId") + " FROM event" +
                      BASE_WHERE + " AND sessionId IS NOT NULL " + filterClause;
 
         log.debug("Executing getUniqueSessionCount: {}", sql);
@@ -97,9 +122,55 @@ public class EventRepositoryImpl implements EventRepository {
         }
     }
 
+    @Override
+    public Map<String, Object> getPeriodComparisonMetrics(UUID appId, TimeRange current, TimeRange previous,
+                                                          List<FilterCriteria> filters, Cardinality cardinality) {
+        // the -If conditions come first in the statement, so their parameters do too
+        List<Object> params = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            params.add(current.getStartDate());
+            params.add(current.getEndDate());
+        }
+        for (int i = 0; i < 3; i++) {
+            params.add(previous.getStartDate());
+            params.add(previous.getEndDate());
+        }
+        params.add(appId);
+        params.add(previous.getStartDate());
+        params.add(current.getEndDate());
+
+        String filterClause = queryBuilder.buildWhereClause(filters, params);
+
+        String inWindow = "event.timestamp BETWEEN ? AND ?";
+        String users = cardinality.aggregateIf("COALESCE(userId, anonymousId)", inWindow);
+        String sessions = cardinality.aggregateIf("sessionId", "sessionId IS NOT NULL AND " + inWindow);
+        String sql = """
+            SELECT
+                countIf(%1$s) as totalEvents,
+                %2$s as uniqueUsers,
+                %3$s as activeSessions,
+                countIf(%1$s) as prevTotalEvents,
+                %2$s as prevUniqueUsers,
+                %3$s as prevActiveSessions
+            FROM event
+            """.formatted(inWindow, users, sessions) + BASE_WHERE + filterClause;
+
+        log.debug("Executing getPeriodComparisonMetrics: {}", sql);
+
+        try {
+            return clickHouseJdbcTemplate.queryForMap(sql, params.toArray());
+        } catch (Exception e) {
+            throw new QueryTimeoutException("Query timed out while fetching dashboard metrics", e);
+        }
+    }
+
     @Override
     public List<Map<String, Object>> getEventBreakdown(UUID appId, TimeRange timeRange, 
-                                                        List<FilterCriteria> filters) {
+                                                        List<FilterCriteria> filters, Cardinality cardinality) {
+        if (cardinality.getMode() == CardinalityMode.UNIQ) {
+            return getEventBreakdownFromRollups(appId, timeRange, filters);
+        }
+
         List<Object> params = new ArrayList<>();
         params.add(appId);
         params.add(timeRange.getStartDate());
@@ -111,9 +182,9 @@ public class EventRepositoryImpl implements EventRepository {
             SELECT 
                 eventType,
                 count(*) as count,
-                uniqExact(COALESCE(userId, anonymousId)) as uniqueUsers
+                %s as uniqueUsers
             FROM event
-            """ + BASE_WHERE + filterClause + """
+            """.formatted(cardinality.aggregate("COALESCE(userId, anonymousId)")) + BASE_WHERE + filterClause + """
             \s
             GROUP BY eventType
             ORDER BY count DESC
@@ -128,26 +199,52 @@ public class EventRepositoryImpl implements EventRepository {
         }
     }
 
+    /**
+     * The rollups hold uniq states, so UNIQ breakdowns merge them with states built from raw edges
+     */
+    private List<Map<String, Object>> getEventBreakdownFromRollups(UUID appId, TimeRange timeRange,
+                                                                   List<FilterCriteria> filters) {
+        List<Object> params = new ArrayList<>();
+        String segments = unionOfSegments(appId, rollupRouter.plan(timeRange, filters, true, true), filters,
+                source -> source.isRollup()
+                        ? "eventType, countMerge(events) as cnt, uniqMergeState(users) as usersState"
+                        : "eventType, count() as cnt, uniqState(COALESCE(userId, anonymousId)) as usersState",
+                "eventType", params);
+
+        String sql = """
+            SELECT
+                eventType,
+                sum(cnt) as count,
+                uniqMerge(usersState) as uniqueUsers
+            FROM (%s)
+            GROUP BY eventType
+            ORDER BY count DESC
+            """.formatted(segments);
+
+        log.debug("Executing getEventBreakdown: {}", sql);
+
+        try {
+            return clickHouseJdbcTemplate.queryForList(sql, params.toArray());
+        } catch (Exception e) {
+            throw new QueryTimeoutException("Query timed out while fetching event breakdown", e);
+        }
+    }
+
     @Override
     public List<Map<String, Object>> getSourceBreakdown(UUID appId, TimeRange timeRange, 
                                                          List<FilterCriteria> filters) {
         List<Object> params = new ArrayList<>();
-        params.add(appId);
-        params.add(timeRange.getStartDate());
-        params.add(timeRange.getEndDate());
-
-        String filterClause = queryBuilder.buildWhereClause(filters, params);
+        String segments = unionOfSegments(appId, rollupRouter.plan(timeRange, filters, true, true), filters,
+                source -> "source, " + countOf(source) + " as cnt", "source", params);
 
         String sql = """
-            SELECT 
+            SELECT
                 source,
-                count(*) as count
-            FROM event
-            """ + BASE_WHERE + filterClause + """
-            \s
+                sum(cnt) as count
+            FROM (%s)
             GROUP BY source
             ORDER BY count DESC
-            """;
+            """.formatted(segments);
 
         log.debug("Executing getSourceBreakdown: {}", sql);
 
@@ -161,28 +258,22 @@ public class EventRepositoryImpl implements EventRepository {
     @Override
     public List<Map<String, Object>> getTimeSeriesData(UUID appId, TimeRange timeRange, 
                                                         String granularity, List<FilterCriteria> filters) {
+        // hourly buckets cannot be answered from the daily rollup
+        boolean allowDaily = !"toStartOfHour".equals(granularity);
         List<Object> params = new ArrayList<>();
-        params.add(appId);
-        params.add(timeRange.getStartDate());
-        params.add(timeRange.getEndDate());
+        String segments = unionOfSegments(appId, rollupRouter.plan(timeRange, filters, allowDaily, true), filters,
+                source -> String.format("%s(%s) as eventTimeStamp, %s as cnt",
+                        granularity, source.getTimeColumn(), countOf(source)),
+                "eventTimeStamp", params);
 
-        String filterClause = queryBuilder.buildWhereClause(filters, params);
-
-        // Build the time grouping expression based on granularity
-        String timeExpression = String.format("%s(event.timestamp)", granularity);
-        
         String sql = """
-            SELECT\s
-                %s as eventTimeStamp,
-                count(*) as count
-            FROM event
-           \s""" + BASE_WHERE + filterClause + """
-            \s
+            SELECT
+                eventTimeStamp,
+                sum(cnt) as count
+            FROM (%s)
             GROUP BY eventTimeStamp
             ORDER BY eventTimeStamp ASC
-            """;
-
-        sql = String.format(sql, timeExpression);
+            """.formatted(segments);
 
         log.debug("Executing getTimeSeriesData with granularity {}: {}", granularity, sql);
 
@@ -198,23 +289,18 @@ public class EventRepositoryImpl implements EventRepository {
     public List<Map<String, Object>> getTopEvents(UUID appId, TimeRange timeRange, 
                                                    int limit, List<FilterCriteria> filters) {
         List<Object> params = new ArrayList<>();
-        params.add(appId);
-        params.add(timeRange.getStartDate());
-        params.add(timeRange.getEndDate());
-
-        String filterClause = queryBuilder.buildWhereClause(filters, params);
+        String segments = unionOfSegments(appId, rollupRouter.plan(timeRange, filters, true, true), filters,
+                source -> "eventType, " + countOf(source) + " as cnt", "eventType", params);
 
         String sql = """
-            SELECT 
+            SELECT
                 eventType,
-                count(*) as count
-            FROM event
-            """ + BASE_WHERE + filterClause + """
-            \s
+                sum(cnt) as count
+            FROM (%s)
             GROUP BY eventType
             ORDER BY count DESC
             LIMIT ?
-            """;
+            """.formatted(segments);
 
         params.add(limit);
 
@@ -227,6 +313,30 @@ public class EventRepositoryImpl implements EventRepository {
         }
     }
 
+    /**
+     * Aggregate each planned segment separately and UNION ALL them for the outer query to combine
+     */
+    private String unionOfSegments(UUID appId, List<RollupRouter.Segment> segments, List<FilterCriteria> filters,
+                                   Function<RollupRouter.Source, String> selectList, String groupBy,
+                                   List<Object> params) {
+        List<String> parts = new ArrayList<>();
+        for (RollupRouter.Segment segment : segments) {
+            params.add(appId);
+            params.add(segment.from());
+            params.add(segment.to());
+            String filterClause = queryBuilder.buildWhereClause(filters, params);
+            parts.add("SELECT " + selectList.apply(segment.source())
+                    + " FROM " + segment.source().getTable()
+                    + " WHERE appId = ?" + segment.timeCondition() + filterClause
+                    + " GROUP BY " + groupBy);
+        }
+        return String.join(" UNION ALL ", parts);
+    }
+
+    private static String countOf(RollupRouter.Source source) {
+        return source.isRollup() ? "countMerge(events)" : "count()";
+    }
+
     @Override
     public List<Event> getEvents(UUID appId, TimeRange timeRange, 
                                  List<FilterCriteria> filters, int limit, int offset) {
@@ -259,70 +369,219 @@ public class EventRepositoryImpl implements EventRepository {
             throw new QueryTimeoutException("Query timed out while fetching events", e);
         }
     }
-    //The query needs fixing
+
+    @Override
+    public List<Event> getEventsAfter(UUID appId, TimeRange timeRange,
+                                      List<FilterCriteria> filters, EventCursor cursor, int limit) {
+        List<Object> params = new ArrayList<>();
+        params.add(appId);
+        params.add(timeRange.getStartDate());
+        params.add(timeRange.getEndDate());
+
+        String filterClause = queryBuilder.buildWhereClause(filters, params);
+        // seek past the previous page instead of reading and discarding it with OFFSET;
+        // the plain timestamp bound is what lets ClickHouse skip granules by primary key
+        String cursorClause = "";
+        if (cursor != null) {
+            cursorClause = " AND event.timestamp <= ? AND (event.timestamp, event.id) < (?, ?) ";
+            params.add(cursor.getTimestamp());
+            params.add(cursor.getTimestamp());
+            params.add(cursor.getId());
+        }
+
+        String sql = """
+                 SELECT\s
+                     id, appId, anonymousId, userId, sessionId, eventType,
+                     receivedAt, timestamp, source, metadata,
+                     context_ip, context_os, context_ua, context_device,
+                     context_browser, context_locale, context_timezone, schemaVersion
+                 FROM event
+                \s""" + BASE_WHERE + filterClause + cursorClause + """
+                \s
+                ORDER BY timestamp DESC, id DESC
+                \s
+                """ + queryBuilder.buildLimitClause(limit, 0);
+
+        log.debug("Executing getEventsAfter: {}", sql);
+
+        try {
+            return clickHouseJdbcTemplate.query(sql, params.toArray(), this::mapRowToEvent);
+        } catch (Exception e) {
+            throw new QueryTimeoutException("Query timed out while fetching events", e);
+        }
+    }
+
     @Override
-    public List<Map<String, Object>> getUserRetention(UUID appId, TimeRange timeRange) {
+    public void exportEvents(UUID appId, TimeRange timeRange, List<FilterCriteria> filters,
+                             ExportFormat format, OutputStream out) {
         List<Object> params = new ArrayList<>();
         params.add(appId);
         params.add(timeRange.getStartDate());
         params.add(timeRange.getEndDate());
 
+        String filterClause = queryBuilder.buildWhereClause(filters, params);
+        AnalyticsProperties.ExportProperties export = properties.getExport();
+
+        // no ORDER BY: sorting would hold back the first row until the whole result is read
         String sql = """
-            SELECT 
-                toDate(first_seen) as cohortDate,
-                dateDiff('day', first_seen, timestamp) as dayNumber,
-                uniqExact(userId) as retainedUsers
+                 SELECT\s
+                     id, appId, anonymousId, userId, sessionId, eventType,
+                     receivedAt, timestamp, source, metadata,
+                     context_ip, context_os, context_ua, context_device,
+                     context_browser, context_locale, context_timezone, schemaVersion
+                 FROM event
+                \s""" + BASE_WHERE + filterClause + queryBuilder.buildLimitClause(export.getMaxRows(), 0);
+
+        log.debug("Executing exportEvents as {}: {}", format, sql);
+
+        // rows go from the HTTP response to the output as encoded bytes; nothing is parsed here,
+        // and a slow client stalls the copy and with it the read from ClickHouse
+        clickHouseJdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                ClickHouseRequest<?> request = statement.unwrap(ClickHouseStatement.class).getRequest()
+                        .format(ClickHouseFormat.valueOf(format.getClickHouseFormat()))
+                        .set("max_execution_time", export.getMaxExecutionSeconds())
+                        .query(queryBuilder.toNamedParameters(sql))
+                        .params(params.toArray());
+                try (ClickHouseResponse response = request.executeAndWait()) {
+                    response.pipe(out, export.getBufferSize());
+                }
+            } catch (ClickHouseException e) {
+                throw new QueryTimeoutException("Query failed while exporting events", e);
+            } catch (IOException e) {
+                throw new AnalyticsException("Event export was interrupted", e);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, Object> getCohortRetention(UUID appId, LocalDate cohortDate, List<Integer> periods,
+                                                  LocalDateTime lookbackStart) {
+        AnalyticsProperties.RetentionProperties retention = properties.getRetention();
+        List<Object> params = new ArrayList<>();
+
+        // retention() flags, per user, the cohort day and then each requested day after it
+        List<LocalDate> days = new ArrayList<>();
+        days.add(cohortDate);
+        periods.forEach(period -> days.add(cohortDate.plusDays(period)));
+        String conditions = String.join(", ", Collections.nCopies(days.size(), "toDate(timestamp) = ?"));
+        params.addAll(days);
+
+        StringBuilder columns = new StringBuilder("sum(r[1]) AS cohortSize");
+        for (int i = 1; i <= periods.size(); i++) {
+            columns.append(",\n    sum(r[").append(i + 1).append("]) AS retained").append(i);
+        }
+
+        // only the requested days are read, not everything in between
+        params.add(appId);
+        params.add(cohortDate.atStartOfDay());
+        params.add(cohortDate.plusDays(periods.get(periods.size() - 1) + 1L).atStartOfDay());
+        params.addAll(days);
+
+        // the cohort is found once with a GROUP BY, and only the users first seen that day are kept
+        String cohort;
+        if (retention.isUseUserProfile()) {
+            cohort = """
+                SELECT actor FROM user_profile
+                WHERE appId = ?
+                GROUP BY actor
+                HAVING toDate(minMerge(first_seen)) = ?
+                """;
+            params.add(appId);
+            params.add(cohortDate);
+        } else {
+            cohort = """
+                SELECT COALESCE(userId, anonymousId) AS actor FROM event
+                WHERE appId = ? AND event.timestamp >= ? AND event.timestamp < ?
+                GROUP BY actor
+                HAVING min(timestamp) >= ?
+                """;
+            params.add(appId);
+            params.add(lookbackStart);
+            params.add(cohortDate.plusDays(1).atStartOfDay());
+            params.add(cohortDate.atStartOfDay());
+        }
+
+        String sql = """
+            SELECT
+                %s
             FROM (
-                SELECT 
-                    userId,
-                    min(timestamp) OVER (PARTITION BY userId) as first_seen,
-                    timestamp
+                SELECT
+                    COALESCE(userId, anonymousId) AS actor,
+                    retention(%s) AS r
                 FROM event
-                WHERE appId = ? 
-                    AND timestamp BETWEEN ? AND ?
-                    AND userId IS NOT NULL
-            ) as uIfst
-            GROUP BY cohortDate, dayNumber
-            ORDER BY cohortDate, dayNumber
-            """;
-
-        log.debug("Executing getUserRetention: {}", sql);
+                WHERE appId = ?
+                    AND event.timestamp >= ? AND event.timestamp < ?
+                    AND toDate(timestamp) IN (%s)
+                    AND actor IN (%s)
+                GROUP BY actor
+            )
+            SETTINGS optimize_aggregation_in_order = 1, max_bytes_before_external_group_by = %d
+            """.formatted(columns, conditions, String.join(", ", Collections.nCopies(days.size(), "?")),
+                cohort, retention.getMaxBytesBeforeExternalGroupBy());
+
+        log.debug("Executing getCohortRetention: {}", sql);
 
         try {
-            return clickHouseJdbcTemplate.queryForList(sql, params.toArray());
+            return clickHouseJdbcTemplate.queryForMap(sql, params.toArray());
         } catch (Exception e) {
             throw new QueryTimeoutException("Query timed out while fetching user retention", e);
         }
     }
 
     @Override
-    public List<Map<String, Object>> getFunnelData(UUID appId, List<String> steps, 
-                                                    TimeRange timeRange, int timeWindowMinutes) {
-        // Build dynamic funnel query based on number of steps
-        // This is a simplified version - can be enhanced for more complex funnels
-        
+    public Map<String, Object> getFunnelData(UUID appId, List<String> steps, TimeRange timeRange,
+                                             int timeWindowMinutes, FunnelMode mode, List<FilterCriteria> filters) {
         List<Object> params = new ArrayList<>();
+
+        // one row per user: how far windowFunnel got and when each step first happened
+        String conditions = String.join(", ", Collections.nCopies(steps.size(), "eventType = ?"));
+        params.addAll(steps);
+        StringBuilder firstSeen = new StringBuilder();
+        for (int i = 1; i <= steps.size(); i++) {
+            firstSeen.append(",\n            minIf(toDateTime(timestamp), eventType = ?) AS t").append(i);
+            params.add(steps.get(i - 1));
+        }
+        String funnelParams = timeWindowMinutes * 60
+                + (mode != null && mode.getClickHouseMode() != null ? ", '" + mode.getClickHouseMode() + "'" : "");
+
         params.add(appId);
         params.add(timeRange.getStartDate());
         params.add(timeRange.getEndDate());
-        params.add(steps.get(0));
+        String filterClause = queryBuilder.buildWhereClause(filters, params);
+        // rows matching no step are ignored by windowFunnel anyway, so skip reading them
+        String stepClause = " AND eventType IN (" + String.join(", ", Collections.nCopies(steps.size(), "?")) + ") ";
+        params.addAll(steps);
+
+        StringBuilder stepColumns = new StringBuilder();
+        for (int i = 1; i <= steps.size(); i++) {
+            stepColumns.append(i > 1 ? ",\n    " : "").append("countIf(level >= ").append(i).append(") AS step").append(i);
+            if (i < steps.size()) {
+                // first occurrences only, so a user who repeats a step counts from the first one
+                stepColumns.append(",\n    quantileIf(0.5)(t").append(i + 1).append(" - t").append(i)
+                        .append(", level >= ").append(i + 1).append(" AND t").append(i + 1).append(" >= t").append(i)
+                        .append(") AS medianSeconds").append(i);
+            }
+        }
 
         String sql = """
-            SELECT 
-                eventType,
-                count(DISTINCT COALESCE(userId, anonymousId)) as userCount
-            FROM eventsdb.event
-            WHERE appId = ? 
-                AND timestamp BETWEEN ? AND ?
-                AND eventType = ?
-            \s
-            GROUP BY eventType
-            """;
+            SELECT
+                %s
+            FROM (
+                SELECT
+                    COALESCE(userId, anonymousId) AS actor,
+                    windowFunnel(%s)(toDateTime(timestamp), %s) AS level%s
+                FROM event
+                %s%s%s
+                GROUP BY actor
+            )
+            """.formatted(stepColumns, funnelParams, conditions, firstSeen, BASE_WHERE, filterClause, stepClause);
 
         log.debug("Executing getFunnelData: {}", sql);
 
         try {
-            return clickHouseJdbcTemplate.queryForList(sql, params.toArray());
+            return clickHouseJdbcTemplate.queryForMap(sql, params.toArray());
         } catch (Exception e) {
             throw new QueryTimeoutException("Query timed out while fetching funnel data", e);
         }
@@ -352,8 +611,22 @@ public class EventRepositoryImpl implements EventRepository {
         return getContextBreakdown(appId, timeRange, filters, "context_locale");
     }
 
+    @Override
+    public List<Map<String, Object>> getMetadataBreakdown(UUID appId, TimeRange timeRange, String key,
+                                                          List<FilterCriteria> filters) {
+        String field = queryBuilder.columnExpression("metadata." + key);
+        // only the metadata_props column is read, never the JSON metadata string
+        return getContextBreakdown(appId, timeRange, filters, field, "mapContains(metadata_props, '" + key + "')");
+    }
+
     private List<Map<String, Object>> getContextBreakdown(UUID appId, TimeRange timeRange, 
                                                            List<FilterCriteria> filters, String field) {
+        return getContextBreakdown(appId, timeRange, filters, field, field + " IS NOT NULL");
+    }
+
+    private List<Map<String, Object>> getContextBreakdown(UUID appId, TimeRange timeRange,
+                                                           List<FilterCriteria> filters, String field,
+                                                           String presentCondition) {
         List<Object> params = new ArrayList<>();
         params.add(appId);
         params.add(timeRange.getStartDate());
@@ -366,12 +639,12 @@ public class EventRepositoryImpl implements EventRepository {
                 %s as value,
                 count(*) as count
             FROM event
-           \s""" + BASE_WHERE + " AND %s IS NOT NULL" + filterClause + """
+           \s""" + BASE_WHERE + " AND %s" + filterClause + """
             \s
             GROUP BY value
             ORDER BY count DESC
             LIMIT 20
-            """, field, field);
+            """, field, presentCondition);
 
         log.debug("Executing getContextBreakdown for {}: {}", field, sql);
 
@@ -386,6 +659,20 @@ public class EventRepositoryImpl implements EventRepository {
         }
     }
 
+    @Override
+    public List<Map<String, Object>> getAggregation(AnalyticsQueryRequest request, Cardinality cardinality) {
+        List<Object> params = new ArrayList<>();
+        String sql = queryBuilder.buildAggregationQuery(request, cardinality, params);
+
+        log.debug("Executing getAggregation: {}", sql);
+
+        try {
+            return clickHouseJdbcTemplate.queryForList(sql, params.toArray());
+        } catch (Exception e) {
+            throw new QueryTimeoutException("Query timed out while running aggregation query", e);
+        }
+    }
+
     @Override
     public List<Map<String, Object>> executeCustomQuery(String query, Object[] params) {
         log.debug("Executing custom query: {}", query);
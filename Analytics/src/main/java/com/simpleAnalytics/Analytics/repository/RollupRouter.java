@@ -0,0 +1,124 @@
+package com.simpleAnalytics.Analytics.repository;
+
+import com.simpleAnalytics.Analytics.config.AnalyticsProperties;
+import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
+import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits a time range across the hourly and daily rollup views so that whole buckets are read
+ * pre-aggregated and only the partial edges, and anything newer than the last full hour, are
+ * scanned from raw events. Bucket boundaries assume ClickHouse and the service share a time zone.
+ */
+@Component
+@RequiredArgsConstructor
+public class RollupRouter {
+
+    /**
+     * Columns present in the rollup views; filters on anything else need raw events
+     */
+    private static final Set<String> ROLLUP_COLUMNS = Set.of("appId", "eventType", "source");
+
+    private final AnalyticsProperties properties;
+    private final AnalyticsQueryBuilder queryBuilder;
+
+    public enum Source {
+        RAW("event", "timestamp"),
+        HOURLY("event_rollup_hourly", "bucket"),
+        DAILY("event_rollup_daily", "bucket");
+
+        private final String table;
+        private final String timeColumn;
+
+        Source(String table, String timeColumn) {
+            this.table = table;
+            this.timeColumn = timeColumn;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public String getTimeColumn() {
+            return timeColumn;
+        }
+
+        public boolean isRollup() {
+            return this != RAW;
+        }
+    }
+
+    /**
+     * Part of a time range read from one source; only the last raw segment includes its end
+     */
+    public record Segment(Source source, LocalDateTime from, LocalDateTime to, boolean inclusiveEnd) {
+
+        public String timeCondition() {
+            return " AND " + source.getTimeColumn() + " >= ? AND " + source.getTimeColumn()
+                    + (inclusiveEnd ? " <= ? " : " < ? ");
+        }
+    }
+
+    /**
+     * Plan the segments for a query
+     *
+     * @param allowDaily whether the query groups by a day or coarser, or not by time at all
+     * @param eligible   whether the query's aggregates can be answered from rollup states
+     */
+    public List<Segment> plan(TimeRange timeRange, List<FilterCriteria> filters,
+                              boolean allowDaily, boolean eligible) {
+        LocalDateTime start = timeRange.getStartDate();
+        LocalDateTime end = timeRange.getEndDate();
+        List<Segment> segments = new ArrayList<>();
+
+        if (!properties.getRollup().isEnabled() || !eligible
+                || !queryBuilder.referencesOnly(filters, ROLLUP_COLUMNS)) {
+            segments.add(new Segment(Source.RAW, start, end, true));
+            return segments;
+        }
+
+        // the current hour is still filling up, so it is always read raw
+        LocalDateTime lastFullHour = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime hourStart = ceil(start, ChronoUnit.HOURS);
+        LocalDateTime hourEnd = min(end, lastFullHour).truncatedTo(ChronoUnit.HOURS);
+        if (!hourStart.isBefore(hourEnd)) {
+            segments.add(new Segment(Source.RAW, start, end, true));
+            return segments;
+        }
+
+        addSegment(segments, Source.RAW, start, hourStart);
+        LocalDateTime dayStart = ceil(hourStart, ChronoUnit.DAYS);
+        LocalDateTime dayEnd = hourEnd.truncatedTo(ChronoUnit.DAYS);
+        if (allowDaily && dayStart.isBefore(dayEnd)) {
+            addSegment(segments, Source.HOURLY, hourStart, dayStart);
+            addSegment(segments, Source.DAILY, dayStart, dayEnd);
+            addSegment(segments, Source.HOURLY, dayEnd, hourEnd);
+        } else {
+            addSegment(segments, Source.HOURLY, hourStart, hourEnd);
+        }
+        segments.add(new Segment(Source.RAW, hourEnd, end, true));
+        return segments;
+    }
+
+    private static void addSegment(List<Segment> segments, Source source, LocalDateTime from, LocalDateTime to) {
+        if (from.isBefore(to)) {
+            segments.add(new Segment(source, from, to, false));
+        }
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime floor = time.truncatedTo(unit);
+        return floor.equals(time) ? floor : floor.plus(1, unit);
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
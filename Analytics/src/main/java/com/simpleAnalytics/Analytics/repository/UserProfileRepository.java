@@ -0,0 +1,29 @@
+package com.simpleAnalytics.Analytics.repository;
+
+import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Repository interface for the per-user profile table maintained at ingest
+ */
+public interface UserProfileRepository {
+
+    /**
+     * Get first seen, last seen and event count of one user (userId, else anonymousId)
+     */
+    Optional<Map<String, Object>> getUserProfile(UUID appId, UUID actor);
+
+    /**
+     * Count users first seen within the time range, per day
+     */
+    List<Map<String, Object>> getNewUsersByDay(UUID appId, TimeRange timeRange);
+
+    /**
+     * Count users seen before the time range and again within it
+     */
+    long getReturningUserCount(UUID appId, TimeRange timeRange);
+}
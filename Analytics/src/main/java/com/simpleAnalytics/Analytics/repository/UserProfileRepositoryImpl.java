@@ -0,0 +1,99 @@
+package com.simpleAnalytics.Analytics.repository;
+
+import com.simpleAnalytics.Analytics.exception.QueryTimeoutException;
+import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Implementation of UserProfileRepository over the user_profile table, which
+ * EventConsumer fills from every insert into event. Rows of one user are only merged in the
+ * background, so every read finishes the aggregation with a GROUP BY.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class UserProfileRepositoryImpl implements UserProfileRepository {
+
+    private final JdbcTemplate clickHouseJdbcTemplate;
+
+    @Override
+    public Optional<Map<String, Object>> getUserProfile(UUID appId, UUID actor) {
+        String sql = """
+            SELECT
+                actor,
+                minMerge(first_seen) AS firstSeen,
+                maxMerge(last_seen) AS lastSeen,
+                countMerge(event_count) AS eventCount
+            FROM user_profile
+            WHERE appId = ? AND actor = ?
+            GROUP BY actor
+            """;
+
+        log.debug("Executing getUserProfile: {}", sql);
+
+        try {
+            return clickHouseJdbcTemplate.queryForList(sql, appId, actor).stream().findFirst();
+        } catch (Exception e) {
+            throw new QueryTimeoutException("Query timed out while fetching user profile", e);
+        }
+    }
+
+    @Override
+    public List<Map<String, Object>> getNewUsersByDay(UUID appId, TimeRange timeRange) {
+        String sql = """
+            SELECT
+                toDate(firstSeen) AS day,
+                count() AS newUsers
+            FROM (
+                SELECT actor, minMerge(first_seen) AS firstSeen FROM user_profile
+                WHERE appId = ?
+                GROUP BY actor
+                HAVING firstSeen BETWEEN ? AND ?
+            )
+            GROUP BY day
+            ORDER BY day
+            """;
+
+        log.debug("Executing getNewUsersByDay: {}", sql);
+
+        try {
+            return clickHouseJdbcTemplate.queryForList(sql, appId, timeRange.getStartDate(), timeRange.getEndDate());
+        } catch (Exception e) {
+            throw new QueryTimeoutException("Query timed out while fetching new users by day", e);
+        }
+    }
+
+    @Override
+    public long getReturningUserCount(UUID appId, TimeRange timeRange) {
+        // last_seen only rules users out; activity inside the range still has to be read from event
+        String sql = """
+            SELECT uniqExact(COALESCE(userId, anonymousId)) FROM event
+            WHERE appId = ? AND event.timestamp BETWEEN ? AND ?
+                AND COALESCE(userId, anonymousId) IN (
+                    SELECT actor FROM user_profile
+                    WHERE appId = ?
+                    GROUP BY actor
+                    HAVING minMerge(first_seen) < ? AND maxMerge(last_seen) >= ?
+                )
+            """;
+
+        log.debug("Executing getReturningUserCount: {}", sql);
+
+        try {
+            Long result = clickHouseJdbcTemplate.queryForObject(sql, Long.class,
+                    appId, timeRange.getStartDate(), timeRange.getEndDate(),
+                    appId, timeRange.getStartDate(), timeRange.getStartDate());
+            return result != null ? result : 0L;
+        } catch (Exception e) {
+            throw new QueryTimeoutException("Query timed out while counting returning users", e);
+        }
+    }
+}
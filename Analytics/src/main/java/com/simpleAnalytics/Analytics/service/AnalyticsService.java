@@ -1,12 +1,17 @@
 package com.simpleAnalytics.Analytics.service;
 
+import com.simpleAnalytics.Analytics.model.dto.Cardinality;
 import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
 import com.simpleAnalytics.Analytics.model.dto.TimeRange;
 import com.simpleAnalytics.Analytics.model.dto.request.AnalyticsQueryRequest;
 import com.simpleAnalytics.Analytics.model.dto.request.FunnelRequest;
+import com.simpleAnalytics.Analytics.model.dto.request.RetentionRequest;
 import com.simpleAnalytics.Analytics.model.dto.response.*;
 import com.simpleAnalytics.Analytics.model.entity.Event;
+import com.simpleAnalytics.Analytics.model.enums.CardinalityMode;
+import com.simpleAnalytics.Analytics.model.enums.ExportFormat;
 
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -16,10 +21,15 @@ import java.util.UUID;
  */
 public interface AnalyticsService {
 
+    /**
+     * Resolve the requested distinct-count mode, falling back to the configured default
+     */
+    Cardinality resolveCardinality(CardinalityMode mode, Integer precision, boolean dashboard);
+
     /**
      * Get dashboard overview with key metrics
      */
-    DashboardOverview getDashboardOverview(UUID appId, TimeRange timeRange);
+    DashboardOverview getDashboardOverview(UUID appId, TimeRange timeRange, Cardinality cardinality);
 
     /**
      * Get total event count
@@ -29,17 +39,18 @@ public interface AnalyticsService {
     /**
      * Get unique user count
      */
-    long getUniqueUserCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters);
+    long getUniqueUserCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters, Cardinality cardinality);
 
     /**
      * Get active session count
      */
-    long getActiveSessionCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters);
+    long getActiveSessionCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters, Cardinality cardinality);
 
     /**
      * Get event breakdown by type
      */
-    List<EventBreakdown> getEventBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters);
+    List<EventBreakdown> getEventBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters,
+            Cardinality cardinality);
 
     /**
      * Get source breakdown
@@ -61,11 +72,36 @@ public interface AnalyticsService {
      */
     List<Event> getEvents(UUID appId, TimeRange timeRange, List<FilterCriteria> filters, int limit, int offset);
 
+    /**
+     * Get a page of events newest first; pass the previous page's cursor to continue, at any depth
+     */
+    EventPage getEventPage(UUID appId, TimeRange timeRange, List<FilterCriteria> filters, String cursor, int limit);
+
+    /**
+     * Stream all matching events to the output without holding them in memory
+     */
+    void exportEvents(UUID appId, TimeRange timeRange, List<FilterCriteria> filters, ExportFormat format, OutputStream out);
+
     /**
      * Get funnel analysis
      */
     FunnelAnalysis getFunnelAnalysis(FunnelRequest request);
 
+    /**
+     * Get retention of the users first seen on the cohort date
+     */
+    RetentionAnalysis getRetentionAnalysis(RetentionRequest request);
+
+    /**
+     * Get users first seen within the time range and users who came back in it
+     */
+    UserActivity getUserActivity(UUID appId, TimeRange timeRange);
+
+    /**
+     * Get first seen, last seen and event count of one user
+     */
+    UserProfile getUserProfile(UUID appId, UUID actorId);
+
     /**
      * Get device breakdown
      */
@@ -80,4 +116,14 @@ public interface AnalyticsService {
      * Get OS breakdown
      */
     List<Map<String, Object>> getOsBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters);
+
+    /**
+     * Get breakdown by the value of a promoted metadata key
+     */
+    List<Map<String, Object>> getMetadataBreakdown(UUID appId, TimeRange timeRange, String key, List<FilterCriteria> filters);
+
+    /**
+     * Run a generic metrics query over any dimensions in a single statement
+     */
+    List<Map<String, Object>> getAggregation(AnalyticsQueryRequest request);
 }
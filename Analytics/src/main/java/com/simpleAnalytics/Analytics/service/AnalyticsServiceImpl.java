@@ -1,25 +1,44 @@
 package com.simpleAnalytics.Analytics.service;
 
+import com.simpleAnalytics.Analytics.cache.QueryKeyGenerator;
+import com.simpleAnalytics.Analytics.cache.TimeSeriesBucketCache;
 import com.simpleAnalytics.Analytics.config.AnalyticsProperties;
+import com.simpleAnalytics.Analytics.exception.AnalyticsException;
 import com.simpleAnalytics.Analytics.exception.InvalidQueryException;
+import com.simpleAnalytics.Analytics.exception.ResourceNotFoundException;
+import com.simpleAnalytics.Analytics.model.dto.Cardinality;
+import com.simpleAnalytics.Analytics.model.dto.EventCursor;
 import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
 import com.simpleAnalytics.Analytics.model.dto.TimeRange;
 import com.simpleAnalytics.Analytics.model.dto.request.AnalyticsQueryRequest;
 import com.simpleAnalytics.Analytics.model.dto.request.FunnelRequest;
+import com.simpleAnalytics.Analytics.model.dto.request.RetentionRequest;
 import com.simpleAnalytics.Analytics.model.dto.response.*;
 import com.simpleAnalytics.Analytics.model.entity.Event;
+import com.simpleAnalytics.Analytics.model.enums.CardinalityMode;
+import com.simpleAnalytics.Analytics.model.enums.ExportFormat;
+import com.simpleAnalytics.Analytics.model.enums.TimeGranularity;
 import com.simpleAnalytics.Analytics.repository.EventRepository;
+import com.simpleAnalytics.Analytics.repository.UserProfileRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import java.io.OutputStream;
 import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -30,26 +49,75 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class AnalyticsServiceImpl implements AnalyticsService {
 
+    /**
+     * windowFunnel takes at most 32 conditions
+     */
+    private static final int MAX_FUNNEL_STEPS = 32;
+
+    /**
+     * retention() takes at most 32 conditions, one of which is the cohort day
+     */
+    private static final int MAX_RETENTION_PERIODS = 31;
+
+    private static final List<Integer> DEFAULT_RETENTION_PERIODS = List.of(1, 7, 14, 30);
+
+    private static final int MAX_QUERY_METRICS = 20;
+
+    private static final int MAX_QUERY_DIMENSIONS = 5;
+
     private final EventRepository eventRepository;
+    private final UserProfileRepository userProfileRepository;
     private final AnalyticsProperties properties;
+    private final ExecutorService analyticsQueryExecutor;
+    private final QueryKeyGenerator queryKeyGenerator;
+    private final TimeSeriesBucketCache bucketCache;
 
     @Override
-    @Cacheable(value = "dashboard", key = "#appId + '_' + #timeRange.startDate + '_' + #timeRange.endDate")
-    public DashboardOverview getDashboardOverview(UUID appId, TimeRange timeRange) {
-        log.info("Getting dashboard overview for appId: {}", appId);
+    public Cardinality resolveCardinality(CardinalityMode mode, Integer precision, boolean dashboard) {
+        if (precision != null && (precision < Cardinality.MIN_PRECISION || precision > Cardinality.MAX_PRECISION)) {
+            throw new InvalidQueryException(
+                    "Precision must be between " + Cardinality.MIN_PRECISION + " and " + Cardinality.MAX_PRECISION
+            );
+        }
+        if (mode == null) {
+            mode = dashboard
+                    ? properties.getQuery().getDashboardCardinality()
+                    : properties.getQuery().getDefaultCardinality();
+        }
+        return Cardinality.of(mode, precision);
+    }
 
-        validateTimeRange(timeRange);
+    @Override
+    @Cacheable(value = "dashboard", keyGenerator = "queryKeyGenerator", sync = true)
+    public DashboardOverview getDashboardOverview(UUID appId, TimeRange requestedRange, Cardinality cardinality) {
+        log.info("Getting dashboard overview for appId: {}", appId);
 
-        // Fetch all metrics in parallel (can be optimized with CompletableFuture)
-        long totalEvents = getTotalEventCount(appId, timeRange, null);
-        long uniqueUsers = getUniqueUserCount(appId, timeRange, null);
-        long activeSessions = getActiveSessionCount(appId, timeRange, null);
+        TimeRange timeRange = alignedTimeRange(requestedRange);
 
-        // Calculate previous period for comparison
+        // Every query is independent, so run them together; latency is the slowest, not the sum
         TimeRange previousPeriod = getPreviousPeriod(timeRange);
-        long prevTotalEvents = getTotalEventCount(appId, previousPeriod, null);
-        long prevUniqueUsers = getUniqueUserCount(appId, previousPeriod, null);
-        long prevActiveSessions = getActiveSessionCount(appId, previousPeriod, null);
+        AnalyticsQueryRequest timeSeriesRequest = AnalyticsQueryRequest.builder()
+                .appId(appId)
+                .timeRange(timeRange)
+                .build();
+
+        ParallelQueries queries = new ParallelQueries(analyticsQueryExecutor);
+        // one scan of the combined window yields all six counts for the metric cards
+        Supplier<Map<String, Object>> metricsQuery = queries.submit(() ->
+                eventRepository.getPeriodComparisonMetrics(appId, timeRange, previousPeriod, null, cardinality));
+        Supplier<List<TimeSeriesData>> timeSeriesQuery = queries.submit(() -> getTimeSeriesData(timeSeriesRequest));
+        Supplier<List<EventBreakdown>> topEventsQuery = queries.submit(() -> getTopEvents(appId, timeRange, 10, null));
+        Supplier<List<SourceBreakdown>> sourceBreakdownQuery = queries.submit(() -> getSourceBreakdown(appId, timeRange, null));
+
+        queries.awaitAll(Duration.ofMillis(properties.getExecutor().getDashboardTimeoutMs()));
+
+        Map<String, Object> metrics = metricsQuery.get();
+        long totalEvents = longValue(metrics, "totalEvents");
+        long uniqueUsers = longValue(metrics, "uniqueUsers");
+        long activeSessions = longValue(metrics, "activeSessions");
+        long prevTotalEvents = longValue(metrics, "prevTotalEvents");
+        long prevUniqueUsers = longValue(metrics, "prevUniqueUsers");
+        long prevActiveSessions = longValue(metrics, "prevActiveSessions");
 
         // Build metric cards
         MetricCard totalEventsCard = buildMetricCard(
@@ -69,59 +137,49 @@ public class AnalyticsServiceImpl implements AnalyticsService {
                 .formattedValue(String.format("%.2f", avgEventsPerUser))
                 .build();
 
-        // Get event time series
-        AnalyticsQueryRequest timeSeriesRequest = AnalyticsQueryRequest.builder()
-                .appId(appId)
-                .timeRange(timeRange)
-                .build();
-        List<TimeSeriesData> timeSeries = getTimeSeriesData(timeSeriesRequest);
-
-        // Get top events and source breakdown
-        List<EventBreakdown> topEvents = getTopEvents(appId, timeRange, 10, null);
-        List<SourceBreakdown> sourceBreakdown = getSourceBreakdown(appId, timeRange, null);
-
         return DashboardOverview.builder()
                 .totalEvents(totalEventsCard)
                 .uniqueUsers(uniqueUsersCard)
                 .activeSessions(activeSessionsCard)
                 .avgEventsPerUser(avgEventsPerUserCard)
-                .eventTimeSeries(timeSeries)
-                .topEvents(topEvents)
-                .sourceBreakdown(sourceBreakdown)
+                .eventTimeSeries(timeSeriesQuery.get())
+                .topEvents(topEventsQuery.get())
+                .sourceBreakdown(sourceBreakdownQuery.get())
                 .build();
     }
 
     @Override
-    @Cacheable(value = "analytics", key = "'eventCount_' + #appId + '_' + #timeRange.startDate")
+    @Cacheable(value = "analytics", keyGenerator = "queryKeyGenerator", sync = true)
     public long getTotalEventCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
         log.debug("Getting total event count for appId: {}", appId);
-        validateTimeRange(timeRange);
+        timeRange = alignedTimeRange(timeRange);
         return eventRepository.getTotalEventCount(appId, timeRange, filters);
     }
 
     @Override
-    @Cacheable(value = "analytics", key = "'userCount_' + #appId + '_' + #timeRange.startDate")
-    public long getUniqueUserCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
+    @Cacheable(value = "analytics", keyGenerator = "queryKeyGenerator", sync = true)
+    public long getUniqueUserCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters, Cardinality cardinality) {
         log.debug("Getting unique user count for appId: {}", appId);
-        validateTimeRange(timeRange);
-        return eventRepository.getUniqueUserCount(appId, timeRange, filters);
+        timeRange = alignedTimeRange(timeRange);
+        return eventRepository.getUniqueUserCount(appId, timeRange, filters, cardinality);
     }
 
     @Override
-    @Cacheable(value = "analytics", key = "'sessionCount_' + #appId + '_' + #timeRange.startDate")
-    public long getActiveSessionCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
+    @Cacheable(value = "analytics", keyGenerator = "queryKeyGenerator", sync = true)
+    public long getActiveSessionCount(UUID appId, TimeRange timeRange, List<FilterCriteria> filters, Cardinality cardinality) {
         log.debug("Getting active session count for appId: {}", appId);
-        validateTimeRange(timeRange);
-        return eventRepository.getUniqueSessionCount(appId, timeRange, filters);
+        timeRange = alignedTimeRange(timeRange);
+        return eventRepository.getUniqueSessionCount(appId, timeRange, filters, cardinality);
     }
 
     @Override
-    @Cacheable(value = "analytics", key = "'eventBreakdown_' + #appId + '_' + #timeRange.startDate")
-    public List<EventBreakdown> getEventBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
+    @Cacheable(value = "analytics", keyGenerator = "queryKeyGenerator", sync = true)
+    public List<EventBreakdown> getEventBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters,
+                                                  Cardinality cardinality) {
         log.debug("Getting event breakdown for appId: {}", appId);
-        validateTimeRange(timeRange);
+        timeRange = alignedTimeRange(timeRange);
 
-        List<Map<String, Object>> results = eventRepository.getEventBreakdown(appId, timeRange, filters);
+        List<Map<String, Object>> results = eventRepository.getEventBreakdown(appId, timeRange, filters, cardinality);
         long totalCount = results.stream()
                 .mapToLong(r -> ((Number) r.get("count")).longValue())
                 .sum();
@@ -138,10 +196,10 @@ public class AnalyticsServiceImpl implements AnalyticsService {
     }
 
     @Override
-    @Cacheable(value = "analytics", key = "'sourceBreakdown_' + #appId + '_' + #timeRange.startDate")
+    @Cacheable(value = "analytics", keyGenerator = "queryKeyGenerator", sync = true)
     public List<SourceBreakdown> getSourceBreakdown(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
         log.debug("Getting source breakdown for appId: {}", appId);
-        validateTimeRange(timeRange);
+        timeRange = alignedTimeRange(timeRange);
 
         List<Map<String, Object>> results = eventRepository.getSourceBreakdown(appId, timeRange, filters);
         long totalCount = results.stream()
@@ -159,25 +217,105 @@ public class AnalyticsServiceImpl implements AnalyticsService {
     }
 
     @Override
-    @Cacheable(value = "analytics", key = "'timeSeries_' + #request.appId + '_' + #request.granularity")
-    public List<TimeSeriesData> getTimeSeriesData(AnalyticsQueryRequest request) {
-        log.debug("Getting time series data for appId: {}", request.getAppId());
-        validateTimeRange(request.getTimeRange());
+    @Cacheable(value = "realtime", keyGenerator = "queryKeyGenerator", sync = true)
+    public List<TimeSeriesData> getTimeSeriesData(AnalyticsQueryRequest requested) {
+        log.debug("Getting time series data for appId: {}", requested.getAppId());
+        AnalyticsQueryRequest request = aligned(requested);
+
+        TimeGranularity granularity = TimeGranularity.fromClickHouseFunction(determineGranularity(request));
+        LocalDateTime start = request.getTimeRange().getStartDate();
+        LocalDateTime end = request.getTimeRange().getEndDate();
+
+        // whole buckets inside the range that can no longer change
+        LocalDateTime sealedBefore = bucketCache.sealedBefore();
+        List<LocalDateTime> sealable = new ArrayList<>();
+        LocalDateTime bucket = granularity.bucketStart(start);
+        if (bucket.isBefore(start)) {
+            bucket = granularity.nextBucket(bucket);
+        }
+        while (!granularity.nextBucket(bucket).isAfter(end) && !granularity.nextBucket(bucket).isAfter(sealedBefore)) {
+            sealable.add(bucket);
+            bucket = granularity.nextBucket(bucket);
+        }
+
+        String seriesKey = bucketCache.seriesKey(request.getAppId(), granularity, request.getFilters());
+        Map<LocalDateTime, Long> cached = bucketCache.getSealed(seriesKey, sealable);
+        int hits = 0;
+        while (hits < sealable.size() && cached.containsKey(sealable.get(hits))) {
+            hits++;
+        }
+
+        Map<LocalDateTime, Long> counts = new TreeMap<>();
+        if (hits == 0) {
+            counts.putAll(queryTimeSeries(request, granularity, start, end));
+        } else {
+            // the partial bucket before the first whole one depends on the exact start, so it is never cached
+            LocalDateTime firstCached = sealable.get(0);
+            if (start.isBefore(firstCached)) {
+                counts.putAll(queryTimeSeries(request, granularity, start, firstCached));
+            }
+            counts.putAll(queryTimeSeries(request, granularity, granularity.nextBucket(sealable.get(hits - 1)), end));
+            // also replaces the partial rows the edge queries return for the cached buckets
+            for (LocalDateTime sealed : sealable.subList(0, hits)) {
+                counts.put(sealed, cached.get(sealed));
+            }
+        }
+
+        // empty buckets are stored too, otherwise they would be queried on every refresh
+        Map<LocalDateTime, Long> newlySealed = new LinkedHashMap<>();
+        for (LocalDateTime sealed : sealable.subList(hits, sealable.size())) {
+            newlySealed.put(sealed, counts.getOrDefault(sealed, 0L));
+        }
+        bucketCache.putSealed(seriesKey, newlySealed);
+
+        return counts.entrySet().stream()
+                .filter(e -> e.getValue() > 0)
+                .map(e -> TimeSeriesData.builder()
+                .timestamp(e.getKey())
+                .value(e.getValue())
+                .build())
+                .collect(Collectors.toList());
+    }
 
-        String granularity = determineGranularity(request);
+    private Map<LocalDateTime, Long> queryTimeSeries(AnalyticsQueryRequest request, TimeGranularity granularity,
+                                                     LocalDateTime from, LocalDateTime to) {
         List<Map<String, Object>> results = eventRepository.getTimeSeriesData(
                 request.getAppId(),
-                request.getTimeRange(),
-                granularity,
+                TimeRange.builder().startDate(from).endDate(to).build(),
+                granularity.getClickHouseFunction(),
                 request.getFilters()
         );
 
-        return results.stream()
-                .map(r -> TimeSeriesData.builder()
-                .timestamp((LocalDateTime) r.get("timestamp"))
-                .value(((Number) r.get("count")).longValue())
-                .build())
-                .collect(Collectors.toList());
+        Map<LocalDateTime, Long> counts = new TreeMap<>();
+        for (Map<String, Object> r : results) {
+            counts.put(toLocalDateTime(r.get("eventTimeStamp")), ((Number) r.get("count")).longValue());
+        }
+        return counts;
+    }
+
+    /**
+     * Bucket starts and profile timestamps come back as DateTime or Date depending on the column
+     */
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof LocalDateTime dateTime) {
+            return dateTime;
+        }
+        if (value instanceof LocalDate date) {
+            return date.atStartOfDay();
+        }
+        if (value instanceof java.sql.Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        if (value instanceof java.sql.Date date) {
+            return date.toLocalDate().atStartOfDay();
+        }
+        if (value instanceof OffsetDateTime dateTime) {
+            return dateTime.toLocalDateTime();
+        }
+        if (value instanceof ZonedDateTime dateTime) {
+            return dateTime.toLocalDateTime();
+        }
+        throw new AnalyticsException("Unexpected timestamp value: " + value);
     }
 
     @Override
@@ -204,26 +342,161 @@ public class AnalyticsServiceImpl implements AnalyticsService {
         return eventRepository.getEvents(appId, timeRange, filters, limit, offset);
     }
 
+    @Override
+    public EventPage getEventPage(UUID appId, TimeRange timeRange, List<FilterCriteria> filters, String cursor, int limit) {
+        log.debug("Getting event page for appId: {} with limit: {}", appId, limit);
+        validateTimeRange(timeRange);
+        validateLimit(limit);
+        if (limit < 1) {
+            throw new InvalidQueryException("Limit must be positive");
+        }
+
+        EventCursor after = cursor != null && !cursor.isBlank() ? EventCursor.decode(cursor) : null;
+        // one extra row tells whether another page follows
+        List<Event> events = eventRepository.getEventsAfter(appId, timeRange, filters, after, limit + 1);
+        boolean hasNext = events.size() > limit;
+        if (hasNext) {
+            events = events.subList(0, limit);
+        }
+
+        Event last = events.isEmpty() ? null : events.get(events.size() - 1);
+        return EventPage.builder()
+                .events(events)
+                .pageSize(events.size())
+                .hasNext(hasNext)
+                .nextCursor(hasNext ? new EventCursor(last.getTimestamp(), last.getId()).encode() : null)
+                .build();
+    }
+
+    @Override
+    public void exportEvents(UUID appId, TimeRange timeRange, List<FilterCriteria> filters, ExportFormat format, OutputStream out) {
+        log.info("Exporting events for appId: {} as {}", appId, format);
+        validateTimeRange(timeRange);
+
+        eventRepository.exportEvents(appId, timeRange, filters, format, out);
+    }
+
     @Override
     public FunnelAnalysis getFunnelAnalysis(FunnelRequest request) {
         log.debug("Getting funnel analysis for appId: {}", request.getAppId());
         validateTimeRange(request.getTimeRange());
+        if (request.getSteps().size() > MAX_FUNNEL_STEPS) {
+            throw new InvalidQueryException("A funnel can have at most " + MAX_FUNNEL_STEPS + " steps");
+        }
+        int timeWindowMinutes = request.getTimeWindowMinutes() != null ? request.getTimeWindowMinutes() : 60;
+        if (timeWindowMinutes < 1) {
+            throw new InvalidQueryException("Time window must be at least one minute");
+        }
 
-        List<Map<String, Object>> results = eventRepository.getFunnelData(
+        Map<String, Object> result = eventRepository.getFunnelData(
                 request.getAppId(),
                 request.getSteps(),
                 request.getTimeRange(),
-                request.getTimeWindowMinutes()
+                timeWindowMinutes,
+                request.getMode(),
+                request.getFilters()
         );
 
+        long entered = longValue(result, "step1");
+        long previous = entered;
         List<FunnelAnalysis.FunnelStep> steps = new ArrayList<>();
-        // Build funnel steps from results
-        // This is simplified - enhance based on actual funnel logic
+        for (int i = 1; i <= request.getSteps().size(); i++) {
+            long count = longValue(result, "step" + i);
+            steps.add(FunnelAnalysis.FunnelStep.builder()
+                    .stepNumber(i)
+                    .eventType(request.getSteps().get(i - 1))
+                    .userCount(count)
+                    .conversionRate(entered > 0 ? ((double) count / entered) * 100 : 0)
+                    .dropoffRate(previous > 0 ? ((double) (previous - count) / previous) * 100 : 0)
+                    .medianSecondsFromPreviousStep(i > 1 ? doubleValue(result, "medianSeconds" + (i - 1)) : null)
+                    .build());
+            previous = count;
+        }
 
         return FunnelAnalysis.builder()
                 .steps(steps)
-                .totalUsers(0L)
-                .overallConversionRate(0.0)
+                .totalUsers(entered)
+                .overallConversionRate(entered > 0 ? ((double) previous / entered) * 100 : 0)
+                .build();
+    }
+
+    @Override
+    public RetentionAnalysis getRetentionAnalysis(RetentionRequest request) {
+        log.debug("Getting retention for appId: {} cohort: {}", request.getAppId(), request.getCohortDate());
+        validateTimeRange(request.getTimeRange());
+        if (request.getTimeRange().getStartDate().isAfter(request.getCohortDate().atStartOfDay())) {
+            throw new InvalidQueryException("Time range must start on or before the cohort date");
+        }
+
+        List<Integer> periods = request.getRetentionPeriods() == null || request.getRetentionPeriods().isEmpty()
+                ? DEFAULT_RETENTION_PERIODS
+                : request.getRetentionPeriods().stream().distinct().sorted().toList();
+        if (periods.get(0) < 1) {
+            throw new InvalidQueryException("Retention periods must be positive");
+        }
+        if (periods.size() > MAX_RETENTION_PERIODS) {
+            throw new InvalidQueryException("At most " + MAX_RETENTION_PERIODS + " retention periods are supported");
+        }
+        if (periods.get(periods.size() - 1) > properties.getQuery().getMaxTimeRangeDays()) {
+            throw new InvalidQueryException(
+                    "Retention periods cannot exceed " + properties.getQuery().getMaxTimeRangeDays() + " days");
+        }
+
+        Map<String, Object> result = eventRepository.getCohortRetention(
+                request.getAppId(),
+                request.getCohortDate(),
+                periods,
+                request.getTimeRange().getStartDate()
+        );
+
+        long cohortSize = longValue(result, "cohortSize");
+        List<RetentionAnalysis.RetentionPeriod> retained = new ArrayList<>();
+        for (int i = 1; i <= periods.size(); i++) {
+            long users = longValue(result, "retained" + i);
+            retained.add(RetentionAnalysis.RetentionPeriod.builder()
+                    .day(periods.get(i - 1))
+                    .retainedUsers(users)
+                    .retentionRate(cohortSize > 0 ? ((double) users / cohortSize) * 100 : 0)
+                    .build());
+        }
+
+        return RetentionAnalysis.builder()
+                .cohortDate(request.getCohortDate())
+                .cohortSize(cohortSize)
+                .periods(retained)
+                .build();
+    }
+
+    @Override
+    @Cacheable(value = "analytics", keyGenerator = "queryKeyGenerator", sync = true)
+    public UserActivity getUserActivity(UUID appId, TimeRange timeRange) {
+        TimeRange range = alignedTimeRange(timeRange);
+        log.debug("Getting new vs returning users for appId: {}", appId);
+
+        List<TimeSeriesData> newUsersByDay = userProfileRepository.getNewUsersByDay(appId, range).stream()
+                .map(row -> TimeSeriesData.builder()
+                        .timestamp(toLocalDateTime(row.get("day")))
+                        .value(((Number) row.get("newUsers")).longValue())
+                        .build())
+                .toList();
+
+        return UserActivity.builder()
+                .newUsers(newUsersByDay.stream().mapToLong(day -> (Long) day.getValue()).sum())
+                .returningUsers(userProfileRepository.getReturningUserCount(appId, range))
+                .newUsersByDay(newUsersByDay)
+                .build();
+    }
+
+    @Override
+    public UserProfile getUserProfile(UUID appId, UUID actorId) {
+        Map<String, Object> row = userProfileRepository.getUserProfile(appId, actorId)
+                .orElseThrow(() -> new ResourceNotFoundException("No events recorded for user " + actorId));
+
+        return UserProfile.builder()
+                .actorId(actorId)
+                .firstSeen(toLocalDateTime(row.get("firstSeen")))
+                .lastSeen(toLocalDateTime(row.get("lastSeen")))
+                .eventCount(longValue(row, "eventCount"))
                 .build();
     }
 
@@ -245,6 +518,45 @@ public class AnalyticsServiceImpl implements AnalyticsService {
         return eventRepository.getOsBreakdown(appId, timeRange, filters);
     }
 
+    @Override
+    public List<Map<String, Object>> getMetadataBreakdown(UUID appId, TimeRange timeRange, String key,
+                                                          List<FilterCriteria> filters) {
+        validateTimeRange(timeRange);
+        try {
+            return eventRepository.getMetadataBreakdown(appId, timeRange, key, filters);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidQueryException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    @Cacheable(value = "analytics", keyGenerator = "queryKeyGenerator", sync = true)
+    public List<Map<String, Object>> getAggregation(AnalyticsQueryRequest requested) {
+        log.debug("Running aggregation query for appId: {}", requested.getAppId());
+        AnalyticsQueryRequest request = aligned(requested);
+        if (request.getMetrics() == null || request.getMetrics().isEmpty()) {
+            throw new InvalidQueryException("At least one metric is required");
+        }
+        if (request.getMetrics().size() > MAX_QUERY_METRICS) {
+            throw new InvalidQueryException("At most " + MAX_QUERY_METRICS + " metrics are supported");
+        }
+        if (request.getGroupBy() != null && request.getGroupBy().size() > MAX_QUERY_DIMENSIONS) {
+            throw new InvalidQueryException("At most " + MAX_QUERY_DIMENSIONS + " group-by dimensions are supported");
+        }
+        if (request.getLimit() != null) {
+            validateLimit(request.getLimit());
+        }
+
+        Cardinality cardinality = request.getCardinality() != null
+                ? request.getCardinality()
+                : resolveCardinality(null, null, false);
+        try {
+            return eventRepository.getAggregation(request, cardinality);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidQueryException(e.getMessage(), e);
+        }
+    }
+
     /**
      * Validate time range
      */
@@ -265,6 +577,24 @@ public class AnalyticsServiceImpl implements AnalyticsService {
         }
     }
 
+    /**
+     * Validate a time range and widen it to the cache alignment, so the query covers exactly
+     * the range its cache key was built from
+     */
+    private TimeRange alignedTimeRange(TimeRange timeRange) {
+        validateTimeRange(timeRange);
+        return queryKeyGenerator.align(timeRange);
+    }
+
+    /**
+     * Copy of a request with its time range aligned; the caller's request is left untouched
+     */
+    private AnalyticsQueryRequest aligned(AnalyticsQueryRequest request) {
+        return request.toBuilder()
+                .timeRange(alignedTimeRange(request.getTimeRange()))
+                .build();
+    }
+
     /**
      * Validate limit
      */
@@ -313,6 +643,22 @@ public class AnalyticsServiceImpl implements AnalyticsService {
                 .build();
     }
 
+    private static long longValue(Map<String, Object> row, String column) {
+        Object value = row.get(column);
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+
+    /**
+     * Quantiles over no rows come back as NaN
+     */
+    private static Double doubleValue(Map<String, Object> row, String column) {
+        Object value = row.get(column);
+        if (value == null || Double.isNaN(((Number) value).doubleValue())) {
+            return null;
+        }
+        return ((Number) value).doubleValue();
+    }
+
     /**
      * Build metric card with comparison
      */
@@ -0,0 +1,90 @@
+package com.simpleAnalytics.Analytics.service;
+
+import com.simpleAnalytics.Analytics.exception.AnalyticsException;
+import com.simpleAnalytics.Analytics.exception.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs a group of independent queries concurrently under a shared deadline. The first failure,
+ * or the deadline passing, cancels every query that is still queued or running.
+ */
+class ParallelQueries {
+
+    private final ExecutorCompletionService<Object> completion;
+    private final List<Future<Object>> futures = new ArrayList<>();
+
+    ParallelQueries(ExecutorService executor) {
+        this.completion = new ExecutorCompletionService<>(executor);
+    }
+
+    /**
+     * Submit a query; the returned supplier may only be read after {@link #awaitAll(Duration)}
+     */
+    <T> Supplier<T> submit(Callable<T> query) {
+        Future<Object> future;
+        try {
+            future = completion.submit(query::call);
+        } catch (RejectedExecutionException e) {
+            cancelAll();
+            throw new AnalyticsException("Query executor is saturated, try again later", e);
+        }
+        futures.add(future);
+        return () -> resultOf(future);
+    }
+
+    /**
+     * Wait for every submitted query, failing fast on the first error
+     */
+    void awaitAll(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        boolean completed = false;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Future<Object> done = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    throw new QueryTimeoutException(
+                            "Queries did not complete within " + timeout.toMillis() + "ms");
+                }
+                resultOf(done);
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AnalyticsException("Interrupted while waiting for queries", e);
+        } finally {
+            if (!completed) {
+                cancelAll();
+            }
+        }
+    }
+
+    private void cancelAll() {
+        futures.forEach(future -> future.cancel(true));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T resultOf(Future<Object> future) {
+        try {
+            return (T) future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new AnalyticsException("Query failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AnalyticsException("Interrupted while waiting for queries", e);
+        }
+    }
+}
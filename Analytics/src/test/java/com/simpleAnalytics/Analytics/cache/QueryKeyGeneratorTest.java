@@ -0,0 +1,144 @@
+package com.simpleAnalytics.Analytics.cache;
+
+import com.simpleAnalytics.Analytics.config.AnalyticsProperties;
+import com.simpleAnalytics.Analytics.exception.InvalidQueryException;
+import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
+import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import com.simpleAnalytics.Analytics.model.dto.request.AnalyticsQueryRequest;
+import com.simpleAnalytics.Analytics.model.enums.FilterOperator;
+import com.simpleAnalytics.Analytics.repository.AnalyticsQueryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryKeyGeneratorTest {
+
+    private static final UUID APP_ID = UUID.randomUUID();
+    private static final LocalDateTime NOON = LocalDateTime.of(2024, 3, 5, 12, 0);
+
+    private QueryKeyGenerator keyGenerator;
+    private Method method;
+
+    @BeforeEach
+    void setUp() throws NoSuchMethodException {
+        AnalyticsProperties properties = new AnalyticsProperties();
+        properties.getCache().setRangeAlignmentSeconds(60);
+        keyGenerator = new QueryKeyGenerator(properties, new AnalyticsQueryBuilder());
+        method = QueryKeyGeneratorTest.class.getDeclaredMethod("getEvents", UUID.class, TimeRange.class, List.class);
+    }
+
+    // stands in for a cached service method
+    @SuppressWarnings("unused")
+    private Object getEvents(UUID appId, TimeRange timeRange, List<FilterCriteria> filters) {
+        return null;
+    }
+
+    private Object key(TimeRange timeRange, List<FilterCriteria> filters) {
+        return keyGenerator.generate(this, method, APP_ID, timeRange, filters);
+    }
+
+    private static TimeRange range(LocalDateTime start, LocalDateTime end) {
+        return TimeRange.builder().startDate(start).endDate(end).build();
+    }
+
+    private static FilterCriteria filter(String field, Object value) {
+        return FilterCriteria.builder().field(field).operator(FilterOperator.EQUALS).value(value).build();
+    }
+
+    private static FilterCriteria in(String field, Object... values) {
+        return FilterCriteria.builder().field(field).operator(FilterOperator.IN).values(List.of(values)).build();
+    }
+
+    @Test
+    void keyIsPrefixedWithAppIdAndMethod() {
+        Object key = key(range(NOON, NOON.plusHours(1)), null);
+
+        assertTrue(key.toString().startsWith(APP_ID + ":getEvents:"));
+    }
+
+    @Test
+    void filterOrderAndValueOrderDoNotChangeTheKey() {
+        TimeRange range = range(NOON, NOON.plusHours(1));
+
+        assertEquals(
+                key(range, List.of(filter("eventType", "click"), in("source", "web", "ios"))),
+                key(range, List.of(in("source", "ios", "web"), filter("eventType", "click"))));
+    }
+
+    @Test
+    void fieldAliasesShareAKey() {
+        TimeRange range = range(NOON, NOON.plusHours(1));
+
+        assertEquals(key(range, List.of(filter("event_type", "click"))), key(range, List.of(filter("eventType", "click"))));
+    }
+
+    @Test
+    void emptyAndMissingFiltersShareAKey() {
+        TimeRange range = range(NOON, NOON.plusHours(1));
+
+        assertEquals(key(range, null), key(range, List.of()));
+    }
+
+    @Test
+    void differentFiltersGetDifferentKeys() {
+        TimeRange range = range(NOON, NOON.plusHours(1));
+
+        assertNotEquals(key(range, List.of(filter("eventType", "click"))), key(range, List.of(filter("eventType", "view"))));
+        assertNotEquals(key(range, List.of(filter("eventType", "click"))), key(range, List.of(filter("source", "click"))));
+    }
+
+    @Test
+    void rangesWithinOneAlignmentBucketShareAKey() {
+        assertEquals(
+                key(range(NOON.plusSeconds(5), NOON.plusHours(1).plusSeconds(5)), null),
+                key(range(NOON.plusSeconds(40), NOON.plusHours(1).plusSeconds(40)), null));
+        assertNotEquals(
+                key(range(NOON.plusSeconds(5), NOON.plusHours(1).plusSeconds(5)), null),
+                key(range(NOON.plusSeconds(65), NOON.plusHours(1).plusSeconds(65)), null));
+    }
+
+    @Test
+    void alignWidensToWholeBuckets() {
+        TimeRange aligned = keyGenerator.align(range(NOON.plusSeconds(30), NOON.plusMinutes(10).plusSeconds(1)));
+        assertEquals(NOON, aligned.getStartDate());
+        assertEquals(NOON.plusMinutes(11), aligned.getEndDate());
+
+        // an end on the boundary with sub-second precision still needs the next bucket to be covered
+        TimeRange boundary = keyGenerator.align(range(NOON, NOON.plusMinutes(10).plusNanos(1)));
+        assertEquals(NOON.plusMinutes(11), boundary.getEndDate());
+    }
+
+    @Test
+    void requestKeyUsesRequestAppIdAndCanonicalFilters() {
+        AnalyticsQueryRequest first = AnalyticsQueryRequest.builder()
+                .appId(APP_ID)
+                .timeRange(range(NOON, NOON.plusHours(1)))
+                .filters(List.of(filter("eventType", "click"), filter("source", "web")))
+                .build();
+        AnalyticsQueryRequest second = AnalyticsQueryRequest.builder()
+                .appId(APP_ID)
+                .timeRange(range(NOON, NOON.plusHours(1)))
+                .filters(List.of(filter("source", "web"), filter("event_type", "click")))
+                .build();
+
+        Object key = keyGenerator.generate(this, method, first);
+        assertTrue(key.toString().startsWith(APP_ID + ":"));
+        assertEquals(key, keyGenerator.generate(this, method, second));
+    }
+
+    @Test
+    void invalidMetadataKeyIsRejectedAsInvalidQuery() {
+        TimeRange range = range(NOON, NOON.plusHours(1));
+
+        assertThrows(InvalidQueryException.class, () -> key(range, List.of(filter("metadata.bad key'", "x"))));
+    }
+}
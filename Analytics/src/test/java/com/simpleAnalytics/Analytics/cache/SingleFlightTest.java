@@ -0,0 +1,97 @@
+package com.simpleAnalytics.Analytics.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    /**
+     * Starts every caller, lets the first one into the loader and releases it once all callers are running
+     */
+    private List<CompletableFuture<Object>> callConcurrently(Object key, AtomicInteger calls, Object result)
+            throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(CALLERS);
+        CountDownLatch releaseLoader = new CountDownLatch(1);
+        List<CompletableFuture<Object>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(CompletableFuture.supplyAsync(() -> {
+                started.countDown();
+                return singleFlight.execute(key, () -> {
+                    calls.incrementAndGet();
+                    try {
+                        releaseLoader.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (result instanceof RuntimeException failure) {
+                        throw failure;
+                    }
+                    return result;
+                });
+            }, callers));
+        }
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        // give the callers that lost the race time to join the running call
+        Thread.sleep(100);
+        releaseLoader.countDown();
+        return results;
+    }
+
+    @Test
+    void concurrentCallersShareOneExecution() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Object shared = new Object();
+
+        for (CompletableFuture<Object> result : callConcurrently("k", calls, shared)) {
+            assertSame(shared, result.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void failureIsSharedWithEveryWaitingCaller() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        IllegalStateException failure = new IllegalStateException("clickhouse down");
+
+        for (CompletableFuture<Object> result : callConcurrently("k", calls, failure)) {
+            ExecutionException thrown = assertThrows(ExecutionException.class, () -> result.get(1, TimeUnit.SECONDS));
+            assertSame(failure, thrown.getCause());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void finishedCallIsNotReused() {
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.execute("k", calls::incrementAndGet);
+        singleFlight.execute("k", calls::incrementAndGet);
+
+        assertEquals(2, calls.get());
+    }
+}
@@ -0,0 +1,212 @@
+package com.simpleAnalytics.Analytics.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TwoTierCacheTest {
+
+    // rejects null values like the Redis cache configured with disableCachingNullValues()
+    private ConcurrentMapCache remote;
+    private com.github.benmanes.caffeine.cache.Cache<Object, Object> local;
+    private List<Object> invalidations;
+    private ExecutorService refreshExecutor;
+
+    @BeforeEach
+    void setUp() {
+        remote = new ConcurrentMapCache("analytics", false);
+        local = Caffeine.newBuilder().build();
+        invalidations = Collections.synchronizedList(new ArrayList<>());
+        refreshExecutor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        refreshExecutor.shutdownNow();
+        MDC.clear();
+    }
+
+    private TwoTierCache cache(Duration ttl, Executor refreshExecutor) {
+        return new TwoTierCache(remote, local, (name, key) -> invalidations.add(key), ttl, refreshExecutor);
+    }
+
+    @Test
+    void putStoresEntryInBothTiersAndAnnouncesIt() {
+        TwoTierCache cache = cache(Duration.ofMinutes(5), null);
+
+        cache.put("k", "v");
+
+        assertEquals("v", cache.get("k").get());
+        assertInstanceOf(CacheEntry.class, remote.get("k").get());
+        assertInstanceOf(CacheEntry.class, local.getIfPresent("k"));
+        assertEquals(List.of("k"), invalidations);
+    }
+
+    @Test
+    void putNullEvictsInsteadOfWritingToRemote() {
+        TwoTierCache cache = cache(Duration.ofMinutes(5), null);
+        cache.put("k", "v");
+
+        cache.put("k", null);
+
+        assertNull(cache.get("k"));
+        assertNull(remote.get("k"));
+        assertNull(local.getIfPresent("k"));
+        assertEquals(List.of("k", "k"), invalidations);
+    }
+
+    @Test
+    void loaderReturningNullIsNotCached() {
+        TwoTierCache cache = cache(Duration.ofMinutes(5), null);
+
+        assertNull(cache.get("k", () -> null));
+        assertEquals("v", cache.get("k", () -> "v"));
+    }
+
+    @Test
+    void localEvictionFallsBackToRemote() {
+        TwoTierCache cache = cache(Duration.ofMinutes(5), null);
+        cache.put("k", "v");
+
+        cache.evictLocal("k");
+
+        assertNull(local.getIfPresent("k"));
+        assertEquals("v", cache.get("k").get());
+        assertInstanceOf(CacheEntry.class, local.getIfPresent("k"));
+    }
+
+    @Test
+    void expiredEntryIsServedWhileRefreshing() {
+        TwoTierCache cache = cache(Duration.ZERO, Runnable::run);
+        cache.put("k", "old");
+
+        assertNull(cache.get("k"));
+        assertEquals("old", cache.get("k", () -> "new"));
+        assertEquals("new", ((CacheEntry) remote.get("k").get()).value());
+    }
+
+    private static String freshValue(TwoTierCache cache, String key) {
+        Cache.ValueWrapper wrapper = cache.get(key);
+        return wrapper != null ? (String) wrapper.get() : null;
+    }
+
+    @Test
+    void staleEntryIsServedWhileTheRefreshRuns() throws InterruptedException {
+        TwoTierCache cache = cache(Duration.ZERO, refreshExecutor);
+        cache.put("k", "old");
+        CountDownLatch releaseRefresh = new CountDownLatch(1);
+
+        assertEquals("old", cache.get("k", () -> {
+            releaseRefresh.await();
+            return "new";
+        }));
+        // the caller did not wait for the refresh
+        assertEquals("old", ((CacheEntry) remote.get("k").get()).value());
+
+        releaseRefresh.countDown();
+        refreshExecutor.shutdown();
+        assertTrue(refreshExecutor.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals("new", ((CacheEntry) remote.get("k").get()).value());
+    }
+
+    @Test
+    void onlyOneRefreshRunsPerKey() throws InterruptedException {
+        TwoTierCache cache = cache(Duration.ZERO, refreshExecutor);
+        cache.put("k", "old");
+        AtomicInteger refreshes = new AtomicInteger();
+        CountDownLatch releaseRefresh = new CountDownLatch(1);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("old", cache.get("k", () -> {
+                refreshes.incrementAndGet();
+                releaseRefresh.await();
+                return "new";
+            }));
+        }
+
+        releaseRefresh.countDown();
+        refreshExecutor.shutdown();
+        assertTrue(refreshExecutor.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    void failedRefreshEvictsTheStaleEntry() {
+        TwoTierCache cache = cache(Duration.ZERO, Runnable::run);
+        cache.put("k", "old");
+
+        assertEquals("old", cache.get("k", () -> {
+            throw new IllegalStateException("clickhouse down");
+        }));
+
+        assertNull(remote.get("k"));
+        assertNull(local.getIfPresent("k"));
+        // the next request loads synchronously and sees the failure instead of the stale value
+        assertThrows(Cache.ValueRetrievalException.class, () -> cache.get("k", () -> {
+            throw new IllegalStateException("clickhouse down");
+        }));
+    }
+
+    @Test
+    void refreshRunsWithTheCallersMdc() throws Exception {
+        TwoTierCache cache = cache(Duration.ZERO, refreshExecutor);
+        cache.put("k", "old");
+        CompletableFuture<String> seenByRefresh = new CompletableFuture<>();
+        MDC.put("requestId", "r-1");
+
+        cache.get("k", () -> {
+            seenByRefresh.complete(MDC.get("requestId"));
+            return "new";
+        });
+
+        assertEquals("r-1", seenByRefresh.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void concurrentMissesLoadOnce() throws Exception {
+        TwoTierCache cache = cache(Duration.ofMinutes(5), null);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch allWaiting = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(CompletableFuture.supplyAsync(() -> cache.get("k", () -> {
+                    loads.incrementAndGet();
+                    // hold the load until the other callers had time to pile up behind it
+                    allWaiting.await(200, TimeUnit.MILLISECONDS);
+                    return "v";
+                }), callers));
+            }
+            for (CompletableFuture<String> result : results) {
+                assertEquals("v", result.get(1, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals("v", freshValue(cache, "k"));
+    }
+}
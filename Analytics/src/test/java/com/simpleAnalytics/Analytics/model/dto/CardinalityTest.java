@@ -0,0 +1,35 @@
+package com.simpleAnalytics.Analytics.model.dto;
+
+import com.simpleAnalytics.Analytics.model.enums.CardinalityMode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CardinalityTest {
+
+    @Test
+    void eachModeUsesItsFunction() {
+        assertEquals("uniqExact(userId)", Cardinality.exact().aggregate("userId"));
+        assertEquals("uniq(userId)", Cardinality.of(CardinalityMode.UNIQ, null).aggregate("userId"));
+        assertEquals("uniqCombined(userId)", Cardinality.of(CardinalityMode.UNIQ_COMBINED, null).aggregate("userId"));
+        assertEquals("uniqHLL12(userId)", Cardinality.of(CardinalityMode.HLL, null).aggregate("userId"));
+    }
+
+    @Test
+    void precisionIsAParameterOfUniqCombinedOnly() {
+        assertEquals("uniqCombined(18)(userId)", Cardinality.of(CardinalityMode.UNIQ_COMBINED, 18).aggregate("userId"));
+
+        Cardinality uniq = Cardinality.of(CardinalityMode.UNIQ, 18);
+        assertNull(uniq.getPrecision());
+        assertEquals("uniq(userId)", uniq.aggregate("userId"));
+    }
+
+    @Test
+    void conditionalAggregateAppliesTheIfCombinatorBeforeTheParameters() {
+        assertEquals("uniqCombinedIf(14)(sessionId, sessionId IS NOT NULL)",
+                Cardinality.of(CardinalityMode.UNIQ_COMBINED, 14).aggregateIf("sessionId", "sessionId IS NOT NULL"));
+        assertEquals("uniqExactIf(sessionId, sessionId IS NOT NULL)",
+                Cardinality.exact().aggregateIf("sessionId", "sessionId IS NOT NULL"));
+    }
+}
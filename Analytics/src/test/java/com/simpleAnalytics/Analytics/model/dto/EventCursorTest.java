@@ -0,0 +1,51 @@
+package com.simpleAnalytics.Analytics.model.dto;
+
+import com.simpleAnalytics.Analytics.exception.InvalidQueryException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventCursorTest {
+
+    private static String base64(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void encodeAndDecodeRoundTrip() {
+        EventCursor cursor = new EventCursor(LocalDateTime.of(2024, 3, 5, 10, 15, 30, 123_000_000), UUID.randomUUID());
+
+        assertEquals(cursor, EventCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void roundTripKeepsWholeSecondsAndNanos() {
+        EventCursor wholeSecond = new EventCursor(LocalDateTime.of(2024, 3, 5, 10, 15), UUID.randomUUID());
+        EventCursor nanos = new EventCursor(LocalDateTime.of(2024, 3, 5, 10, 15, 30, 123_456_789), UUID.randomUUID());
+
+        assertEquals(wholeSecond, EventCursor.decode(wholeSecond.encode()));
+        assertEquals(nanos, EventCursor.decode(nanos.encode()));
+    }
+
+    @Test
+    void encodedCursorIsUrlSafe() {
+        String encoded = new EventCursor(LocalDateTime.of(2024, 3, 5, 10, 15, 30), UUID.randomUUID()).encode();
+
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"), encoded);
+    }
+
+    @Test
+    void malformedCursorsAreInvalidQueries() {
+        assertThrows(InvalidQueryException.class, () -> EventCursor.decode("not a cursor!"));
+        assertThrows(InvalidQueryException.class, () -> EventCursor.decode(base64("2024-03-05T10:15:30")));
+        assertThrows(InvalidQueryException.class, () -> EventCursor.decode(base64("yesterday|" + UUID.randomUUID())));
+        assertThrows(InvalidQueryException.class, () -> EventCursor.decode(base64("2024-03-05T10:15:30|not-a-uuid")));
+    }
+}
@@ -0,0 +1,139 @@
+package com.simpleAnalytics.Analytics.repository;
+
+import com.clickhouse.data.ClickHouseFormat;
+import com.simpleAnalytics.Analytics.model.dto.Cardinality;
+import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
+import com.simpleAnalytics.Analytics.model.dto.MetricDefinition;
+import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import com.simpleAnalytics.Analytics.model.dto.request.AnalyticsQueryRequest;
+import com.simpleAnalytics.Analytics.model.enums.CardinalityMode;
+import com.simpleAnalytics.Analytics.model.enums.ExportFormat;
+import com.simpleAnalytics.Analytics.model.enums.FilterOperator;
+import com.simpleAnalytics.Analytics.model.enums.MetricType;
+import com.simpleAnalytics.Analytics.model.enums.TimeGranularity;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalyticsQueryBuilderTest {
+
+    private static final UUID APP_ID = UUID.randomUUID();
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 5, 12, 0);
+    private static final TimeRange RANGE = TimeRange.builder().startDate(NOW.minusDays(1)).endDate(NOW).build();
+
+    private final AnalyticsQueryBuilder queryBuilder = new AnalyticsQueryBuilder();
+
+    private static MetricDefinition metric(MetricType type, String field) {
+        return MetricDefinition.builder().type(type).field(field).build();
+    }
+
+    private static AnalyticsQueryRequest.AnalyticsQueryRequestBuilder request(MetricDefinition... metrics) {
+        return AnalyticsQueryRequest.builder().appId(APP_ID).timeRange(RANGE).metrics(List.of(metrics));
+    }
+
+    private String build(AnalyticsQueryRequest request, List<Object> params) {
+        return queryBuilder.buildAggregationQuery(request, Cardinality.exact(), params);
+    }
+
+    @Test
+    void timeSeriesGroupsByBucketOldestFirst() {
+        List<Object> params = new ArrayList<>();
+
+        String sql = build(request(metric(MetricType.COUNT, null), metric(MetricType.UNIQUE_COUNT, null))
+                .granularity(TimeGranularity.HOUR)
+                .build(), params);
+
+        assertEquals("SELECT toStartOfHour(timestamp) AS `bucket`, count() AS `count`,"
+                + " uniqExact(COALESCE(userId, anonymousId)) AS `unique_count`"
+                + " FROM event WHERE appId = ? AND event.timestamp BETWEEN ? AND ?"
+                + " GROUP BY toStartOfHour(timestamp) ORDER BY `bucket` ASC LIMIT 100"
+                + " SETTINGS prefer_column_name_to_alias = 1", sql);
+        assertEquals(List.of(APP_ID, RANGE.getStartDate(), RANGE.getEndDate()), params);
+    }
+
+    @Test
+    void breakdownGroupsByDimensionsLargestFirstWithFilters() {
+        List<Object> params = new ArrayList<>();
+        FilterCriteria filter = FilterCriteria.builder().field("event_type").operator(FilterOperator.EQUALS).value("click").build();
+
+        String sql = build(request(metric(MetricType.UNIQUE_COUNT, "session"))
+                .groupBy(List.of("source", "metadata.plan"))
+                .filters(List.of(filter))
+                .limit(10)
+                .offset(20)
+                .build(), params);
+
+        assertEquals("SELECT source AS `source`, metadata_props['plan'] AS `metadata.plan`,"
+                + " uniqExact(sessionId) AS `unique_count_session`"
+                + " FROM event WHERE appId = ? AND event.timestamp BETWEEN ? AND ? AND eventType = ?"
+                + " GROUP BY source, metadata_props['plan'] ORDER BY `unique_count_session` DESC LIMIT 10 OFFSET 20"
+                + " SETTINGS prefer_column_name_to_alias = 1", sql);
+        assertEquals(List.of(APP_ID, RANGE.getStartDate(), RANGE.getEndDate(), "click"), params);
+    }
+
+    @Test
+    void metricsUseTheirFunctionAndRequestedCardinality() {
+        String sql = queryBuilder.buildAggregationQuery(
+                request(metric(MetricType.PERCENTILE_95, "metadata.duration"),
+                        MetricDefinition.builder().type(MetricType.MAX).field("timestamp").alias("latest").build(),
+                        metric(MetricType.UNIQUE_COUNT, "userId")).build(),
+                Cardinality.of(CardinalityMode.UNIQ_COMBINED, 14), new ArrayList<>());
+
+        assertEquals("SELECT quantile(0.95)(toFloat64OrNull(metadata_props['duration'])) AS `percentile_95_metadata_duration`,"
+                + " max(timestamp) AS `latest`, uniqCombined(14)(userId) AS `unique_count_userId`"
+                + " FROM event WHERE appId = ? AND event.timestamp BETWEEN ? AND ?"
+                + " ORDER BY `percentile_95_metadata_duration` DESC LIMIT 100"
+                + " SETTINGS prefer_column_name_to_alias = 1", sql);
+    }
+
+    @Test
+    void orderByMustNameAResultColumn() {
+        String sql = build(request(metric(MetricType.COUNT, null))
+                .groupBy(List.of("source"))
+                .orderBy("source")
+                .orderDirection("asc")
+                .build(), new ArrayList<>());
+        assertEquals(" ORDER BY `source` ASC LIMIT 100", sql.substring(sql.indexOf(" ORDER BY"), sql.indexOf(" SETTINGS")));
+
+        assertThrows(IllegalArgumentException.class, () -> build(request(metric(MetricType.COUNT, null))
+                .orderBy("userId")
+                .build(), new ArrayList<>()));
+    }
+
+    @Test
+    void invalidMetricsAreRejected() {
+        // numeric aggregates only apply to promoted metadata, which may hold numbers
+        assertThrows(IllegalArgumentException.class,
+                () -> build(request(metric(MetricType.SUM, "eventType")).build(), new ArrayList<>()));
+        assertThrows(IllegalArgumentException.class,
+                () -> build(request(metric(MetricType.MIN, null)).build(), new ArrayList<>()));
+        assertThrows(IllegalArgumentException.class,
+                () -> build(request(metric(MetricType.COUNT, null), metric(MetricType.COUNT, null)).build(), new ArrayList<>()));
+        assertThrows(IllegalArgumentException.class, () -> build(request(
+                MetricDefinition.builder().type(MetricType.COUNT).alias("source").build())
+                .groupBy(List.of("source"))
+                .build(), new ArrayList<>()));
+        assertThrows(IllegalArgumentException.class,
+                () -> build(request(metric(MetricType.COUNT, null)).groupBy(List.of("source; DROP")).build(), new ArrayList<>()));
+    }
+
+    @Test
+    void positionalPlaceholdersAreNumberedInOrder() {
+        assertEquals("WHERE appId = :p0 AND timestamp BETWEEN :p1 AND :p2 LIMIT 10",
+                queryBuilder.toNamedParameters("WHERE appId = ? AND timestamp BETWEEN ? AND ? LIMIT 10"));
+    }
+
+    @Test
+    void everyExportFormatIsKnownToClickHouse() {
+        for (ExportFormat format : ExportFormat.values()) {
+            assertTrue(ClickHouseFormat.valueOf(format.getClickHouseFormat()).supportsOutput(), format.name());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.simpleAnalytics.Analytics.repository;
+
+import com.simpleAnalytics.Analytics.cache.QueryKeyGenerator;
+import com.simpleAnalytics.Analytics.config.AnalyticsProperties;
+import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CoalescingEventRepositoryTest {
+
+    private static final int VIEWERS = 8;
+    private static final UUID APP_ID = UUID.randomUUID();
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 5, 12, 0);
+    private static final TimeRange RANGE = TimeRange.builder().startDate(NOW.minusDays(1)).endDate(NOW).build();
+
+    @Mock
+    private EventRepository delegate;
+
+    private AnalyticsProperties properties;
+    private CoalescingEventRepository repository;
+    private ExecutorService viewers;
+
+    @BeforeEach
+    void setUp() {
+        properties = new AnalyticsProperties();
+        repository = new CoalescingEventRepository(delegate,
+                new QueryKeyGenerator(properties, new AnalyticsQueryBuilder()), properties);
+        viewers = Executors.newFixedThreadPool(VIEWERS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        viewers.shutdownNow();
+    }
+
+    /**
+     * Runs one query per viewer at once while the delegate holds the first call until all have started
+     */
+    private List<Long> countConcurrently(List<TimeRange> ranges) throws Exception {
+        CountDownLatch started = new CountDownLatch(ranges.size());
+        CountDownLatch releaseQuery = new CountDownLatch(1);
+        when(delegate.getTotalEventCount(any(), any(), isNull())).thenAnswer(invocation -> {
+            releaseQuery.await();
+            return 42L;
+        });
+
+        List<CompletableFuture<Long>> results = new ArrayList<>();
+        for (TimeRange range : ranges) {
+            results.add(CompletableFuture.supplyAsync(() -> {
+                started.countDown();
+                return repository.getTotalEventCount(APP_ID, range, null);
+            }, viewers));
+        }
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        // give the viewers that lost the race time to join the running query
+        Thread.sleep(100);
+        releaseQuery.countDown();
+
+        List<Long> counts = new ArrayList<>();
+        for (CompletableFuture<Long> result : results) {
+            counts.add(result.get(1, TimeUnit.SECONDS));
+        }
+        return counts;
+    }
+
+    @Test
+    void concurrentIdenticalQueriesRunOnce() throws Exception {
+        List<Long> counts = countConcurrently(Collections.nCopies(VIEWERS, RANGE));
+
+        assertEquals(Collections.nCopies(VIEWERS, 42L), counts);
+        verify(delegate, times(1)).getTotalEventCount(APP_ID, RANGE, null);
+    }
+
+    @Test
+    void rangesThatOnlyShareACacheKeyAreNotCoalesced() throws Exception {
+        // both align to the same minute, but a shared result must match the exact range
+        TimeRange shifted = TimeRange.builder()
+                .startDate(RANGE.getStartDate().plusSeconds(5))
+                .endDate(RANGE.getEndDate())
+                .build();
+
+        countConcurrently(List.of(RANGE, shifted));
+
+        verify(delegate).getTotalEventCount(APP_ID, RANGE, null);
+        verify(delegate).getTotalEventCount(APP_ID, shifted, null);
+    }
+
+    @Test
+    void disabledCoalescingQueriesForEveryCaller() throws Exception {
+        properties.getQuery().setCoalescingEnabled(false);
+
+        countConcurrently(List.of(RANGE, RANGE, RANGE));
+
+        verify(delegate, times(3)).getTotalEventCount(APP_ID, RANGE, null);
+    }
+}
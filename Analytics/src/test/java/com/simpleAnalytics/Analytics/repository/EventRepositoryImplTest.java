@@ -0,0 +1,286 @@
+package com.simpleAnalytics.Analytics.repository;
+
+import com.clickhouse.client.ClickHouseException;
+import com.clickhouse.client.ClickHouseRequest;
+import com.clickhouse.client.ClickHouseResponse;
+import com.clickhouse.data.ClickHouseFormat;
+import com.clickhouse.jdbc.ClickHouseStatement;
+import com.simpleAnalytics.Analytics.config.AnalyticsProperties;
+import com.simpleAnalytics.Analytics.exception.AnalyticsException;
+import com.simpleAnalytics.Analytics.exception.QueryTimeoutException;
+import com.simpleAnalytics.Analytics.model.dto.Cardinality;
+import com.simpleAnalytics.Analytics.model.dto.EventCursor;
+import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
+import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import com.simpleAnalytics.Analytics.model.enums.CardinalityMode;
+import com.simpleAnalytics.Analytics.model.enums.ExportFormat;
+import com.simpleAnalytics.Analytics.model.enums.FilterOperator;
+import com.simpleAnalytics.Analytics.model.enums.FunnelMode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EventRepositoryImplTest {
+
+    private static final UUID APP_ID = UUID.randomUUID();
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 5, 12, 0);
+    private static final TimeRange RANGE = TimeRange.builder().startDate(NOW.minusDays(1)).endDate(NOW).build();
+
+    @Mock
+    private JdbcTemplate clickHouseJdbcTemplate;
+
+    @Mock
+    private RollupRouter rollupRouter;
+
+    private final AnalyticsProperties properties = new AnalyticsProperties();
+    private EventRepositoryImpl eventRepository;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository = new EventRepositoryImpl(clickHouseJdbcTemplate, new AnalyticsQueryBuilder(), rollupRouter,
+                properties);
+    }
+
+    private String capture(ArgumentCaptor<Object[]> params) {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(clickHouseJdbcTemplate).query(sql.capture(), params.capture(), any(RowMapper.class));
+        return sql.getValue().replaceAll("\\s+", " ");
+    }
+
+    @Test
+    void firstPageHasNoSeekCondition() {
+        eventRepository.getEventsAfter(APP_ID, RANGE, null, null, 51);
+
+        ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass(Object[].class);
+        String sql = capture(params);
+        assertFalse(sql.contains("(event.timestamp, event.id) <"));
+        assertTrue(sql.contains("ORDER BY timestamp DESC, id DESC"));
+        assertTrue(sql.contains("LIMIT 51"));
+        assertEquals(List.of(APP_ID, RANGE.getStartDate(), RANGE.getEndDate()), List.of(params.getValue()));
+    }
+
+    @Test
+    void laterPageSeeksPastTheCursorInSortOrder() {
+        EventCursor cursor = new EventCursor(NOW.minusHours(2), UUID.randomUUID());
+
+        eventRepository.getEventsAfter(APP_ID, RANGE, null, cursor, 51);
+
+        ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass(Object[].class);
+        String sql = capture(params);
+        assertTrue(sql.contains("AND event.timestamp <= ? AND (event.timestamp, event.id) < (?, ?)"));
+        assertFalse(sql.contains("OFFSET"));
+        assertTrue(sql.contains("ORDER BY timestamp DESC, id DESC"));
+        assertEquals(List.of(APP_ID, RANGE.getStartDate(), RANGE.getEndDate(),
+                cursor.getTimestamp(), cursor.getTimestamp(), cursor.getId()), List.of(params.getValue()));
+    }
+
+    @Test
+    void periodComparisonCountsBothWindowsInOneScan() {
+        TimeRange previous = TimeRange.builder().startDate(RANGE.getStartDate().minusDays(1)).endDate(RANGE.getStartDate()).build();
+        FilterCriteria filter = FilterCriteria.builder().field("source").operator(FilterOperator.EQUALS).value("web").build();
+
+        eventRepository.getPeriodComparisonMetrics(APP_ID, RANGE, previous, List.of(filter),
+                Cardinality.of(CardinalityMode.UNIQ_COMBINED, 14));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass(Object[].class);
+        verify(clickHouseJdbcTemplate).queryForMap(sql.capture(), params.capture());
+        String inWindow = "event.timestamp BETWEEN ? AND ?";
+        assertEquals("SELECT countIf(" + inWindow + ") as totalEvents,"
+                + " uniqCombinedIf(14)(COALESCE(userId, anonymousId), " + inWindow + ") as uniqueUsers,"
+                + " uniqCombinedIf(14)(sessionId, sessionId IS NOT NULL AND " + inWindow + ") as activeSessions,"
+                + " countIf(" + inWindow + ") as prevTotalEvents,"
+                + " uniqCombinedIf(14)(COALESCE(userId, anonymousId), " + inWindow + ") as prevUniqueUsers,"
+                + " uniqCombinedIf(14)(sessionId, sessionId IS NOT NULL AND " + inWindow + ") as prevActiveSessions"
+                + " FROM event WHERE appId = ? AND " + inWindow + " AND source = ?",
+                sql.getValue().replaceAll("\\s+", " ").trim());
+        // the scan spans both windows, each -If condition keeps its own bounds
+        LocalDateTime start = RANGE.getStartDate();
+        LocalDateTime end = RANGE.getEndDate();
+        assertEquals(List.of(start, end, start, end, start, end,
+                previous.getStartDate(), previous.getEndDate(), previous.getStartDate(), previous.getEndDate(),
+                previous.getStartDate(), previous.getEndDate(),
+                APP_ID, previous.getStartDate(), end, "web"), List.of(params.getValue()));
+    }
+
+    @Test
+    void funnelIsOneWindowFunnelPassOverTheStepEvents() {
+        eventRepository.getFunnelData(APP_ID, List.of("view", "cart", "buy"), RANGE, 30, FunnelMode.STRICT_ORDER, null);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass(Object[].class);
+        verify(clickHouseJdbcTemplate).queryForMap(sql.capture(), params.capture());
+        assertEquals("SELECT countIf(level >= 1) AS step1,"
+                + " quantileIf(0.5)(t2 - t1, level >= 2 AND t2 >= t1) AS medianSeconds1,"
+                + " countIf(level >= 2) AS step2,"
+                + " quantileIf(0.5)(t3 - t2, level >= 3 AND t3 >= t2) AS medianSeconds2,"
+                + " countIf(level >= 3) AS step3"
+                + " FROM ( SELECT COALESCE(userId, anonymousId) AS actor,"
+                + " windowFunnel(1800, 'strict_order')(toDateTime(timestamp), eventType = ?, eventType = ?, eventType = ?) AS level,"
+                + " minIf(toDateTime(timestamp), eventType = ?) AS t1,"
+                + " minIf(toDateTime(timestamp), eventType = ?) AS t2,"
+                + " minIf(toDateTime(timestamp), eventType = ?) AS t3"
+                + " FROM event WHERE appId = ? AND event.timestamp BETWEEN ? AND ? AND eventType IN (?, ?, ?)"
+                + " GROUP BY actor )",
+                sql.getValue().replaceAll("\\s+", " ").trim());
+        assertEquals(List.of("view", "cart", "buy", "view", "cart", "buy",
+                APP_ID, RANGE.getStartDate(), RANGE.getEndDate(), "view", "cart", "buy"), List.of(params.getValue()));
+    }
+
+    @Test
+    void defaultFunnelModePassesOnlyTheWindow() {
+        FilterCriteria filter = FilterCriteria.builder().field("source").operator(FilterOperator.EQUALS).value("web").build();
+
+        eventRepository.getFunnelData(APP_ID, List.of("view", "buy"), RANGE, 60, FunnelMode.DEFAULT, List.of(filter));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass(Object[].class);
+        verify(clickHouseJdbcTemplate).queryForMap(sql.capture(), params.capture());
+        String query = sql.getValue().replaceAll("\\s+", " ");
+        assertTrue(query.contains("windowFunnel(3600)(toDateTime(timestamp), eventType = ?, eventType = ?)"), query);
+        // user filters come before the step filter, as their parameters do
+        assertTrue(query.contains("BETWEEN ? AND ? AND source = ? AND eventType IN (?, ?)"), query);
+        assertEquals(List.of("view", "buy", "view", "buy",
+                APP_ID, RANGE.getStartDate(), RANGE.getEndDate(), "web", "view", "buy"), List.of(params.getValue()));
+    }
+
+    private static final LocalDate COHORT = LocalDate.of(2024, 3, 1);
+
+    @Test
+    void retentionReadsOnlyTheCohortDayAndTheRequestedDays() {
+        LocalDateTime lookback = COHORT.minusDays(30).atStartOfDay();
+
+        eventRepository.getCohortRetention(APP_ID, COHORT, List.of(1, 7), lookback);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass(Object[].class);
+        verify(clickHouseJdbcTemplate).queryForMap(sql.capture(), params.capture());
+        assertEquals("SELECT sum(r[1]) AS cohortSize, sum(r[2]) AS retained1, sum(r[3]) AS retained2"
+                + " FROM ( SELECT COALESCE(userId, anonymousId) AS actor,"
+                + " retention(toDate(timestamp) = ?, toDate(timestamp) = ?, toDate(timestamp) = ?) AS r"
+                + " FROM event WHERE appId = ? AND event.timestamp >= ? AND event.timestamp < ?"
+                + " AND toDate(timestamp) IN (?, ?, ?)"
+                + " AND actor IN (SELECT COALESCE(userId, anonymousId) AS actor FROM event"
+                + " WHERE appId = ? AND event.timestamp >= ? AND event.timestamp < ?"
+                + " GROUP BY actor HAVING min(timestamp) >= ? )"
+                + " GROUP BY actor )"
+                + " SETTINGS optimize_aggregation_in_order = 1, max_bytes_before_external_group_by = 1073741824",
+                sql.getValue().replaceAll("\\s+", " ").trim());
+        List<LocalDate> days = List.of(COHORT, COHORT.plusDays(1), COHORT.plusDays(7));
+        List<Object> expected = new ArrayList<>(days);
+        expected.addAll(List.of(APP_ID, COHORT.atStartOfDay(), COHORT.plusDays(8).atStartOfDay()));
+        expected.addAll(days);
+        // users active before the cohort day within the lookback are not new
+        expected.addAll(List.of(APP_ID, lookback, COHORT.plusDays(1).atStartOfDay(), COHORT.atStartOfDay()));
+        assertEquals(expected, List.of(params.getValue()));
+    }
+
+    @Test
+    void retentionCohortCanComeFromTheUserProfileTable() {
+        properties.getRetention().setUseUserProfile(true);
+
+        eventRepository.getCohortRetention(APP_ID, COHORT, List.of(1), COHORT.minusDays(30).atStartOfDay());
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass(Object[].class);
+        verify(clickHouseJdbcTemplate).queryForMap(sql.capture(), params.capture());
+        String query = sql.getValue().replaceAll("\\s+", " ");
+        assertTrue(query.contains("AND actor IN (SELECT actor FROM user_profile WHERE appId = ?"
+                + " GROUP BY actor HAVING toDate(minMerge(first_seen)) = ? )"), query);
+        List<Object> values = List.of(params.getValue());
+        // the lookback is not needed, first_seen covers all history
+        assertEquals(List.of(APP_ID, COHORT), values.subList(values.size() - 2, values.size()));
+        assertEquals(9, values.size());
+    }
+
+    /**
+     * Runs an export through the given mocked ClickHouse request
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void export(ClickHouseRequest<?> request, List<FilterCriteria> filters, OutputStream out) throws Exception {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        ClickHouseStatement clickHouseStatement = mock(ClickHouseStatement.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.unwrap(ClickHouseStatement.class)).thenReturn(clickHouseStatement);
+        when(clickHouseStatement.getRequest()).thenReturn((ClickHouseRequest) request);
+        when(clickHouseJdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenAnswer(invocation -> ((ConnectionCallback<?>) invocation.getArgument(0)).doInConnection(connection));
+
+        eventRepository.exportEvents(APP_ID, RANGE, filters, ExportFormat.CSV, out);
+    }
+
+    @Test
+    void exportStreamsClickHouseEncodedRowsWithNamedParameters() throws Exception {
+        ClickHouseRequest<?> request = mock(ClickHouseRequest.class, RETURNS_SELF);
+        ClickHouseResponse response = mock(ClickHouseResponse.class);
+        when(request.executeAndWait()).thenReturn(response);
+        FilterCriteria filter = FilterCriteria.builder().field("source").operator(FilterOperator.EQUALS).value("web").build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        export(request, List.of(filter), out);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(request).format(ClickHouseFormat.CSVWithNames);
+        verify(request).set("max_execution_time", 600);
+        verify(request).query(sql.capture());
+        verify(request).params(new Object[]{APP_ID, RANGE.getStartDate(), RANGE.getEndDate(), "web"});
+        verify(response).pipe(out, 65536);
+        verify(response).close();
+        String query = sql.getValue().replaceAll("\\s+", " ");
+        assertTrue(query.contains(":p0") && query.contains(":p3"), query);
+        assertFalse(query.contains("?"), query);
+        // rows are sent as they are read, not after a sort
+        assertFalse(query.contains("ORDER BY"), query);
+        assertTrue(query.endsWith("LIMIT 10000000"), query);
+    }
+
+    @Test
+    void exportQueryFailureIsReportedAsATimeout() throws Exception {
+        ClickHouseRequest<?> request = mock(ClickHouseRequest.class, RETURNS_SELF);
+        when(request.executeAndWait()).thenThrow(ClickHouseException.of("Code: 159. Timeout exceeded", null));
+
+        assertThrows(QueryTimeoutException.class, () -> export(request, null, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void exportInterruptedWhileWritingIsReported() throws Exception {
+        ClickHouseRequest<?> request = mock(ClickHouseRequest.class, RETURNS_SELF);
+        ClickHouseResponse response = mock(ClickHouseResponse.class);
+        when(request.executeAndWait()).thenReturn(response);
+        doThrow(new IOException("client went away")).when(response).pipe(any(), anyInt());
+
+        assertThrows(AnalyticsException.class, () -> export(request, null, new ByteArrayOutputStream()));
+        verify(response).close();
+    }
+}
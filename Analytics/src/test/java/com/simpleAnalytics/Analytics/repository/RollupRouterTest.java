@@ -0,0 +1,149 @@
+package com.simpleAnalytics.Analytics.repository;
+
+import com.simpleAnalytics.Analytics.config.AnalyticsProperties;
+import com.simpleAnalytics.Analytics.model.dto.FilterCriteria;
+import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import com.simpleAnalytics.Analytics.model.enums.FilterOperator;
+import com.simpleAnalytics.Analytics.repository.RollupRouter.Segment;
+import com.simpleAnalytics.Analytics.repository.RollupRouter.Source;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollupRouterTest {
+
+    // far enough back that every hour in the tests is complete
+    private static final LocalDateTime DAY = LocalDateTime.now().truncatedTo(ChronoUnit.DAYS).minusDays(10);
+
+    private AnalyticsProperties properties;
+    private RollupRouter router;
+
+    @BeforeEach
+    void setUp() {
+        properties = new AnalyticsProperties();
+        router = new RollupRouter(properties, new AnalyticsQueryBuilder());
+    }
+
+    private static TimeRange range(LocalDateTime start, LocalDateTime end) {
+        return TimeRange.builder().startDate(start).endDate(end).build();
+    }
+
+    private static FilterCriteria filter(String field) {
+        return FilterCriteria.builder().field(field).operator(FilterOperator.EQUALS).value("x").build();
+    }
+
+    private static Segment segment(Source source, LocalDateTime from, LocalDateTime to) {
+        return new Segment(source, from, to, false);
+    }
+
+    @Test
+    void partialEdgesAreReadRawAndWholeDaysFromDailyRollup() {
+        LocalDateTime start = DAY.plusHours(10).plusMinutes(30);
+        LocalDateTime end = DAY.plusDays(3).plusHours(5).plusMinutes(15);
+
+        List<Segment> segments = router.plan(range(start, end), List.of(), true, true);
+
+        assertEquals(List.of(
+                segment(Source.RAW, start, DAY.plusHours(11)),
+                segment(Source.HOURLY, DAY.plusHours(11), DAY.plusDays(1)),
+                segment(Source.DAILY, DAY.plusDays(1), DAY.plusDays(3)),
+                segment(Source.HOURLY, DAY.plusDays(3), DAY.plusDays(3).plusHours(5)),
+                new Segment(Source.RAW, DAY.plusDays(3).plusHours(5), end, true)
+        ), segments);
+    }
+
+    @Test
+    void hourlyGranularityNeverUsesDailyRollup() {
+        LocalDateTime start = DAY.plusHours(10).plusMinutes(30);
+        LocalDateTime end = DAY.plusDays(3).plusHours(5).plusMinutes(15);
+
+        List<Segment> segments = router.plan(range(start, end), List.of(), false, true);
+
+        assertEquals(List.of(
+                segment(Source.RAW, start, DAY.plusHours(11)),
+                segment(Source.HOURLY, DAY.plusHours(11), DAY.plusDays(3).plusHours(5)),
+                new Segment(Source.RAW, DAY.plusDays(3).plusHours(5), end, true)
+        ), segments);
+    }
+
+    @Test
+    void alignedRangeSkipsEmptyEdgesButKeepsInclusiveEnd() {
+        LocalDateTime start = DAY;
+        LocalDateTime end = DAY.plusDays(2);
+
+        List<Segment> segments = router.plan(range(start, end), List.of(), true, true);
+
+        assertEquals(List.of(
+                segment(Source.DAILY, start, end),
+                new Segment(Source.RAW, end, end, true)
+        ), segments);
+    }
+
+    @Test
+    void rangeWithoutWholeHourIsReadRaw() {
+        LocalDateTime start = DAY.plusHours(10).plusMinutes(5);
+        LocalDateTime end = DAY.plusHours(10).plusMinutes(55);
+
+        assertEquals(List.of(new Segment(Source.RAW, start, end, true)),
+                router.plan(range(start, end), List.of(), true, true));
+    }
+
+    @Test
+    void currentHourIsAlwaysReadRaw() {
+        LocalDateTime start = LocalDateTime.now().minusHours(5);
+        LocalDateTime end = LocalDateTime.now().plusHours(1);
+        LocalDateTime lastFullHour = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+
+        List<Segment> segments = router.plan(range(start, end), List.of(), true, true);
+
+        Segment tail = segments.get(segments.size() - 1);
+        assertEquals(Source.RAW, tail.source());
+        assertTrue(tail.inclusiveEnd());
+        assertEquals(end, tail.to());
+        assertFalse(tail.from().isBefore(lastFullHour));
+        assertEquals(0, tail.from().getMinute());
+    }
+
+    @Test
+    void segmentsCoverTheRangeWithoutGaps() {
+        LocalDateTime start = DAY.plusHours(3).plusMinutes(7);
+        LocalDateTime end = DAY.plusDays(5).plusHours(22).plusMinutes(59);
+
+        List<Segment> segments = router.plan(range(start, end), List.of(), true, true);
+
+        assertEquals(start, segments.get(0).from());
+        assertEquals(end, segments.get(segments.size() - 1).to());
+        for (int i = 1; i < segments.size(); i++) {
+            assertEquals(segments.get(i - 1).to(), segments.get(i).from());
+            assertFalse(segments.get(i - 1).inclusiveEnd());
+        }
+    }
+
+    @Test
+    void rawOnlyWhenRollupCannotAnswer() {
+        LocalDateTime start = DAY;
+        LocalDateTime end = DAY.plusDays(2);
+        List<Segment> raw = List.of(new Segment(Source.RAW, start, end, true));
+
+        assertEquals(raw, router.plan(range(start, end), List.of(), true, false));
+        assertEquals(raw, router.plan(range(start, end), List.of(filter("userId")), true, true));
+        assertEquals(Source.DAILY, router.plan(range(start, end), List.of(filter("eventType")), true, true).get(0).source());
+
+        properties.getRollup().setEnabled(false);
+        assertEquals(raw, router.plan(range(start, end), List.of(), true, true));
+    }
+
+    @Test
+    void timeConditionMatchesEndInclusiveness() {
+        assertEquals(" AND bucket >= ? AND bucket < ? ", segment(Source.HOURLY, DAY, DAY).timeCondition());
+        assertEquals(" AND timestamp >= ? AND timestamp <= ? ",
+                new Segment(Source.RAW, DAY, DAY, true).timeCondition());
+    }
+}
@@ -0,0 +1,90 @@
+package com.simpleAnalytics.Analytics.repository;
+
+import com.simpleAnalytics.Analytics.exception.QueryTimeoutException;
+import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserProfileRepositoryImplTest {
+
+    private static final UUID APP_ID = UUID.randomUUID();
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 5, 12, 0);
+    private static final TimeRange RANGE = TimeRange.builder().startDate(NOW.minusDays(7)).endDate(NOW).build();
+
+    @Mock
+    private JdbcTemplate clickHouseJdbcTemplate;
+
+    @InjectMocks
+    private UserProfileRepositoryImpl userProfileRepository;
+
+    @Test
+    void newUsersAreGroupedByTheDayOfTheirMergedFirstSeen() {
+        List<Map<String, Object>> rows = List.of(Map.of("day", NOW.toLocalDate(), "newUsers", 3L));
+        when(clickHouseJdbcTemplate.queryForList(anyString(), any(Object[].class))).thenReturn(rows);
+
+        assertEquals(rows, userProfileRepository.getNewUsersByDay(APP_ID, RANGE));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass(Object[].class);
+        verify(clickHouseJdbcTemplate).queryForList(sql.capture(), params.capture());
+        // the HAVING has to see the merged first_seen, not one part's state
+        assertEquals("SELECT toDate(firstSeen) AS day, count() AS newUsers"
+                + " FROM ( SELECT actor, minMerge(first_seen) AS firstSeen FROM user_profile"
+                + " WHERE appId = ? GROUP BY actor HAVING firstSeen BETWEEN ? AND ? )"
+                + " GROUP BY day ORDER BY day",
+                sql.getValue().replaceAll("\\s+", " ").trim());
+        assertEquals(List.of(APP_ID, RANGE.getStartDate(), RANGE.getEndDate()), List.of(params.getValue()));
+    }
+
+    @Test
+    void returningUsersWereFirstSeenBeforeTheRangeAndActiveInIt() {
+        when(clickHouseJdbcTemplate.queryForObject(anyString(), eq(Long.class), any(Object[].class))).thenReturn(12L);
+
+        assertEquals(12L, userProfileRepository.getReturningUserCount(APP_ID, RANGE));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass(Object[].class);
+        verify(clickHouseJdbcTemplate).queryForObject(sql.capture(), eq(Long.class), params.capture());
+        assertEquals("SELECT uniqExact(COALESCE(userId, anonymousId)) FROM event"
+                + " WHERE appId = ? AND event.timestamp BETWEEN ? AND ?"
+                + " AND COALESCE(userId, anonymousId) IN ( SELECT actor FROM user_profile WHERE appId = ?"
+                + " GROUP BY actor HAVING minMerge(first_seen) < ? AND maxMerge(last_seen) >= ? )",
+                sql.getValue().replaceAll("\\s+", " ").trim());
+        assertEquals(List.of(APP_ID, RANGE.getStartDate(), RANGE.getEndDate(),
+                APP_ID, RANGE.getStartDate(), RANGE.getStartDate()), List.of(params.getValue()));
+    }
+
+    @Test
+    void returningUserCountWithoutAResultIsZero() {
+        when(clickHouseJdbcTemplate.queryForObject(anyString(), eq(Long.class), any(Object[].class))).thenReturn(null);
+
+        assertEquals(0L, userProfileRepository.getReturningUserCount(APP_ID, RANGE));
+    }
+
+    @Test
+    void queryFailuresAreReportedAsTimeouts() {
+        when(clickHouseJdbcTemplate.queryForList(anyString(), any(Object[].class)))
+                .thenThrow(new IllegalStateException("Code: 159. Timeout exceeded"));
+
+        assertThrows(QueryTimeoutException.class, () -> userProfileRepository.getNewUsersByDay(APP_ID, RANGE));
+    }
+}
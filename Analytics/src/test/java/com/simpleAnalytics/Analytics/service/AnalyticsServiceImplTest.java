@@ -0,0 +1,374 @@
+package com.simpleAnalytics.Analytics.service;
+
+import com.simpleAnalytics.Analytics.cache.QueryKeyGenerator;
+import com.simpleAnalytics.Analytics.cache.TimeSeriesBucketCache;
+import com.simpleAnalytics.Analytics.config.AnalyticsProperties;
+import com.simpleAnalytics.Analytics.exception.InvalidQueryException;
+import com.simpleAnalytics.Analytics.exception.QueryTimeoutException;
+import com.simpleAnalytics.Analytics.model.dto.Cardinality;
+import com.simpleAnalytics.Analytics.model.dto.EventCursor;
+import com.simpleAnalytics.Analytics.model.dto.TimeRange;
+import com.simpleAnalytics.Analytics.model.dto.request.AnalyticsQueryRequest;
+import com.simpleAnalytics.Analytics.model.dto.request.FunnelRequest;
+import com.simpleAnalytics.Analytics.model.dto.request.RetentionRequest;
+import com.simpleAnalytics.Analytics.model.dto.response.DashboardOverview;
+import com.simpleAnalytics.Analytics.model.dto.response.EventPage;
+import com.simpleAnalytics.Analytics.model.dto.response.FunnelAnalysis;
+import com.simpleAnalytics.Analytics.model.dto.response.RetentionAnalysis;
+import com.simpleAnalytics.Analytics.model.dto.response.TimeSeriesData;
+import com.simpleAnalytics.Analytics.model.entity.Event;
+import com.simpleAnalytics.Analytics.model.enums.CardinalityMode;
+import com.simpleAnalytics.Analytics.model.enums.TimeGranularity;
+import com.simpleAnalytics.Analytics.repository.AnalyticsQueryBuilder;
+import com.simpleAnalytics.Analytics.repository.EventRepository;
+import com.simpleAnalytics.Analytics.repository.UserProfileRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AnalyticsServiceImplTest {
+
+    private static final UUID APP_ID = UUID.randomUUID();
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 5, 12, 0);
+    private static final TimeRange RANGE = TimeRange.builder().startDate(NOW.minusDays(1)).endDate(NOW).build();
+
+    @Mock
+    private EventRepository eventRepository;
+
+    @Mock
+    private UserProfileRepository userProfileRepository;
+
+    @Mock
+    private TimeSeriesBucketCache bucketCache;
+
+    private final AnalyticsProperties properties = new AnalyticsProperties();
+    private ExecutorService analyticsQueryExecutor;
+    private AnalyticsServiceImpl analyticsService;
+
+    @BeforeEach
+    void setUp() {
+        analyticsQueryExecutor = Executors.newFixedThreadPool(4);
+        analyticsService = new AnalyticsServiceImpl(eventRepository, userProfileRepository, properties,
+                analyticsQueryExecutor, new QueryKeyGenerator(properties, new AnalyticsQueryBuilder()), bucketCache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        analyticsQueryExecutor.shutdownNow();
+    }
+
+    /**
+     * Events newest first, as the repository returns them
+     */
+    private static List<Event> events(int count) {
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(Event.builder().id(UUID.randomUUID()).timestamp(NOW.minusMinutes(i)).build());
+        }
+        return events;
+    }
+
+    /**
+     * A query that only returns once every query of the dashboard has started
+     */
+    private static <T> T afterAllStarted(CountDownLatch started, T result) throws InterruptedException {
+        started.countDown();
+        if (!started.await(1, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("dashboard queries ran one after another");
+        }
+        return result;
+    }
+
+    @Test
+    void dashboardQueriesRunConcurrently() {
+        CountDownLatch started = new CountDownLatch(4);
+        when(bucketCache.sealedBefore()).thenReturn(RANGE.getStartDate());
+        when(eventRepository.getPeriodComparisonMetrics(eq(APP_ID), eq(RANGE), any(), isNull(), any()))
+                .thenAnswer(invocation -> afterAllStarted(started, Map.<String, Object>of(
+                        "totalEvents", 10L, "uniqueUsers", 4L, "activeSessions", 5L,
+                        "prevTotalEvents", 5L, "prevUniqueUsers", 4L, "prevActiveSessions", 10L)));
+        when(eventRepository.getTimeSeriesData(eq(APP_ID), eq(RANGE), eq("toStartOfHour"), isNull()))
+                .thenAnswer(invocation -> afterAllStarted(started, List.of()));
+        when(eventRepository.getTopEvents(APP_ID, RANGE, 10, null))
+                .thenAnswer(invocation -> afterAllStarted(started, List.of()));
+        when(eventRepository.getSourceBreakdown(APP_ID, RANGE, null))
+                .thenAnswer(invocation -> afterAllStarted(started, List.of()));
+
+        DashboardOverview overview = analyticsService.getDashboardOverview(APP_ID, RANGE, Cardinality.exact());
+
+        assertEquals(10L, overview.getTotalEvents().getValue());
+        assertEquals("up", overview.getTotalEvents().getTrend());
+        assertEquals("stable", overview.getUniqueUsers().getTrend());
+        assertEquals("down", overview.getActiveSessions().getTrend());
+        assertEquals(2.5, overview.getAvgEventsPerUser().getValue());
+    }
+
+    @Test
+    void failedDashboardQueryFailsTheWholeDashboard() {
+        lenient().when(bucketCache.sealedBefore()).thenReturn(RANGE.getStartDate());
+        lenient().when(eventRepository.getPeriodComparisonMetrics(any(), any(), any(), any(), any())).thenReturn(Map.of());
+        when(eventRepository.getTopEvents(APP_ID, RANGE, 10, null))
+                .thenThrow(new QueryTimeoutException("Query timed out while fetching top events"));
+
+        assertThrows(QueryTimeoutException.class,
+                () -> analyticsService.getDashboardOverview(APP_ID, RANGE, Cardinality.exact()));
+    }
+
+    @Test
+    void firstPageFetchesOneExtraRowAndPointsCursorAtLastReturnedEvent() {
+        List<Event> rows = events(3);
+        when(eventRepository.getEventsAfter(eq(APP_ID), eq(RANGE), isNull(), isNull(), eq(3))).thenReturn(rows);
+
+        EventPage page = analyticsService.getEventPage(APP_ID, RANGE, null, null, 2);
+
+        assertTrue(page.isHasNext());
+        assertEquals(rows.subList(0, 2), page.getEvents());
+        assertEquals(2, page.getPageSize());
+        Event last = rows.get(1);
+        assertEquals(new EventCursor(last.getTimestamp(), last.getId()), EventCursor.decode(page.getNextCursor()));
+    }
+
+    @Test
+    void nextPageSeeksPastTheCursor() {
+        List<Event> rows = events(3);
+        when(eventRepository.getEventsAfter(eq(APP_ID), eq(RANGE), isNull(), isNull(), eq(3))).thenReturn(rows);
+        EventPage first = analyticsService.getEventPage(APP_ID, RANGE, null, null, 2);
+
+        EventCursor expected = new EventCursor(rows.get(1).getTimestamp(), rows.get(1).getId());
+        when(eventRepository.getEventsAfter(eq(APP_ID), eq(RANGE), isNull(), eq(expected), eq(3)))
+                .thenReturn(rows.subList(2, 3));
+        EventPage second = analyticsService.getEventPage(APP_ID, RANGE, null, first.getNextCursor(), 2);
+
+        assertEquals(rows.subList(2, 3), second.getEvents());
+        // the last page reports what it holds, not the requested limit
+        assertEquals(1, second.getPageSize());
+        assertFalse(second.isHasNext());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void blankCursorStartsFromTheNewestEvent() {
+        when(eventRepository.getEventsAfter(eq(APP_ID), eq(RANGE), isNull(), isNull(), anyInt())).thenReturn(List.of());
+
+        EventPage page = analyticsService.getEventPage(APP_ID, RANGE, null, " ", 10);
+
+        assertTrue(page.getEvents().isEmpty());
+        assertFalse(page.isHasNext());
+        verify(eventRepository).getEventsAfter(APP_ID, RANGE, null, null, 11);
+    }
+
+    @Test
+    void malformedCursorIsRejectedBeforeQuerying() {
+        assertThrows(InvalidQueryException.class,
+                () -> analyticsService.getEventPage(APP_ID, RANGE, null, "bogus", 10));
+        assertThrows(InvalidQueryException.class,
+                () -> analyticsService.getEventPage(APP_ID, RANGE, null, null, 0));
+        verifyNoInteractions(eventRepository);
+    }
+
+    @Test
+    void cardinalityDefaultsDependOnTheCaller() {
+        assertEquals(Cardinality.exact(), analyticsService.resolveCardinality(null, null, false));
+        assertEquals(Cardinality.of(CardinalityMode.UNIQ_COMBINED, null), analyticsService.resolveCardinality(null, null, true));
+        assertEquals(Cardinality.of(CardinalityMode.HLL, null), analyticsService.resolveCardinality(CardinalityMode.HLL, 14, true));
+        assertEquals(Cardinality.of(CardinalityMode.UNIQ_COMBINED, 20),
+                analyticsService.resolveCardinality(CardinalityMode.UNIQ_COMBINED, 20, false));
+    }
+
+    @Test
+    void cardinalityPrecisionOutsideTheHyperLogLogRangeIsRejected() {
+        assertThrows(InvalidQueryException.class,
+                () -> analyticsService.resolveCardinality(CardinalityMode.UNIQ_COMBINED, 11, false));
+        assertThrows(InvalidQueryException.class,
+                () -> analyticsService.resolveCardinality(CardinalityMode.UNIQ_COMBINED, 21, false));
+    }
+
+    private static FunnelRequest funnel(List<String> steps) {
+        return FunnelRequest.builder().appId(APP_ID).steps(steps).timeRange(RANGE).build();
+    }
+
+    @Test
+    void funnelStepsAreReadFromTheSingleFunnelRow() {
+        when(eventRepository.getFunnelData(APP_ID, List.of("view", "cart", "buy"), RANGE, 60, null, null))
+                .thenReturn(Map.of("step1", 200L, "step2", 50L, "step3", 10L,
+                        "medianSeconds1", 42.5, "medianSeconds2", Double.NaN));
+
+        FunnelAnalysis analysis = analyticsService.getFunnelAnalysis(funnel(List.of("view", "cart", "buy")));
+
+        assertEquals(200L, analysis.getTotalUsers());
+        assertEquals(5.0, analysis.getOverallConversionRate());
+        FunnelAnalysis.FunnelStep cart = analysis.getSteps().get(1);
+        assertEquals("cart", cart.getEventType());
+        assertEquals(50L, cart.getUserCount());
+        assertEquals(25.0, cart.getConversionRate());
+        assertEquals(75.0, cart.getDropoffRate());
+        assertEquals(42.5, cart.getMedianSecondsFromPreviousStep());
+        assertNull(analysis.getSteps().get(0).getMedianSecondsFromPreviousStep());
+        // a quantile over no converted users comes back as NaN
+        assertNull(analysis.getSteps().get(2).getMedianSecondsFromPreviousStep());
+    }
+
+    @Test
+    void funnelBeyondWindowFunnelLimitsIsRejectedBeforeQuerying() {
+        assertThrows(InvalidQueryException.class,
+                () -> analyticsService.getFunnelAnalysis(funnel(Collections.nCopies(33, "view"))));
+        FunnelRequest zeroWindow = funnel(List.of("view", "buy"));
+        zeroWindow.setTimeWindowMinutes(0);
+        assertThrows(InvalidQueryException.class, () -> analyticsService.getFunnelAnalysis(zeroWindow));
+        verifyNoInteractions(eventRepository);
+    }
+
+    private static RetentionRequest retention(List<Integer> periods) {
+        return RetentionRequest.builder()
+                .appId(APP_ID)
+                .cohortDate(NOW.toLocalDate().minusDays(40))
+                .timeRange(TimeRange.builder().startDate(NOW.minusDays(60)).endDate(NOW).build())
+                .retentionPeriods(periods)
+                .build();
+    }
+
+    @Test
+    void retentionPeriodsAreSortedAndReadFromTheRetentionRow() {
+        RetentionRequest request = retention(List.of(7, 1, 7));
+        when(eventRepository.getCohortRetention(APP_ID, request.getCohortDate(), List.of(1, 7), NOW.minusDays(60)))
+                .thenReturn(Map.of("cohortSize", 80L, "retained1", 20L, "retained2", 4L));
+
+        RetentionAnalysis analysis = analyticsService.getRetentionAnalysis(request);
+
+        assertEquals(80L, analysis.getCohortSize());
+        assertEquals(2, analysis.getPeriods().size());
+        assertEquals(1, analysis.getPeriods().get(0).getDay());
+        assertEquals(25.0, analysis.getPeriods().get(0).getRetentionRate());
+        assertEquals(7, analysis.getPeriods().get(1).getDay());
+        assertEquals(4L, analysis.getPeriods().get(1).getRetainedUsers());
+        assertEquals(5.0, analysis.getPeriods().get(1).getRetentionRate());
+    }
+
+    @Test
+    void emptyCohortHasZeroRetentionAndDefaultPeriods() {
+        RetentionRequest request = retention(null);
+        when(eventRepository.getCohortRetention(APP_ID, request.getCohortDate(), List.of(1, 7, 14, 30), NOW.minusDays(60)))
+                .thenReturn(Map.of());
+
+        RetentionAnalysis analysis = analyticsService.getRetentionAnalysis(request);
+
+        assertEquals(0L, analysis.getCohortSize());
+        assertEquals(4, analysis.getPeriods().size());
+        assertEquals(0.0, analysis.getPeriods().get(3).getRetentionRate());
+    }
+
+    @Test
+    void invalidRetentionPeriodsAreRejectedBeforeQuerying() {
+        assertThrows(InvalidQueryException.class, () -> analyticsService.getRetentionAnalysis(retention(List.of(0, 7))));
+        assertThrows(InvalidQueryException.class, () -> analyticsService.getRetentionAnalysis(retention(List.of(1, 400))));
+        RetentionRequest cohortBeforeLookback = retention(List.of(1));
+        cohortBeforeLookback.setCohortDate(NOW.toLocalDate().minusDays(90));
+        assertThrows(InvalidQueryException.class, () -> analyticsService.getRetentionAnalysis(cohortBeforeLookback));
+        verifyNoInteractions(eventRepository);
+    }
+
+    private static final LocalDateTime MIDNIGHT = LocalDateTime.of(2024, 3, 5, 0, 0);
+    private static final String SERIES = "series";
+
+    private static AnalyticsQueryRequest hourlySeries(LocalDateTime start, LocalDateTime end) {
+        return AnalyticsQueryRequest.builder()
+                .appId(APP_ID)
+                .timeRange(TimeRange.builder().startDate(start).endDate(end).build())
+                .granularity(TimeGranularity.HOUR)
+                .build();
+    }
+
+    private static TimeRange range(LocalDateTime start, LocalDateTime end) {
+        return TimeRange.builder().startDate(start).endDate(end).build();
+    }
+
+    private static Map<String, Object> bucket(LocalDateTime start, long count) {
+        return Map.of("eventTimeStamp", start, "count", count);
+    }
+
+    private static TimeSeriesData point(LocalDateTime timestamp, long value) {
+        return TimeSeriesData.builder().timestamp(timestamp).value(value).build();
+    }
+
+    @Test
+    void timeSeriesStitchesCachedBucketsBetweenTheUncachedEdges() {
+        LocalDateTime start = MIDNIGHT.plusMinutes(30);
+        LocalDateTime end = MIDNIGHT.plusHours(6);
+        when(bucketCache.sealedBefore()).thenReturn(MIDNIGHT.plusHours(4));
+        when(bucketCache.seriesKey(APP_ID, TimeGranularity.HOUR, null)).thenReturn(SERIES);
+        // 01:00 to 03:00 are whole and sealed, the first two are cached
+        when(bucketCache.getSealed(SERIES, List.of(MIDNIGHT.plusHours(1), MIDNIGHT.plusHours(2), MIDNIGHT.plusHours(3))))
+                .thenReturn(Map.of(MIDNIGHT.plusHours(1), 5L, MIDNIGHT.plusHours(2), 0L));
+        // BETWEEN is inclusive, so the head query also returns a partial row for the first cached bucket
+        when(eventRepository.getTimeSeriesData(APP_ID, range(start, MIDNIGHT.plusHours(1)), "toStartOfHour", null))
+                .thenReturn(List.of(bucket(MIDNIGHT, 3), bucket(MIDNIGHT.plusHours(1), 1)));
+        when(eventRepository.getTimeSeriesData(APP_ID, range(MIDNIGHT.plusHours(3), end), "toStartOfHour", null))
+                .thenReturn(List.of(bucket(MIDNIGHT.plusHours(3), 7), bucket(MIDNIGHT.plusHours(5), 2)));
+
+        List<TimeSeriesData> series = analyticsService.getTimeSeriesData(hourlySeries(start, end));
+
+        assertEquals(List.of(point(MIDNIGHT, 3), point(MIDNIGHT.plusHours(1), 5),
+                point(MIDNIGHT.plusHours(3), 7), point(MIDNIGHT.plusHours(5), 2)), series);
+        // only the newly sealed bucket is stored
+        verify(bucketCache).putSealed(SERIES, Map.of(MIDNIGHT.plusHours(3), 7L));
+    }
+
+    @Test
+    void timeSeriesWithoutCachedPrefixQueriesTheWholeRangeAndSealsEmptyBucketsToo() {
+        LocalDateTime end = MIDNIGHT.plusHours(3);
+        when(bucketCache.sealedBefore()).thenReturn(end);
+        when(bucketCache.seriesKey(APP_ID, TimeGranularity.HOUR, null)).thenReturn(SERIES);
+        // a gap in the cache: only a prefix of cached buckets is used
+        when(bucketCache.getSealed(SERIES, List.of(MIDNIGHT, MIDNIGHT.plusHours(1), MIDNIGHT.plusHours(2))))
+                .thenReturn(Map.of(MIDNIGHT.plusHours(1), 9L));
+        when(eventRepository.getTimeSeriesData(APP_ID, range(MIDNIGHT, end), "toStartOfHour", null))
+                .thenReturn(List.of(bucket(MIDNIGHT, 4), bucket(MIDNIGHT.plusHours(1), 9)));
+
+        List<TimeSeriesData> series = analyticsService.getTimeSeriesData(hourlySeries(MIDNIGHT, end));
+
+        assertEquals(List.of(point(MIDNIGHT, 4), point(MIDNIGHT.plusHours(1), 9)), series);
+        verify(bucketCache).putSealed(SERIES, Map.of(MIDNIGHT, 4L, MIDNIGHT.plusHours(1), 9L, MIDNIGHT.plusHours(2), 0L));
+    }
+
+    @Test
+    void timeSeriesAlignsACopyAndLeavesTheCallersRequestAlone() {
+        LocalDateTime start = MIDNIGHT.plusSeconds(15);
+        LocalDateTime end = MIDNIGHT.plusMinutes(30).plusSeconds(15);
+        AnalyticsQueryRequest request = hourlySeries(start, end);
+        when(bucketCache.sealedBefore()).thenReturn(MIDNIGHT);
+
+        analyticsService.getTimeSeriesData(request);
+
+        verify(eventRepository).getTimeSeriesData(APP_ID, range(MIDNIGHT, MIDNIGHT.plusMinutes(31)), "toStartOfHour", null);
+        assertEquals(range(start, end), request.getTimeRange());
+    }
+}
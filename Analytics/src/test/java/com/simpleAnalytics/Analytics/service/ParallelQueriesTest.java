@@ -0,0 +1,125 @@
+package com.simpleAnalytics.Analytics.service;
+
+import com.simpleAnalytics.Analytics.exception.AnalyticsException;
+import com.simpleAnalytics.Analytics.exception.QueryTimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelQueriesTest {
+
+    private ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A query that only returns once every query of the group has started
+     */
+    private static <T> T afterAllStarted(CountDownLatch started, T result) throws InterruptedException {
+        started.countDown();
+        if (!started.await(1, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("queries ran one after another");
+        }
+        return result;
+    }
+
+    @Test
+    void queriesRunConcurrently() {
+        CountDownLatch started = new CountDownLatch(3);
+        ParallelQueries queries = new ParallelQueries(executor);
+
+        Supplier<Integer> first = queries.submit(() -> afterAllStarted(started, 1));
+        Supplier<String> second = queries.submit(() -> afterAllStarted(started, "two"));
+        Supplier<Long> third = queries.submit(() -> afterAllStarted(started, 3L));
+        queries.awaitAll(Duration.ofSeconds(2));
+
+        assertEquals(1, first.get());
+        assertEquals("two", second.get());
+        assertEquals(3L, third.get());
+    }
+
+    @Test
+    void firstFailureIsRethrownAndCancelsTheOthers() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("clickhouse down");
+        ParallelQueries queries = new ParallelQueries(executor);
+
+        queries.submit(() -> {
+            running.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        });
+        queries.submit(() -> {
+            running.await();
+            throw failure;
+        });
+
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> queries.awaitAll(Duration.ofSeconds(2))));
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void deadlineCancelsQueriesStillRunning() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ParallelQueries queries = new ParallelQueries(executor);
+
+        queries.submit(() -> "fast");
+        queries.submit(() -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        });
+
+        assertThrows(QueryTimeoutException.class, () -> queries.awaitAll(Duration.ofMillis(100)));
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void saturatedExecutorRejectsTheGroup() throws InterruptedException {
+        executor.shutdownNow();
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1));
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ParallelQueries queries = new ParallelQueries(executor);
+
+        queries.submit(() -> {
+            running.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        });
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+        queries.submit(() -> "queued");
+
+        assertThrows(AnalyticsException.class, () -> queries.submit(() -> "rejected"));
+        // the queries already submitted are cancelled with it
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+}
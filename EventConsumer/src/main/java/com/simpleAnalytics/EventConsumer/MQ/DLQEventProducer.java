@@ -3,8 +3,12 @@ package com.simpleAnalytics.EventConsumer.MQ;
 import com.simpleAnalytics.EventConsumer.entity.DLQEvent;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface DLQEventProducer {
 
-    public void sendEvents(List<DLQEvent> dlqEvent) ;
+    /**
+     * Completes once the broker has acknowledged the events, or exceptionally if the send failed
+     */
+    public CompletableFuture<Void> sendEvents(List<DLQEvent> dlqEvent) ;
 }
@@ -1,8 +1,11 @@
 package com.simpleAnalytics.EventConsumer.MQ;
 
-import com.simpleAnalytics.EventConsumer.entity.Event;
 import com.simpleAnalytics.protobuf.EventProto;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.List;
 
 public interface EventConsumer {
-    public void consume(EventProto.Event protoEvent);
+    public void consume(List<ConsumerRecord<String, EventProto.Event>> records, Acknowledgment acknowledgment);
 }
@@ -10,6 +10,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 
 @Slf4j
@@ -25,8 +26,8 @@ public class DLQEventProducerImpl implements DLQEventProducer {
     }
 
     @Override
-    public void sendEvents(List<DLQEvent> dlqEvents) {
+    public CompletableFuture<Void> sendEvents(List<DLQEvent> dlqEvents) {
         log.info("Sending DLQ Events: {}", dlqEvents);
-        kafkaTemplate.send("event_dlq", dlqEvents);
+        return kafkaTemplate.send("event_dlq", dlqEvents).thenApply(result -> null);
     }
 }
@@ -1,40 +1,54 @@
 package com.simpleAnalytics.EventConsumer.MQ.impl;
 
 
-import com.simpleAnalytics.EventConsumer.MQ.DLQEventProducer;
 import com.simpleAnalytics.EventConsumer.MQ.EventConsumer;
-import com.simpleAnalytics.EventConsumer.entity.DLQEvent;
 import com.simpleAnalytics.EventConsumer.entity.Event;
 import com.simpleAnalytics.EventConsumer.repository.EventRepository;
 import com.simpleAnalytics.EventConsumer.service.EventMapper;
 import com.simpleAnalytics.protobuf.EventProto;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class EventConsumerImpl implements EventConsumer {
+    public static final String EVENT_LISTENER_ID = "event-consumer";
     private final EventRepository eventRepository;
-    private final DLQEventProducer dlqEventProducer;
-
 
 
     @Override
-    @KafkaListener(topics = "event", groupId = "analytics-consumer")
-    public void consume(EventProto.Event protoEvent) {
-            Event event = EventMapper.toJava(protoEvent);
-        try {
-//            log.info("Saving Event: {}", event.getId());
-            eventRepository.save(event);
-//            log.info("Saved Event: {}", event.getId());
-            //save to db
-        } catch (Exception e) {
-            log.error("Error processing event", e);
-            DLQEvent dlqEvent = DLQEvent.builder().errorMessage(e.getMessage()).event(event).build();
-//            dlqEventProducer.sendEvent(dlqEvent);
+    @KafkaListener(id = EVENT_LISTENER_ID, topics = "event", groupId = "analytics-consumer",
+            containerFactory = "batchEventListenerContainerFactory")
+    public void consume(List<ConsumerRecord<String, EventProto.Event>> records, Acknowledgment acknowledgment) {
+        List<Event> events = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, EventProto.Event> record : records) {
+            try {
+                events.add(EventMapper.toJava(record.value()));
+            } catch (Exception e) {
+                // a record that cannot be mapped will never succeed, skip it rather than block the partition
+                log.error("Error mapping event at {}-{}@{}", record.topic(), record.partition(), record.offset(), e);
+            }
         }
+
+        eventRepository.saveAll(events);
+        // commit only once the flush covering this batch has written it (or sent it to the DLQ)
+        eventRepository.awaitFlush().whenComplete((ignored, e) -> {
+            if (e == null) {
+                acknowledgment.acknowledge();
+            } else {
+                // with async acks the missing ack holds back the partition's commits, so the batch is redelivered
+                // after the next rebalance or restart instead of being lost
+                log.error("Batch of {} records was neither written nor sent to the DLQ, leaving it unacknowledged",
+                        records.size(), e);
+            }
+        });
     }
 }
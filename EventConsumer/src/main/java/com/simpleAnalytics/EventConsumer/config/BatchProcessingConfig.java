@@ -10,20 +10,85 @@ import lombok.Data;
 @ConfigurationProperties(prefix = "app.batch")
 public class BatchProcessingConfig {
 
+    /**
+     * Writer used to insert batches into ClickHouse: JDBC or ROW_BINARY
+     */
+    private Writer writer = Writer.JDBC;
+
+    public enum Writer {
+        JDBC,
+        ROW_BINARY
+    }
+
     /**
      * Maximum number of events to buffer before forcing a flush
      */
     private int maxBufferSize = 1000;
 
+    /**
+     * Approximate buffered bytes that force a flush
+     */
+    private long maxBufferBytes = 8 * 1024 * 1024;
+
+    /**
+     * Maximum time in milliseconds the oldest buffered event may wait before a flush
+     */
+    private long maxBufferAgeMs = 1000;
+
+    /**
+     * Number of slots in the event ring buffer, rounded up to a power of two
+     */
+    private int bufferCapacity = 65536;
+
+    /**
+     * Buffer occupancy (fraction of capacity) at which the Kafka listener is paused
+     */
+    private double pauseThreshold = 0.9;
+
+    /**
+     * Buffer occupancy (fraction of capacity) at which a paused Kafka listener is resumed
+     */
+    private double resumeThreshold = 0.5;
+
+    /**
+     * Number of listener threads consuming the event topic, effectively capped by the partition count
+     */
+    private int listenerConcurrency = 3;
+
     /**
      * Maximum number of events to process in a single batch
      */
     private int maxBatchSize = 500;
 
     /**
-     * Scheduled flush interval in milliseconds
+     * Smallest batch the adaptive batch size may shrink to
+     */
+    private int minBatchSize = 100;
+
+    /**
+     * Adapt the batch size between minBatchSize and maxBatchSize to the observed insert latency
+     */
+    private boolean adaptiveBatchSize = true;
+
+    /**
+     * Insert latency in milliseconds the adaptive batch size aims for
+     */
+    private long targetInsertLatencyMs = 250;
+
+    /**
+     * Number of worker threads inserting batches concurrently
+     */
+    private int writerThreads = 4;
+
+    /**
+     * Maximum number of batches queued or being inserted at once
+     */
+    private int maxInFlightBatches = 8;
+
+    /**
+     * Interval in milliseconds at which the flush policy is evaluated
      */
-    private long flushIntervalMs = 5000;
+    private long flushIntervalMs = 100;
 
     /**
      * Maximum retry attempts for failed batches
@@ -0,0 +1,33 @@
+package com.simpleAnalytics.EventConsumer.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+
+@Configuration
+@RequiredArgsConstructor
+public class KafkaConsumerConfig {
+
+    private final BatchProcessingConfig batchProcessingConfig;
+
+    /**
+     * Batch listener factory for the event topic. Offsets are acknowledged manually once the
+     * events are written, possibly from the flush thread, hence async acks.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchEventListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        factory.setConcurrency(batchProcessingConfig.getListenerConcurrency());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setAsyncAcks(true);
+        return factory;
+    }
+}
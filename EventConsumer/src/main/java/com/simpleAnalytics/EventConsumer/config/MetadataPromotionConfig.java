@@ -0,0 +1,28 @@
+package com.simpleAnalytics.EventConsumer.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.metadata")
+public class MetadataPromotionConfig {
+
+    /**
+     * Metadata keys copied into the metadata_props column for every app
+     */
+    private Set<String> defaultPromotedKeys = new HashSet<>();
+
+    /**
+     * Additional metadata keys copied into the metadata_props column, per appId
+     */
+    private Map<UUID, Set<String>> promotedKeys = new HashMap<>();
+}
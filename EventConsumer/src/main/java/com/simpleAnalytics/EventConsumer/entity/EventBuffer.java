@@ -1,99 +1,178 @@
 package com.simpleAnalytics.EventConsumer.entity;
 
+import com.simpleAnalytics.EventConsumer.config.BatchProcessingConfig;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Bounded, lock-free ring buffer of events waiting to be written.
+ * Every slot carries a sequence number so producers and drainers claim slots with a single CAS,
+ * and draining a batch only touches the slots it removes.
+ */
 @Component
 public class EventBuffer {
 
-    private final List<Event> events = new ArrayList<>();
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    private static final int MAX_BATCH_SIZE = 1000;
+    private final AtomicReferenceArray<Event> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray enqueuedAt;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final int capacity;
+    private final int mask;
 
-    public void add(Event event) {
-        lock.writeLock().lock();
-        try {
-            events.add(event);
-        } finally {
-            lock.writeLock().unlock();
-        }
-    }public void addAll(List<Event> eventList) {
-        lock.writeLock().lock();
-        try {
-            events.addAll(eventList);
-        } finally {
-            lock.writeLock().unlock();
+    public EventBuffer(BatchProcessingConfig config) {
+        this.capacity = config.getBufferCapacity() <= 2 ? 2 : Integer.highestOneBit(config.getBufferCapacity() - 1) << 1;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        this.enqueuedAt = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
         }
     }
 
+    /**
+     * Adds the event, waiting for a drain when the buffer is full instead of growing.
+     */
+    public void add(Event event) {
+        while (!offer(event)) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
 
-    public boolean isEmpty() {
-        lock.readLock().lock();
-        try {
-            return events.isEmpty();
-        } finally {
-            lock.readLock().unlock();
+    public void addAll(List<Event> eventList) {
+        for (Event event : eventList) {
+            add(event);
         }
     }
 
-    public List<Event> drain() {
-        lock.writeLock().lock();
-        try {
-            if (events.isEmpty()) {
-                return List.of();
+    public boolean offer(Event event) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    bytes.addAndGet(estimateSize(event));
+                    enqueuedAt.set(index, System.currentTimeMillis());
+                    slots.set(index, event);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
             }
+        }
+    }
 
-            List<Event> batch = new ArrayList<>(events);
-            events.clear();
-            return batch;
-        } finally {
-            lock.writeLock().unlock();
+    private Event poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    Event event = slots.getAndSet(index, null);
+                    bytes.addAndGet(-estimateSize(event));
+                    sequences.set(index, position + capacity);
+                    return event;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
         }
     }
 
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public List<Event> drain() {
+        return drainBatch(capacity);
+    }
+
     public List<Event> drainBatch(int maxSize) {
-        lock.writeLock().lock();
-        try {
-            if (events.isEmpty()) {
-                return List.of();
-            }
+        int batchSize = Math.min(maxSize, size());
+        if (batchSize == 0) {
+            return List.of();
+        }
 
-            int batchSize = Math.min(maxSize, events.size());
-            List<Event> batch = new ArrayList<>(events.subList(0, batchSize));
-            events.subList(0, batchSize).clear();
-            return batch;
-        } finally {
-            lock.writeLock().unlock();
+        List<Event> batch = new ArrayList<>(batchSize);
+        Event event;
+        while (batch.size() < maxSize && (event = poll()) != null) {
+            batch.add(event);
         }
+        return batch;
     }
 
     public void clear() {
-        lock.writeLock().lock();
-        try {
-            events.clear();
-        } finally {
-            lock.writeLock().unlock();
+        while (poll() != null) {
+            // discard
         }
     }
 
     public int size() {
-        lock.readLock().lock();
-        try {
-            return events.size();
-        } finally {
-            lock.readLock().unlock();
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Approximate serialized size of the buffered events.
+     */
+    public long sizeInBytes() {
+        return Math.max(0, bytes.get());
+    }
+
+    /**
+     * Milliseconds the oldest buffered event has been waiting, 0 when empty.
+     */
+    public long oldestAgeMillis() {
+        long position = head.get();
+        int index = (int) (position & mask);
+        if (sequences.get(index) != position + 1) {
+            return 0;
         }
+        return Math.max(0, System.currentTimeMillis() - enqueuedAt.get(index));
     }
 
-    public boolean shouldFlush() {
-        lock.readLock().lock();
-        try {
-            return events.size() >= MAX_BATCH_SIZE;
-        } finally {
-            lock.readLock().unlock();
+    private static long estimateSize(Event event) {
+        // fixed width columns (ids, timestamps) plus the variable length strings
+        long size = 96;
+        UserEvent ue = event.getUserEvent();
+        if (ue != null) {
+            size += length(ue.getEventType()) + length(ue.getSource());
+            if (ue.getMetadata() != null) {
+                for (Map.Entry<String, Object> entry : ue.getMetadata().entrySet()) {
+                    size += length(entry.getKey()) + length(String.valueOf(entry.getValue())) + 4;
+                }
+            }
         }
+        if (event.getContext() != null) {
+            size += event.getContext().getSerializedSize();
+        }
+        return size;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
     }
 }
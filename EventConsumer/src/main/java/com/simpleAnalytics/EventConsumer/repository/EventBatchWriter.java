@@ -0,0 +1,10 @@
+package com.simpleAnalytics.EventConsumer.repository;
+
+import com.simpleAnalytics.EventConsumer.entity.Event;
+import org.springframework.dao.DataAccessException;
+
+import java.util.List;
+
+public interface EventBatchWriter {
+    public void write(List<Event> eventBatch) throws DataAccessException;
+}
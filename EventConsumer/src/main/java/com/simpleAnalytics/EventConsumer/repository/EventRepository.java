@@ -3,8 +3,13 @@ package com.simpleAnalytics.EventConsumer.repository;
 import com.simpleAnalytics.EventConsumer.entity.Event;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface EventRepository {
     public void save(Event event);
     public void saveAll(List<Event> event);
+    /**
+     * Completes once every event saved before this call has been written or handed to the DLQ.
+     */
+    public CompletableFuture<Void> awaitFlush();
 }
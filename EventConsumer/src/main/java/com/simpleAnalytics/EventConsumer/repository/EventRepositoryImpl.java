@@ -1,113 +1,143 @@
 package com.simpleAnalytics.EventConsumer.repository;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.simpleAnalytics.EventConsumer.MQ.DLQEventProducer;
+import com.simpleAnalytics.EventConsumer.config.BatchProcessingConfig;
 import com.simpleAnalytics.EventConsumer.entity.DLQEvent;
 import com.simpleAnalytics.EventConsumer.entity.EventBuffer;
-import com.simpleAnalytics.EventConsumer.entity.UserEvent;
-import com.simpleAnalytics.protobuf.EventProto;
-import org.springframework.dao.DataAccessException;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Retryable;
+import com.simpleAnalytics.EventConsumer.service.EventProcessingMetrics;
+import com.simpleAnalytics.EventConsumer.service.FlushPolicy;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.simpleAnalytics.EventConsumer.entity.Event;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Buffers events and writes them from a dedicated flush pipeline: a single coordinator drains
+ * the buffer into batches and hands them to a pool of writer workers, so one batch is encoded
+ * while another is on the wire and callers never wait on an insert.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class EventRepositoryImpl implements EventRepository {
-    private final JdbcTemplate jdbcTemplate;
+    private final EventBatchWriter eventBatchWriter;
     private final DLQEventProducer dlqEventProducer;
-    private final ObjectMapper mapper = new JsonMapper();
     private final EventBuffer events;
-    private static final String INSERT_SQL = """
-            INSERT INTO event (id, receivedAt,context_ip,context_ua,context_os,
-                context_browser,context_device,context_locale,context_timezone, 
-                schemaVersion,sessionId,userId,anonymousId,appId,timestamp,
-                eventType,metadata,source) 
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?,? ,? ,? , ?, ?, ?,? ,?)
-            """;
-
+    private final BatchProcessingConfig config;
+    private final EventProcessingMetrics metrics;
+    private final FlushPolicy flushPolicy;
+    private final Queue<CompletableFuture<Void>> flushWaiters = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private ExecutorService coordinator;
+    private ExecutorService writers;
+    private Semaphore inFlight;
+    // completes once every batch dispatched so far has been written or sent to the DLQ, fails if one was neither
+    private CompletableFuture<Void> dispatched = CompletableFuture.completedFuture(null);
+
+    @PostConstruct
+    void startFlushPipeline() {
+        coordinator = Executors.newSingleThreadExecutor(namedThreads("event-flush-coordinator"));
+        writers = Executors.newFixedThreadPool(config.getWriterThreads(), namedThreads("event-flush-writer"));
+        inFlight = new Semaphore(config.getMaxInFlightBatches());
+    }
 
-    @Scheduled(fixedDelay = 10000)
+    @Scheduled(fixedDelayString = "${app.batch.flush-interval-ms:100}")
     protected void scheduledBatchSave() {
-        flushEvents();
+        // also covers the age limit, which no add will trigger on a quiet topic, and waiters
+        // registered while a flush was already draining their events
+        shouldFlushBatch();
     }
 
-    private void flushEvents() {
-        if (events.isEmpty()) {
-            return;
+    private void requestFlush() {
+        // coalesce requests so at most one flush cycle is queued behind the running one
+        if (flushRequested.compareAndSet(false, true)) {
+            coordinator.execute(this::flushEvents);
         }
+    }
 
-        // Process in smaller batches to avoid overwhelming the database
-        List<Event> eventBatch;
-        while (!(eventBatch = events.drainBatch(500)).isEmpty()) {
-            try {
-                saveBatch(eventBatch);
-                log.debug("Successfully saved batch of {} events", eventBatch.size());
-            } catch (Exception e) {
-                log.error("Failed to save batch of {} events after retries", eventBatch.size(), e);
-                Error error = new Error(e);
-                dlqEventProducer.sendEvents(eventBatch.stream().map((Event event) -> DLQEvent.builder().event(event).errorMessage(error.getMessage()).build()).toList());
-                log.info("Sending DLQ Events: {}", eventBatch.size());
-            }
+    private void flushEvents() {
+        flushRequested.set(false);
+        // anyone waiting before this flush started had their events drained by now or by this flush
+        List<CompletableFuture<Void>> waiters = new ArrayList<>();
+        CompletableFuture<Void> waiter;
+        while ((waiter = flushWaiters.poll()) != null) {
+            waiters.add(waiter);
+        }
+        CompletableFuture<Void> previous = dispatched;
+        if (previous.isCompletedExceptionally()) {
+            // these waiters may own events of the failed batch, so they still see the failure, but later ones start clean
+            dispatched = CompletableFuture.completedFuture(null);
+        }
+        try {
+            drainAndDispatch();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            CompletableFuture.allOf(previous, dispatched).whenComplete((ignored, e) -> completeWaiters(waiters, e));
         }
     }
 
-    @Retryable(retryFor = {DataAccessException.class}, maxAttempts = 3, backoff = @Backoff(delay = 1000, multiplier = 2, maxDelay = 10000))
-    private void saveBatch(List<Event> eventBatch) throws DataAccessException {
-        jdbcTemplate.batchUpdate(INSERT_SQL, eventBatch, eventBatch.size(), (ps, event) -> {
-            String metadataJson;
-            EventProto.Context ctx = event.getContext();
-            UserEvent ue = event.getUserEvent();
-            try {
-                metadataJson = mapper.writeValueAsString(ue.getMetadata());
-            } catch (JsonProcessingException e) {
-                log.warn("Error parsing metadata as JsonString: {}", e.getMessage());
-                metadataJson = "";
-            }
-
-            ps.setObject(1, event.getId());
-            ps.setTimestamp(2, event.getReceivedAt());
-            if (ctx == null) {
-                ps.setString(3, null);
-                ps.setString(4, null);
-                ps.setString(5, null);
-                ps.setString(6, null);
-                ps.setString(7, null);
-                ps.setString(8, null);
-                ps.setString(9, null);
+    private static void completeWaiters(List<CompletableFuture<Void>> waiters, Throwable failure) {
+        for (CompletableFuture<Void> waiter : waiters) {
+            if (failure == null) {
+                waiter.complete(null);
             } else {
-                ps.setString(3, ctx.getIp());
-                ps.setString(4, ctx.getUserAgent());
-                ps.setString(5, ctx.getOs());
-                ps.setString(6, ctx.getBrowser());
-                ps.setString(7, ctx.getDevice());
-                ps.setString(8, ctx.getLocale());
-                ps.setString(9, ctx.getTimezone());
+                // a batch was neither written nor dead-lettered, its offsets must not be committed
+                waiter.completeExceptionally(failure);
             }
-            ps.setString(10, event.getSchemaVersion().name());
-            ps.setObject(11, ue.getSessionId());
-            ps.setObject(12, ue.getUserId());
-            ps.setObject(13, ue.getAnonymousId());
-            ps.setObject(14, ue.getAppId());
-            ps.setTimestamp(15, ue.getTimestamp());
-            ps.setString(16, ue.getEventType());
-            ps.setString(17, metadataJson);
-            ps.setString(18, ue.getSource());
-        });
+        }
     }
 
+    private void drainAndDispatch() throws InterruptedException {
+        List<Event> eventBatch;
+        while (!(eventBatch = events.drainBatch(flushPolicy.batchSize())).isEmpty()) {
+            // blocks the coordinator, never a listener, once too many inserts are outstanding
+            inFlight.acquire();
+            List<Event> batch = eventBatch;
+            CompletableFuture<Void> write = CompletableFuture.runAsync(() -> saveBatch(batch), writers)
+                    .whenComplete((ignored, e) -> inFlight.release());
+            dispatched = CompletableFuture.allOf(dispatched, write);
+        }
+    }
+
+    private void saveBatch(List<Event> eventBatch) {
+        long start = System.currentTimeMillis();
+        try {
+            eventBatchWriter.write(eventBatch);
+            flushPolicy.recordInsert(eventBatch.size(), System.currentTimeMillis() - start);
+            metrics.recordEventsProcessed(eventBatch.size());
+            metrics.recordBatchProcessed();
+            log.debug("Successfully saved batch of {} events", eventBatch.size());
+        } catch (Exception e) {
+            metrics.recordBatchFailed();
+            log.error("Failed to save batch of {} events after retries", eventBatch.size(), e);
+            Error error = new Error(e);
+            log.info("Sending DLQ Events: {}", eventBatch.size());
+            // wait for the broker, a DLQ send that fails must fail the write rather than let the batch be acknowledged
+            dlqEventProducer.sendEvents(eventBatch.stream().map((Event event) -> DLQEvent.builder().event(event).errorMessage(error.getMessage()).build()).toList()).join();
+        } finally {
+            metrics.recordProcessingTime(System.currentTimeMillis() - start);
+        }
+    }
 
     public void save(Event event) {
         events.add(event);
@@ -121,10 +151,39 @@ public class EventRepositoryImpl implements EventRepository {
         shouldFlushBatch();
     }
 
+    @Override
+    public CompletableFuture<Void> awaitFlush() {
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        flushWaiters.add(waiter);
+        // the flush covering the caller's events may already have run, leaving nothing for the policy to trigger on
+        shouldFlushBatch();
+        return waiter;
+    }
+
     private void shouldFlushBatch() {
-        if (events.shouldFlush()) {
-            flushEvents();
+        // an empty buffer never crosses a limit, so pending waiters get a flush that only waits for in-flight batches
+        if (flushPolicy.shouldFlush(events) || (events.isEmpty() && !flushWaiters.isEmpty())) {
+            requestFlush();
+        }
+    }
+
+    @PreDestroy
+    void stopFlushPipeline() throws InterruptedException {
+        coordinator.execute(this::flushEvents);
+        coordinator.shutdown();
+        coordinator.awaitTermination(30, TimeUnit.SECONDS);
+        writers.shutdown();
+        if (!writers.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Flush writers did not finish within 30s, {} events left in buffer", events.size());
         }
     }
 
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 }
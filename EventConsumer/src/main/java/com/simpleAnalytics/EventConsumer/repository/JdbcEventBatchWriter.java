@@ -0,0 +1,86 @@
+package com.simpleAnalytics.EventConsumer.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.simpleAnalytics.EventConsumer.entity.Event;
+import com.simpleAnalytics.EventConsumer.entity.UserEvent;
+import com.simpleAnalytics.EventConsumer.service.MetadataPromoter;
+import com.simpleAnalytics.protobuf.EventProto;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.retry.annotation.Backoff;
+import org.springframework.retry.annotation.Retryable;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "app.batch", name = "writer", havingValue = "JDBC", matchIfMissing = true)
+public class JdbcEventBatchWriter implements EventBatchWriter {
+    private final JdbcTemplate jdbcTemplate;
+    private final MetadataPromoter metadataPromoter;
+    private final ObjectMapper mapper = new JsonMapper();
+    private static final String INSERT_SQL = """
+            INSERT INTO event (id, receivedAt,context_ip,context_ua,context_os,
+                context_browser,context_device,context_locale,context_timezone, 
+                schemaVersion,sessionId,userId,anonymousId,appId,timestamp,
+                eventType,metadata,source,metadata_props) 
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?,? ,? ,? , ?, ?, ?,? ,?, ?)
+            """;
+
+    @Override
+    @Retryable(retryFor = {DataAccessException.class},
+            maxAttemptsExpression = "${app.batch.max-retry-attempts:3}",
+            backoff = @Backoff(delayExpression = "${app.batch.initial-retry-delay:1000}",
+                    multiplierExpression = "${app.batch.retry-multiplier:2.0}",
+                    maxDelayExpression = "${app.batch.max-retry-delay:10000}"))
+    public void write(List<Event> eventBatch) throws DataAccessException {
+        jdbcTemplate.batchUpdate(INSERT_SQL, eventBatch, eventBatch.size(), (ps, event) -> {
+            String metadataJson;
+            EventProto.Context ctx = event.getContext();
+            UserEvent ue = event.getUserEvent();
+            try {
+                metadataJson = mapper.writeValueAsString(ue.getMetadata());
+            } catch (JsonProcessingException e) {
+                log.warn("Error parsing metadata as JsonString: {}", e.getMessage());
+                metadataJson = "";
+            }
+
+            ps.setObject(1, event.getId());
+            ps.setTimestamp(2, event.getReceivedAt());
+            if (ctx == null) {
+                ps.setString(3, null);
+                ps.setString(4, null);
+                ps.setString(5, null);
+                ps.setString(6, null);
+                ps.setString(7, null);
+                ps.setString(8, null);
+                ps.setString(9, null);
+            } else {
+                ps.setString(3, ctx.getIp());
+                ps.setString(4, ctx.getUserAgent());
+                ps.setString(5, ctx.getOs());
+                ps.setString(6, ctx.getBrowser());
+                ps.setString(7, ctx.getDevice());
+                ps.setString(8, ctx.getLocale());
+                ps.setString(9, ctx.getTimezone());
+            }
+            ps.setString(10, event.getSchemaVersion().name());
+            ps.setObject(11, ue.getSessionId());
+            ps.setObject(12, ue.getUserId());
+            ps.setObject(13, ue.getAnonymousId());
+            ps.setObject(14, ue.getAppId());
+            ps.setTimestamp(15, ue.getTimestamp());
+            ps.setString(16, ue.getEventType());
+            ps.setString(17, metadataJson);
+            ps.setString(18, ue.getSource());
+            ps.setObject(19, metadataPromoter.promote(ue));
+        });
+    }
+}
@@ -0,0 +1,255 @@
+package com.simpleAnalytics.EventConsumer.repository;
+
+import com.clickhouse.client.ClickHouseClient;
+import com.clickhouse.client.ClickHouseCredentials;
+import com.clickhouse.client.ClickHouseException;
+import com.clickhouse.client.ClickHouseNode;
+import com.clickhouse.client.ClickHouseProtocol;
+import com.clickhouse.client.ClickHouseResponse;
+import com.clickhouse.data.ClickHouseFormat;
+import com.clickhouse.data.ClickHouseOutputStream;
+import com.clickhouse.data.format.BinaryStreamUtils;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.simpleAnalytics.EventConsumer.entity.Event;
+import com.simpleAnalytics.EventConsumer.entity.UserEvent;
+import com.simpleAnalytics.EventConsumer.service.MetadataPromoter;
+import com.simpleAnalytics.protobuf.EventProto;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.retry.annotation.Backoff;
+import org.springframework.retry.annotation.Retryable;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streams batches to ClickHouse over HTTP in RowBinary format, skipping JDBC parameter binding
+ * and server-side parsing of the VALUES clause. Column encodings are resolved once from the
+ * live table definition so the binary layout always matches the schema.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "app.batch", name = "writer", havingValue = "ROW_BINARY")
+public class RowBinaryEventBatchWriter implements EventBatchWriter {
+
+    private static final UUID NIL_UUID = new UUID(0, 0);
+    private static final Pattern ENUM_VALUE = Pattern.compile("'((?:[^'\\\\]|\\\\.)*)'\\s*=\\s*(-?\\d+)");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper mapper = new JsonMapper();
+    private final ClickHouseClient client;
+    private final ClickHouseNode server;
+    private final Map<String, Function<Event, Object>> columns = new LinkedHashMap<>();
+    private final String insertQuery;
+    private volatile List<ColumnEncoder> encoders;
+
+    @FunctionalInterface
+    interface ColumnEncoder {
+        void write(ClickHouseOutputStream out, Object value) throws IOException;
+    }
+
+    public RowBinaryEventBatchWriter(JdbcTemplate jdbcTemplate, DataSourceProperties dataSourceProperties,
+                                     MetadataPromoter metadataPromoter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.server = ClickHouseNode.of(dataSourceProperties.getUrl().replaceFirst("^jdbc:(clickhouse|ch):", ""));
+        this.client = ClickHouseClient.newInstance(
+                ClickHouseCredentials.fromUserAndPassword(dataSourceProperties.getUsername(), dataSourceProperties.getPassword()),
+                ClickHouseProtocol.HTTP);
+
+        columns.put("id", Event::getId);
+        columns.put("receivedAt", event -> event.getReceivedAt());
+        columns.put("context_ip", event -> context(event, EventProto.Context::getIp));
+        columns.put("context_ua", event -> context(event, EventProto.Context::getUserAgent));
+        columns.put("context_os", event -> context(event, EventProto.Context::getOs));
+        columns.put("context_browser", event -> context(event, EventProto.Context::getBrowser));
+        columns.put("context_device", event -> context(event, EventProto.Context::getDevice));
+        columns.put("context_locale", event -> context(event, EventProto.Context::getLocale));
+        columns.put("context_timezone", event -> context(event, EventProto.Context::getTimezone));
+        columns.put("schemaVersion", event -> event.getSchemaVersion().name());
+        columns.put("sessionId", event -> event.getUserEvent().getSessionId());
+        columns.put("userId", event -> event.getUserEvent().getUserId());
+        columns.put("anonymousId", event -> event.getUserEvent().getAnonymousId());
+        columns.put("appId", event -> event.getUserEvent().getAppId());
+        columns.put("timestamp", event -> event.getUserEvent().getTimestamp());
+        columns.put("eventType", event -> event.getUserEvent().getEventType());
+        columns.put("metadata", event -> toJson(event.getUserEvent()));
+        columns.put("source", event -> event.getUserEvent().getSource());
+        columns.put("metadata_props", event -> metadataPromoter.promote(event.getUserEvent()));
+
+        this.insertQuery = "INSERT INTO event (" + String.join(",", columns.keySet()) + ")";
+    }
+
+    @Override
+    @Retryable(retryFor = {DataAccessException.class},
+            maxAttemptsExpression = "${app.batch.max-retry-attempts:3}",
+            backoff = @Backoff(delayExpression = "${app.batch.initial-retry-delay:1000}",
+                    multiplierExpression = "${app.batch.retry-multiplier:2.0}",
+                    maxDelayExpression = "${app.batch.max-retry-delay:10000}"))
+    public void write(List<Event> eventBatch) throws DataAccessException {
+        List<ColumnEncoder> columnEncoders = resolveEncoders();
+        List<Function<Event, Object>> extractors = List.copyOf(columns.values());
+
+        try (ClickHouseResponse response = client.read(server)
+                .write()
+                .query(insertQuery)
+                .format(ClickHouseFormat.RowBinary)
+                .data(out -> {
+                    for (Event event : eventBatch) {
+                        for (int i = 0; i < extractors.size(); i++) {
+                            columnEncoders.get(i).write(out, extractors.get(i).apply(event));
+                        }
+                    }
+                })
+                .executeAndWait()) {
+            log.debug("Inserted {} rows in RowBinary", response.getSummary().getWrittenRows());
+        } catch (ClickHouseException e) {
+            throw new DataAccessResourceFailureException("RowBinary insert of " + eventBatch.size() + " events failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        client.close();
+    }
+
+    private List<ColumnEncoder> resolveEncoders() {
+        List<ColumnEncoder> resolved = encoders;
+        if (resolved == null) {
+            Map<String, String> types = new HashMap<>();
+            jdbcTemplate.query("DESCRIBE TABLE event", rs -> {
+                types.put(rs.getString("name"), rs.getString("type"));
+            });
+            resolved = columns.keySet().stream()
+                    .map(column -> {
+                        String type = types.get(column);
+                        if (type == null) {
+                            throw new IllegalStateException("Column " + column + " not found in table event");
+                        }
+                        return encoderFor(type);
+                    })
+                    .toList();
+            encoders = resolved;
+        }
+        return resolved;
+    }
+
+    static ColumnEncoder encoderFor(String type) {
+        if (type.startsWith("Nullable(")) {
+            ColumnEncoder inner = encoderFor(unwrap(type));
+            return (out, value) -> {
+                if (value == null) {
+                    BinaryStreamUtils.writeNull(out);
+                } else {
+                    BinaryStreamUtils.writeNonNull(out);
+                    inner.write(out, value);
+                }
+            };
+        }
+        if (type.startsWith("LowCardinality(")) {
+            // RowBinary carries LowCardinality values in their plain form
+            return encoderFor(unwrap(type));
+        }
+        if (type.startsWith("Map(")) {
+            String[] keyAndValue = splitTopLevel(unwrap(type));
+            ColumnEncoder keyEncoder = encoderFor(keyAndValue[0]);
+            ColumnEncoder valueEncoder = encoderFor(keyAndValue[1]);
+            return (out, value) -> {
+                Map<?, ?> map = value == null ? Map.of() : (Map<?, ?>) value;
+                BinaryStreamUtils.writeVarInt(out, map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    keyEncoder.write(out, entry.getKey());
+                    valueEncoder.write(out, entry.getValue());
+                }
+            };
+        }
+        if (type.equals("String")) {
+            return (out, value) -> BinaryStreamUtils.writeString(out, value == null ? "" : value.toString());
+        }
+        if (type.equals("UUID")) {
+            return (out, value) -> BinaryStreamUtils.writeUuid(out, value == null ? NIL_UUID : (UUID) value);
+        }
+        if (type.startsWith("DateTime64(")) {
+            int precision = Integer.parseInt(unwrap(type).split(",")[0].trim());
+            // ticks from whole seconds and nanos separately, epoch millis times 10^p overflows from precision 7
+            long nanosPerTick = (long) Math.pow(10, 9 - precision);
+            long ticksPerSecond = 1_000_000_000L / nanosPerTick;
+            return (out, value) -> {
+                Instant instant = value == null ? Instant.EPOCH : ((Timestamp) value).toInstant();
+                BinaryStreamUtils.writeInt64(out,
+                        Math.addExact(Math.multiplyExact(instant.getEpochSecond(), ticksPerSecond), instant.getNano() / nanosPerTick));
+            };
+        }
+        if (type.equals("DateTime") || type.startsWith("DateTime(")) {
+            return (out, value) -> BinaryStreamUtils.writeUnsignedInt32(out,
+                    value == null ? 0 : Math.floorDiv(((Timestamp) value).getTime(), 1000));
+        }
+        if (type.startsWith("Enum8(")) {
+            Map<String, Byte> values = new HashMap<>();
+            Matcher matcher = ENUM_VALUE.matcher(type);
+            while (matcher.find()) {
+                values.put(matcher.group(1), Byte.parseByte(matcher.group(2)));
+            }
+            return (out, value) -> {
+                Byte code = values.get(String.valueOf(value));
+                if (code == null) {
+                    throw new IOException("Value " + value + " is not part of " + type);
+                }
+                BinaryStreamUtils.writeInt8(out, code);
+            };
+        }
+        throw new IllegalStateException("Column type " + type + " is not supported by the RowBinary writer");
+    }
+
+    private static String unwrap(String type) {
+        return type.substring(type.indexOf('(') + 1, type.lastIndexOf(')'));
+    }
+
+    /**
+     * Split "K, V" at the comma that is not nested inside parentheses
+     */
+    private static String[] splitTopLevel(String types) {
+        int depth = 0;
+        for (int i = 0; i < types.length(); i++) {
+            char c = types.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                return new String[]{types.substring(0, i).trim(), types.substring(i + 1).trim()};
+            }
+        }
+        throw new IllegalStateException("Expected two types in " + types);
+    }
+
+    private static String context(Event event, Function<EventProto.Context, String> field) {
+        EventProto.Context ctx = event.getContext();
+        return ctx == null ? null : field.apply(ctx);
+    }
+
+    private String toJson(UserEvent ue) {
+        try {
+            return mapper.writeValueAsString(ue.getMetadata());
+        } catch (JsonProcessingException e) {
+            log.warn("Error parsing metadata as JsonString: {}", e.getMessage());
+            return "";
+        }
+    }
+}
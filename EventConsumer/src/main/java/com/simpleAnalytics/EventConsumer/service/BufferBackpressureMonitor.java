@@ -0,0 +1,46 @@
+package com.simpleAnalytics.EventConsumer.service;
+
+import com.simpleAnalytics.EventConsumer.MQ.impl.EventConsumerImpl;
+import com.simpleAnalytics.EventConsumer.config.BatchProcessingConfig;
+import com.simpleAnalytics.EventConsumer.entity.EventBuffer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Samples buffer occupancy, publishes it to the metrics and pauses the event listener
+ * while the buffer is close to full, so Kafka holds the backlog instead of the heap.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BufferBackpressureMonitor {
+
+    private final EventBuffer eventBuffer;
+    private final EventProcessingMetrics metrics;
+    private final BatchProcessingConfig config;
+    private final KafkaListenerEndpointRegistry registry;
+
+    @Scheduled(fixedDelay = 100)
+    public void checkOccupancy() {
+        int size = eventBuffer.size();
+        metrics.updateBufferSize(size);
+
+        MessageListenerContainer container = registry.getListenerContainer(EventConsumerImpl.EVENT_LISTENER_ID);
+        if (container == null) {
+            return;
+        }
+
+        double occupancy = (double) size / eventBuffer.capacity();
+        if (occupancy >= config.getPauseThreshold() && !container.isPauseRequested()) {
+            log.warn("Event buffer at {} of {} slots, pausing listener", size, eventBuffer.capacity());
+            container.pause();
+        } else if (occupancy <= config.getResumeThreshold() && container.isPauseRequested()) {
+            log.info("Event buffer drained to {} events, resuming listener", size);
+            container.resume();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.simpleAnalytics.EventConsumer.service;
+
+import com.simpleAnalytics.EventConsumer.config.BatchProcessingConfig;
+import com.simpleAnalytics.EventConsumer.entity.EventBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides when the buffer is flushed and how large each insert is.
+ * A flush is due as soon as any of row count, buffered bytes or the age of the oldest event
+ * crosses its limit. The batch size follows the observed per-row insert cost so that an
+ * insert takes roughly the configured target latency.
+ */
+@Slf4j
+@Component
+public class FlushPolicy {
+
+    private static final double SMOOTHING = 0.2;
+
+    private final BatchProcessingConfig config;
+    private volatile double millisPerRow = -1;
+    private volatile int batchSize;
+
+    public FlushPolicy(BatchProcessingConfig config) {
+        this.config = config;
+        this.batchSize = config.getMaxBatchSize();
+    }
+
+    public boolean shouldFlush(EventBuffer buffer) {
+        if (buffer.isEmpty()) {
+            return false;
+        }
+        return buffer.size() >= config.getMaxBufferSize()
+                || buffer.sizeInBytes() >= config.getMaxBufferBytes()
+                || buffer.oldestAgeMillis() >= config.getMaxBufferAgeMs();
+    }
+
+    public int batchSize() {
+        return config.isAdaptiveBatchSize() ? batchSize : config.getMaxBatchSize();
+    }
+
+    public synchronized void recordInsert(int rows, long latencyMs) {
+        if (rows == 0 || !config.isAdaptiveBatchSize()) {
+            return;
+        }
+        double observed = (double) Math.max(latencyMs, 1) / rows;
+        millisPerRow = millisPerRow < 0 ? observed : SMOOTHING * observed + (1 - SMOOTHING) * millisPerRow;
+
+        int target = (int) (config.getTargetInsertLatencyMs() / millisPerRow);
+        int next = Math.max(config.getMinBatchSize(), Math.min(config.getMaxBatchSize(), target));
+        if (next != batchSize) {
+            log.debug("Adjusting batch size from {} to {} ({} ms/row)", batchSize, next, millisPerRow);
+            batchSize = next;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.simpleAnalytics.EventConsumer.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.simpleAnalytics.EventConsumer.config.MetadataPromotionConfig;
+import com.simpleAnalytics.EventConsumer.entity.UserEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Picks the promoted metadata keys of an event for the metadata_props Map column, so Analytics
+ * can filter and group on them without parsing the JSON metadata of every row.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MetadataPromoter {
+
+    private final MetadataPromotionConfig config;
+    private final ObjectMapper mapper = new JsonMapper();
+
+    public Map<String, String> promote(UserEvent userEvent) {
+        Map<String, Object> metadata = userEvent.getMetadata();
+        if (metadata == null || metadata.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Set<String> appKeys = config.getPromotedKeys().getOrDefault(userEvent.getAppId(), Collections.emptySet());
+        if (config.getDefaultPromotedKeys().isEmpty() && appKeys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> promoted = new HashMap<>();
+        metadata.forEach((key, value) -> {
+            if (value != null && (config.getDefaultPromotedKeys().contains(key) || appKeys.contains(key))) {
+                promoted.put(key, toText(value));
+            }
+        });
+        return promoted;
+    }
+
+    private String toText(Object value) {
+        // protobuf Struct carries every number as a double; write whole numbers without ".0"
+        if (value instanceof Double number && number == Math.rint(number) && !Double.isInfinite(number)
+                && Math.abs(number) < 1e15) {
+            return Long.toString(number.longValue());
+        }
+        if (value instanceof Map<?, ?> || value instanceof Iterable<?>) {
+            try {
+                return mapper.writeValueAsString(value);
+            } catch (JsonProcessingException e) {
+                log.warn("Error writing promoted metadata value as JsonString: {}", e.getMessage());
+                return "";
+            }
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,5 @@
+-- Promoted metadata keys (app.metadata.*) are written to metadata_props next to the JSON metadata
+-- string, so filters and group-bys on them read one Map column instead of every metadata blob.
+-- Only events inserted after a key is promoted carry it.
+
+ALTER TABLE event ADD COLUMN IF NOT EXISTS metadata_props Map(LowCardinality(String), String) AFTER metadata;
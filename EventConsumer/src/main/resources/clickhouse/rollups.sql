@@ -0,0 +1,96 @@
+-- Hourly and daily rollups of the event table, kept up to date by ClickHouse on every insert
+-- from the consumer. Distinct counts are stored as uniq states, so only approximate (UNIQ)
+-- queries can use them.
+--
+-- Each rollup is a plain table fed by a materialized view (TO), not a POPULATE view: POPULATE
+-- drops every row inserted while it runs. The backfill below copies the existing events once,
+-- while the rollup is still empty, before the view starts forwarding new inserts. Spring runs
+-- this script before the Kafka listener starts, so this instance inserts nothing in between.
+-- Any other consumer instance must be stopped the first time the script runs, otherwise its
+-- inserts between the backfill and the CREATE MATERIALIZED VIEW are missing from the rollups.
+
+CREATE TABLE IF NOT EXISTS event_rollup_hourly
+ENGINE = AggregatingMergeTree
+PARTITION BY toYYYYMM(bucket)
+ORDER BY (appId, bucket, eventType, source)
+SETTINGS allow_nullable_key = 1
+AS SELECT
+    appId,
+    toStartOfHour(timestamp) AS bucket,
+    eventType,
+    source,
+    countState() AS events,
+    uniqState(COALESCE(userId, anonymousId)) AS users,
+    uniqState(sessionId) AS sessions
+FROM event
+WHERE 0
+GROUP BY appId, bucket, eventType, source;
+
+INSERT INTO event_rollup_hourly
+SELECT
+    appId,
+    toStartOfHour(timestamp) AS bucket,
+    eventType,
+    source,
+    countState() AS events,
+    uniqState(COALESCE(userId, anonymousId)) AS users,
+    uniqState(sessionId) AS sessions
+FROM event
+WHERE (SELECT count() FROM event_rollup_hourly) = 0
+GROUP BY appId, bucket, eventType, source;
+
+CREATE MATERIALIZED VIEW IF NOT EXISTS event_rollup_hourly_mv
+TO event_rollup_hourly
+AS SELECT
+    appId,
+    toStartOfHour(timestamp) AS bucket,
+    eventType,
+    source,
+    countState() AS events,
+    uniqState(COALESCE(userId, anonymousId)) AS users,
+    uniqState(sessionId) AS sessions
+FROM event
+GROUP BY appId, bucket, eventType, source;
+
+CREATE TABLE IF NOT EXISTS event_rollup_daily
+ENGINE = AggregatingMergeTree
+PARTITION BY toYYYYMM(bucket)
+ORDER BY (appId, bucket, eventType, source)
+SETTINGS allow_nullable_key = 1
+AS SELECT
+    appId,
+    toDate(timestamp) AS bucket,
+    eventType,
+    source,
+    countState() AS events,
+    uniqState(COALESCE(userId, anonymousId)) AS users,
+    uniqState(sessionId) AS sessions
+FROM event
+WHERE 0
+GROUP BY appId, bucket, eventType, source;
+
+INSERT INTO event_rollup_daily
+SELECT
+    appId,
+    toDate(timestamp) AS bucket,
+    eventType,
+    source,
+    countState() AS events,
+    uniqState(COALESCE(userId, anonymousId)) AS users,
+    uniqState(sessionId) AS sessions
+FROM event
+WHERE (SELECT count() FROM event_rollup_daily) = 0
+GROUP BY appId, bucket, eventType, source;
+
+CREATE MATERIALIZED VIEW IF NOT EXISTS event_rollup_daily_mv
+TO event_rollup_daily
+AS SELECT
+    appId,
+    toDate(timestamp) AS bucket,
+    eventType,
+    source,
+    countState() AS events,
+    uniqState(COALESCE(userId, anonymousId)) AS users,
+    uniqState(sessionId) AS sessions
+FROM event
+GROUP BY appId, bucket, eventType, source;
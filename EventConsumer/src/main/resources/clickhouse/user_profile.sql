@@ -0,0 +1,48 @@
+-- One row per user (userId, else anonymousId) and app with first/last seen time and event count,
+-- fed by ClickHouse from every insert batch into event, so Analytics can look users up instead of
+-- scanning their history. Rows for a user are only folded together when parts merge, so read it
+-- with minMerge/maxMerge/countMerge ... GROUP BY actor.
+--
+-- Like the rollups, user_profile is a plain table fed by a materialized view (TO) and backfilled
+-- once while it is still empty, because POPULATE drops every row inserted while it runs. Any other
+-- consumer instance must be stopped the first time the script runs, otherwise its inserts between
+-- the backfill and the CREATE MATERIALIZED VIEW are missing from the profiles.
+
+-- user_profile replaces the narrower first-seen view, which would otherwise keep being written
+DROP VIEW IF EXISTS user_first_seen;
+
+CREATE TABLE IF NOT EXISTS user_profile
+ENGINE = AggregatingMergeTree
+ORDER BY (appId, actor)
+SETTINGS allow_nullable_key = 1
+AS SELECT
+    appId,
+    COALESCE(userId, anonymousId) AS actor,
+    minState(timestamp) AS first_seen,
+    maxState(timestamp) AS last_seen,
+    countState() AS event_count
+FROM event
+WHERE 0
+GROUP BY appId, actor;
+
+INSERT INTO user_profile
+SELECT
+    appId,
+    COALESCE(userId, anonymousId) AS actor,
+    minState(timestamp) AS first_seen,
+    maxState(timestamp) AS last_seen,
+    countState() AS event_count
+FROM event
+WHERE (SELECT count() FROM user_profile) = 0
+GROUP BY appId, actor;
+
+CREATE MATERIALIZED VIEW IF NOT EXISTS user_profile_mv
+TO user_profile
+AS SELECT
+    appId,
+    COALESCE(userId, anonymousId) AS actor,
+    minState(timestamp) AS first_seen,
+    maxState(timestamp) AS last_seen,
+    countState() AS event_count
+FROM event
+GROUP BY appId, actor;
@@ -0,0 +1,81 @@
+package com.simpleAnalytics.EventConsumer.MQ.impl;
+
+import com.simpleAnalytics.EventConsumer.repository.EventRepository;
+import com.simpleAnalytics.protobuf.EventProto;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EventConsumerImplTest {
+
+    @Mock
+    private EventRepository eventRepository;
+
+    @Mock
+    private Acknowledgment acknowledgment;
+
+    @InjectMocks
+    private EventConsumerImpl eventConsumer;
+
+    private static ConsumerRecord<String, EventProto.Event> record(long offset, EventProto.Event event) {
+        return new ConsumerRecord<>("event", 0, offset, null, event);
+    }
+
+    private static EventProto.Event event() {
+        return EventProto.Event.newBuilder()
+                .setId(UUID.randomUUID().toString())
+                .setUserEvent(EventProto.UserEvent.newBuilder()
+                        .setAppId(UUID.randomUUID().toString())
+                        .setUserId(UUID.randomUUID().toString())
+                        .setSessionId(UUID.randomUUID().toString())
+                        .setAnonymousId(UUID.randomUUID().toString())
+                        .setEventType("click"))
+                .build();
+    }
+
+    @Test
+    void batchIsAcknowledgedOnceFlushed() {
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        when(eventRepository.awaitFlush()).thenReturn(flushed);
+
+        eventConsumer.consume(List.of(record(0, event())), acknowledgment);
+        verify(acknowledgment, never()).acknowledge();
+
+        flushed.complete(null);
+        verify(acknowledgment).acknowledge();
+    }
+
+    @Test
+    void unmappableRecordIsSkippedAndTheRestSaved() {
+        when(eventRepository.awaitFlush()).thenReturn(CompletableFuture.completedFuture(null));
+
+        eventConsumer.consume(List.of(record(0, EventProto.Event.getDefaultInstance()), record(1, event())), acknowledgment);
+
+        verify(eventRepository).saveAll(argThat(events -> events.size() == 1));
+        verify(acknowledgment).acknowledge();
+    }
+
+    @Test
+    void failedFlushIsNotAcknowledged() {
+        when(eventRepository.awaitFlush())
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+
+        eventConsumer.consume(List.of(record(0, event())), acknowledgment);
+
+        verify(acknowledgment, never()).acknowledge();
+    }
+}
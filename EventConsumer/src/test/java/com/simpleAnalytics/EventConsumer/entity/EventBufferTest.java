@@ -0,0 +1,181 @@
+package com.simpleAnalytics.EventConsumer.entity;
+
+import com.simpleAnalytics.EventConsumer.config.BatchProcessingConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventBufferTest {
+
+    private static EventBuffer buffer(int capacity) {
+        BatchProcessingConfig config = new BatchProcessingConfig();
+        config.setBufferCapacity(capacity);
+        return new EventBuffer(config);
+    }
+
+    private static Event event() {
+        return Event.builder()
+                .Id(UUID.randomUUID())
+                .userEvent(UserEvent.builder()
+                        .eventType("click")
+                        .source("web")
+                        .metadata(Map.of("plan", "pro"))
+                        .build())
+                .build();
+    }
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(8, buffer(5).capacity());
+        assertEquals(8, buffer(8).capacity());
+        assertEquals(2, buffer(1).capacity());
+    }
+
+    @Test
+    void drainBatchReturnsOldestEventsFirstAndRespectsMaxSize() {
+        EventBuffer buffer = buffer(8);
+        List<Event> added = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Event event = event();
+            added.add(event);
+            buffer.add(event);
+        }
+
+        assertEquals(added.subList(0, 3), buffer.drainBatch(3));
+        assertEquals(2, buffer.size());
+        assertEquals(added.subList(3, 5), buffer.drainBatch(10));
+        assertTrue(buffer.isEmpty());
+        assertTrue(buffer.drainBatch(10).isEmpty());
+    }
+
+    @Test
+    void offerFailsWhenFullAndSlotsAreReusedAfterDrain() {
+        EventBuffer buffer = buffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(event()));
+        }
+        assertFalse(buffer.offer(event()));
+
+        assertEquals(2, buffer.drainBatch(2).size());
+        assertTrue(buffer.offer(event()));
+        assertTrue(buffer.offer(event()));
+        assertFalse(buffer.offer(event()));
+        assertEquals(4, buffer.drain().size());
+    }
+
+    @Test
+    void addWaitsForDrainWhenFull() throws Exception {
+        EventBuffer buffer = buffer(2);
+        buffer.add(event());
+        buffer.add(event());
+
+        Event blocked = event();
+        CountDownLatch added = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            buffer.add(blocked);
+            added.countDown();
+        });
+        producer.start();
+
+        assertFalse(added.await(50, TimeUnit.MILLISECONDS));
+        assertEquals(1, buffer.drainBatch(1).size());
+        assertTrue(added.await(1, TimeUnit.SECONDS));
+        producer.join();
+
+        List<Event> remaining = buffer.drain();
+        assertEquals(2, remaining.size());
+        assertEquals(blocked, remaining.get(1));
+    }
+
+    @Test
+    void sizeInBytesTracksBufferedEvents() {
+        EventBuffer buffer = buffer(8);
+        assertEquals(0, buffer.sizeInBytes());
+
+        buffer.add(event());
+        long one = buffer.sizeInBytes();
+        assertTrue(one > 0);
+        buffer.add(event());
+        assertEquals(2 * one, buffer.sizeInBytes());
+
+        buffer.drainBatch(1);
+        assertEquals(one, buffer.sizeInBytes());
+        buffer.clear();
+        assertEquals(0, buffer.sizeInBytes());
+    }
+
+    @Test
+    void oldestAgeMillisFollowsTheHeadOfTheBuffer() throws Exception {
+        EventBuffer buffer = buffer(8);
+        assertEquals(0, buffer.oldestAgeMillis());
+
+        buffer.add(event());
+        Thread.sleep(30);
+        buffer.add(event());
+        assertTrue(buffer.oldestAgeMillis() >= 30);
+
+        buffer.drainBatch(1);
+        assertTrue(buffer.oldestAgeMillis() < 30);
+        buffer.drain();
+        assertEquals(0, buffer.oldestAgeMillis());
+    }
+
+    @Test
+    void concurrentProducersAndDrainerLoseNothing() throws Exception {
+        int producers = 4;
+        int perProducer = 5_000;
+        // much smaller than the total so producers regularly find the buffer full
+        EventBuffer buffer = buffer(64);
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < perProducer; i++) {
+                    buffer.add(event());
+                }
+                return null;
+            }));
+        }
+
+        AtomicBoolean producing = new AtomicBoolean(true);
+        Set<UUID> drained = new HashSet<>();
+        Thread drainer = new Thread(() -> {
+            while (producing.get() || !buffer.isEmpty()) {
+                for (Event event : buffer.drainBatch(16)) {
+                    drained.add(event.getId());
+                }
+            }
+        });
+        drainer.start();
+        start.countDown();
+
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        producing.set(false);
+        drainer.join(TimeUnit.SECONDS.toMillis(30));
+        executor.shutdown();
+
+        assertEquals(producers * perProducer, drained.size());
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.sizeInBytes());
+    }
+}
@@ -0,0 +1,237 @@
+package com.simpleAnalytics.EventConsumer.repository;
+
+import com.simpleAnalytics.EventConsumer.MQ.DLQEventProducer;
+import com.simpleAnalytics.EventConsumer.MQ.impl.EventConsumerImpl;
+import com.simpleAnalytics.EventConsumer.config.BatchProcessingConfig;
+import com.simpleAnalytics.EventConsumer.entity.Event;
+import com.simpleAnalytics.EventConsumer.entity.EventBuffer;
+import com.simpleAnalytics.EventConsumer.service.EventProcessingMetrics;
+import com.simpleAnalytics.EventConsumer.service.FlushPolicy;
+import com.simpleAnalytics.protobuf.EventProto;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EventRepositoryImplTest {
+
+    @Mock
+    private EventBatchWriter eventBatchWriter;
+
+    @Mock
+    private DLQEventProducer dlqEventProducer;
+
+    @Mock
+    private EventProcessingMetrics metrics;
+
+    private BatchProcessingConfig config;
+    private EventBuffer buffer;
+    private EventRepositoryImpl eventRepository;
+
+    @BeforeEach
+    void setUp() {
+        config = new BatchProcessingConfig();
+        config.setBufferCapacity(64);
+        config.setMaxBufferSize(2);
+        config.setMaxBatchSize(2);
+        config.setMaxBufferAgeMs(60_000);
+        config.setAdaptiveBatchSize(false);
+        buffer = new EventBuffer(config);
+        eventRepository = new EventRepositoryImpl(eventBatchWriter, dlqEventProducer, buffer, config, metrics,
+                new FlushPolicy(config));
+        eventRepository.startFlushPipeline();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        eventRepository.stopFlushPipeline();
+    }
+
+    private static Event event() {
+        return Event.builder().Id(UUID.randomUUID()).build();
+    }
+
+    @Test
+    void awaitFlushCompletesWhenTheBatchWasFlushedBeforeTheCall() throws Exception {
+        // reaches maxBufferSize, so saveAll itself triggers the flush
+        eventRepository.saveAll(List.of(event(), event()));
+        verify(eventBatchWriter, timeout(1_000)).write(anyList());
+        assertTrue(buffer.isEmpty());
+
+        eventRepository.awaitFlush().get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void awaitFlushCompletesWhenNothingWasSaved() throws Exception {
+        // every record of the poll failed to map
+        eventRepository.saveAll(List.of());
+
+        eventRepository.awaitFlush().get(1, TimeUnit.SECONDS);
+        verify(eventBatchWriter, never()).write(anyList());
+    }
+
+    @Test
+    void awaitFlushWaitsForTheInFlightInsert() throws Exception {
+        CountDownLatch insertStarted = new CountDownLatch(1);
+        CountDownLatch releaseInsert = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            insertStarted.countDown();
+            releaseInsert.await();
+            return null;
+        }).when(eventBatchWriter).write(anyList());
+
+        eventRepository.saveAll(List.of(event(), event()));
+        assertTrue(insertStarted.await(1, TimeUnit.SECONDS));
+
+        CompletableFuture<Void> flushed = eventRepository.awaitFlush();
+        Thread.sleep(50);
+        assertFalse(flushed.isDone());
+
+        releaseInsert.countDown();
+        flushed.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void failedInsertThatWasDeadLetteredStillCompletesTheWaiter() throws Exception {
+        doThrow(new IllegalStateException("clickhouse down")).when(eventBatchWriter).write(anyList());
+        when(dlqEventProducer.sendEvents(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+
+        eventRepository.saveAll(List.of(event(), event()));
+
+        eventRepository.awaitFlush().get(1, TimeUnit.SECONDS);
+        verify(dlqEventProducer).sendEvents(anyList());
+    }
+
+    @Test
+    void batchLostByBothTheWriterAndTheDlqFailsItsWaiterButNotLaterOnes() throws Exception {
+        doThrow(new IllegalStateException("clickhouse down"))
+                .doNothing()
+                .when(eventBatchWriter).write(anyList());
+        when(dlqEventProducer.sendEvents(anyList()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+
+        eventRepository.saveAll(List.of(event(), event()));
+        CompletableFuture<Void> failed = eventRepository.awaitFlush();
+
+        assertThrows(ExecutionException.class, () -> failed.get(1, TimeUnit.SECONDS));
+
+        // a waiter registered right after the failure may still see it, since it could own some of the lost events
+        eventRepository.awaitFlush().handle((ignored, e) -> null).get(1, TimeUnit.SECONDS);
+        eventRepository.saveAll(List.of(event(), event()));
+        eventRepository.awaitFlush().get(1, TimeUnit.SECONDS);
+        verify(eventBatchWriter, timeout(1_000).times(2)).write(anyList());
+    }
+
+    @Test
+    void listenerDoesNotAcknowledgeABatchLostByBothTheWriterAndTheDlq() {
+        doThrow(new IllegalStateException("clickhouse down")).when(eventBatchWriter).write(anyList());
+        when(dlqEventProducer.sendEvents(anyList()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+        List<ConsumerRecord<String, EventProto.Event>> records = List.of(record(0), record(1));
+
+        new EventConsumerImpl(eventRepository).consume(records, acknowledgment);
+
+        verify(dlqEventProducer, timeout(1_000)).sendEvents(anyList());
+        verify(acknowledgment, after(200).never()).acknowledge();
+    }
+
+    private static ConsumerRecord<String, EventProto.Event> record(long offset) {
+        EventProto.Event event = EventProto.Event.newBuilder()
+                .setId(UUID.randomUUID().toString())
+                .setUserEvent(EventProto.UserEvent.newBuilder()
+                        .setAppId(UUID.randomUUID().toString())
+                        .setUserId(UUID.randomUUID().toString())
+                        .setSessionId(UUID.randomUUID().toString())
+                        .setAnonymousId(UUID.randomUUID().toString()))
+                .build();
+        return new ConsumerRecord<>("event", 0, offset, null, event);
+    }
+
+    @Test
+    void batchesAreInsertedConcurrentlyByTheWriterPool() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CountDownLatch releaseInserts = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            bothStarted.countDown();
+            releaseInserts.await();
+            return null;
+        }).when(eventBatchWriter).write(anyList());
+
+        // two batches of maxBatchSize
+        eventRepository.saveAll(List.of(event(), event(), event(), event()));
+
+        assertTrue(bothStarted.await(1, TimeUnit.SECONDS));
+        releaseInserts.countDown();
+        eventRepository.awaitFlush().get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void inFlightBatchesAreBoundedByMaxInFlightBatches() throws Exception {
+        eventRepository.stopFlushPipeline();
+        config.setMaxInFlightBatches(1);
+        eventRepository.startFlushPipeline();
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch releaseInserts = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            releaseInserts.await();
+            running.decrementAndGet();
+            return null;
+        }).when(eventBatchWriter).write(anyList());
+
+        eventRepository.saveAll(List.of(event(), event(), event(), event()));
+        verify(eventBatchWriter, timeout(1_000)).write(anyList());
+        // the coordinator holds the second batch back although a writer thread is idle
+        verify(eventBatchWriter, after(100).times(1)).write(anyList());
+
+        releaseInserts.countDown();
+        eventRepository.awaitFlush().get(1, TimeUnit.SECONDS);
+        verify(eventBatchWriter, times(2)).write(anyList());
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    void shutdownFlushesWhatIsLeftInTheBuffer() throws Exception {
+        // below every flush limit
+        eventRepository.saveAll(List.of(event()));
+        verify(eventBatchWriter, after(100).never()).write(anyList());
+
+        eventRepository.stopFlushPipeline();
+
+        verify(eventBatchWriter).write(anyList());
+        assertTrue(buffer.isEmpty());
+        // tearDown stops the pipeline again
+        eventRepository.startFlushPipeline();
+    }
+}
@@ -0,0 +1,154 @@
+package com.simpleAnalytics.EventConsumer.repository;
+
+import com.clickhouse.data.ClickHouseInputStream;
+import com.clickhouse.data.ClickHouseOutputStream;
+import com.clickhouse.data.format.BinaryStreamUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowBinaryEventBatchWriterTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final Instant INSTANT = Instant.parse("2024-03-05T10:15:30.123456789Z");
+
+    private static ClickHouseInputStream encode(String type, Object... values) throws IOException {
+        RowBinaryEventBatchWriter.ColumnEncoder encoder = RowBinaryEventBatchWriter.encoderFor(type);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ClickHouseOutputStream out = ClickHouseOutputStream.of(bytes)) {
+            for (Object value : values) {
+                encoder.write(out, value);
+            }
+        }
+        return ClickHouseInputStream.of(bytes.toByteArray());
+    }
+
+    private static LocalDateTime utc(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    @Test
+    void dateTime64WithMillisecondPrecisionRoundTrips() throws IOException {
+        ClickHouseInputStream in = encode("DateTime64(3)", Timestamp.from(INSTANT));
+
+        assertEquals(utc(INSTANT.truncatedTo(ChronoUnit.MILLIS)), BinaryStreamUtils.readDateTime64(in, 3, UTC));
+    }
+
+    @Test
+    void dateTime64WithNanosecondPrecisionKeepsSubMillisecondDigits() throws IOException {
+        ClickHouseInputStream in = encode("DateTime64(9, 'UTC')", Timestamp.from(INSTANT), Timestamp.from(INSTANT));
+
+        assertEquals(INSTANT.getEpochSecond() * 1_000_000_000L + INSTANT.getNano(), BinaryStreamUtils.readInt64(in));
+        assertEquals(utc(INSTANT), BinaryStreamUtils.readDateTime64(in, 9, UTC));
+    }
+
+    @Test
+    void dateTime64BeforeEpochRoundTrips() throws IOException {
+        Instant instant = Instant.parse("1969-12-31T23:59:59.250Z");
+        ClickHouseInputStream in = encode("DateTime64(3)", Timestamp.from(instant));
+
+        assertEquals(-750, BinaryStreamUtils.readInt64(in));
+    }
+
+    @Test
+    void dateTimeIsWrittenAsEpochSeconds() throws IOException {
+        ClickHouseInputStream in = encode("DateTime", Timestamp.from(INSTANT), null);
+
+        assertEquals(INSTANT.getEpochSecond(), BinaryStreamUtils.readUnsignedInt32(in));
+        assertEquals(0, BinaryStreamUtils.readUnsignedInt32(in));
+    }
+
+    @Test
+    void nullableWritesMarkerBeforeValue() throws IOException {
+        ClickHouseInputStream in = encode("Nullable(String)", null, "web");
+
+        assertTrue(BinaryStreamUtils.readNull(in));
+        assertFalse(BinaryStreamUtils.readNull(in));
+        assertEquals("web", in.readUnicodeString());
+    }
+
+    @Test
+    void lowCardinalityAndUuidUsePlainEncoding() throws IOException {
+        UUID id = UUID.randomUUID();
+
+        assertEquals("click", encode("LowCardinality(String)", "click").readUnicodeString());
+        assertEquals(id, BinaryStreamUtils.readUuid(encode("UUID", id)));
+        assertEquals(new UUID(0, 0), BinaryStreamUtils.readUuid(encode("UUID", (Object) null)));
+    }
+
+    @Test
+    void mapWritesSizeThenEntries() throws IOException {
+        Map<String, String> props = new LinkedHashMap<>();
+        props.put("plan", "pro");
+        props.put("country", "NL");
+        ClickHouseInputStream in = encode("Map(LowCardinality(String), String)", props, null);
+
+        assertEquals(2, in.readVarInt());
+        assertEquals("plan", in.readUnicodeString());
+        assertEquals("pro", in.readUnicodeString());
+        assertEquals("country", in.readUnicodeString());
+        assertEquals("NL", in.readUnicodeString());
+        assertEquals(0, in.readVarInt());
+    }
+
+    @Test
+    void mapLengthsAreCountedInBytesAndEntriesAsVarInt() throws IOException {
+        Map<String, String> props = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            props.put("key" + i, "value" + i);
+        }
+        props.put("city", "Zürich");
+        ClickHouseInputStream in = encode("Map(LowCardinality(String), String)", props);
+
+        // more than 127 entries takes two varint bytes
+        assertEquals(201, in.readVarInt());
+        for (int i = 0; i < 200; i++) {
+            assertEquals("key" + i, in.readUnicodeString());
+            assertEquals("value" + i, in.readUnicodeString());
+        }
+        assertEquals("city", in.readUnicodeString());
+        assertEquals(7, in.readVarInt());
+        assertEquals("Zürich", new String(in.readBytes(7), StandardCharsets.UTF_8));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void mapWithNestedValueTypeSplitsAtTheTopLevelComma() throws IOException {
+        Map<String, String> props = new LinkedHashMap<>();
+        props.put("plan", null);
+        ClickHouseInputStream in = encode("Map(LowCardinality(String), Nullable(String))", props);
+
+        assertEquals(1, in.readVarInt());
+        assertEquals("plan", in.readUnicodeString());
+        assertTrue(BinaryStreamUtils.readNull(in));
+    }
+
+    @Test
+    void enum8WritesDeclaredCodeAndRejectsUnknownValues() throws IOException {
+        String type = "Enum8('V1' = 1, 'V2' = 2)";
+
+        assertEquals(2, BinaryStreamUtils.readEnum8(encode(type, "V2")));
+        assertThrows(IOException.class, () -> encode(type, "V3"));
+    }
+
+    @Test
+    void unsupportedTypeIsRejected() {
+        assertThrows(IllegalStateException.class, () -> RowBinaryEventBatchWriter.encoderFor("Array(String)"));
+    }
+}
@@ -0,0 +1,108 @@
+package com.simpleAnalytics.EventConsumer.service;
+
+import com.simpleAnalytics.EventConsumer.config.BatchProcessingConfig;
+import com.simpleAnalytics.EventConsumer.entity.Event;
+import com.simpleAnalytics.EventConsumer.entity.EventBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlushPolicyTest {
+
+    private BatchProcessingConfig config;
+    private EventBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        config = new BatchProcessingConfig();
+        config.setBufferCapacity(64);
+        config.setMaxBufferSize(2);
+        config.setMaxBufferAgeMs(60_000);
+        config.setMinBatchSize(100);
+        config.setMaxBatchSize(500);
+        config.setTargetInsertLatencyMs(250);
+        buffer = new EventBuffer(config);
+    }
+
+    private static Event event() {
+        return Event.builder().Id(UUID.randomUUID()).build();
+    }
+
+    @Test
+    void emptyBufferNeverFlushes() {
+        config.setMaxBufferAgeMs(0);
+
+        assertFalse(new FlushPolicy(config).shouldFlush(buffer));
+    }
+
+    @Test
+    void flushesOnRowCount() {
+        FlushPolicy policy = new FlushPolicy(config);
+
+        buffer.add(event());
+        assertFalse(policy.shouldFlush(buffer));
+        buffer.add(event());
+        assertTrue(policy.shouldFlush(buffer));
+    }
+
+    @Test
+    void flushesOnBufferedBytes() {
+        config.setMaxBufferBytes(1);
+
+        buffer.add(event());
+
+        assertTrue(new FlushPolicy(config).shouldFlush(buffer));
+    }
+
+    @Test
+    void flushesOnAgeOfTheOldestEvent() throws InterruptedException {
+        config.setMaxBufferAgeMs(20);
+        FlushPolicy policy = new FlushPolicy(config);
+
+        buffer.add(event());
+        assertFalse(policy.shouldFlush(buffer));
+
+        Thread.sleep(50);
+        assertTrue(policy.shouldFlush(buffer));
+    }
+
+    @Test
+    void batchSizeFollowsTheSmoothedPerRowLatency() {
+        FlushPolicy policy = new FlushPolicy(config);
+        assertEquals(500, policy.batchSize());
+
+        // 1 ms per row, the first sample is taken as is: 250 ms / 1 ms
+        policy.recordInsert(500, 500);
+        assertEquals(250, policy.batchSize());
+
+        // a faster sample only moves the average by the smoothing factor: 0.2 * 0.2 + 0.8 * 1 = 0.84 ms per row
+        policy.recordInsert(250, 50);
+        assertEquals(297, policy.batchSize());
+    }
+
+    @Test
+    void batchSizeStaysWithinItsBounds() {
+        FlushPolicy slow = new FlushPolicy(config);
+        slow.recordInsert(100, 100_000);
+        assertEquals(100, slow.batchSize());
+
+        FlushPolicy fast = new FlushPolicy(config);
+        fast.recordInsert(500, 0);
+        assertEquals(500, fast.batchSize());
+    }
+
+    @Test
+    void fixedBatchSizeIgnoresInsertLatency() {
+        config.setAdaptiveBatchSize(false);
+        FlushPolicy policy = new FlushPolicy(config);
+
+        policy.recordInsert(500, 100_000);
+
+        assertEquals(500, policy.batchSize());
+    }
+}
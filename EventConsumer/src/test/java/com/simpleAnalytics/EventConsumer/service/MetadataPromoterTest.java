@@ -0,0 +1,75 @@
+package com.simpleAnalytics.EventConsumer.service;
+
+import com.simpleAnalytics.EventConsumer.config.MetadataPromotionConfig;
+import com.simpleAnalytics.EventConsumer.entity.UserEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetadataPromoterTest {
+
+    private static final UUID APP_ID = UUID.randomUUID();
+
+    private MetadataPromotionConfig config;
+    private MetadataPromoter promoter;
+
+    @BeforeEach
+    void setUp() {
+        config = new MetadataPromotionConfig();
+        promoter = new MetadataPromoter(config);
+    }
+
+    private static UserEvent event(UUID appId, Map<String, Object> metadata) {
+        return UserEvent.builder().appId(appId).metadata(metadata).build();
+    }
+
+    @Test
+    void onlyDefaultAndAppKeysArePromoted() {
+        config.setDefaultPromotedKeys(Set.of("plan"));
+        config.setPromotedKeys(Map.of(APP_ID, Set.of("country")));
+        Map<String, Object> metadata = Map.of("plan", "pro", "country", "NL", "page", "/home");
+
+        assertEquals(Map.of("plan", "pro", "country", "NL"), promoter.promote(event(APP_ID, metadata)));
+        // another app only gets the default keys
+        assertEquals(Map.of("plan", "pro"), promoter.promote(event(UUID.randomUUID(), metadata)));
+    }
+
+    @Test
+    void valuesAreWrittenAsText() {
+        config.setDefaultPromotedKeys(Set.of("seats", "ratio", "huge", "trial", "tags", "address", "missing"));
+        Map<String, Object> metadata = new HashMap<>();
+        // protobuf Struct numbers arrive as doubles
+        metadata.put("seats", 3.0);
+        metadata.put("ratio", 0.5);
+        metadata.put("huge", 1e20);
+        metadata.put("trial", true);
+        metadata.put("tags", List.of("a", "b"));
+        metadata.put("address", Map.of("city", "Delft"));
+        metadata.put("missing", null);
+
+        assertEquals(Map.of(
+                "seats", "3",
+                "ratio", "0.5",
+                "huge", "1.0E20",
+                "trial", "true",
+                "tags", "[\"a\",\"b\"]",
+                "address", "{\"city\":\"Delft\"}"), promoter.promote(event(APP_ID, metadata)));
+    }
+
+    @Test
+    void nothingIsPromotedWithoutKeysOrMetadata() {
+        assertTrue(promoter.promote(event(APP_ID, Map.of("plan", "pro"))).isEmpty());
+
+        config.setDefaultPromotedKeys(Set.of("plan"));
+        assertTrue(promoter.promote(event(APP_ID, null)).isEmpty());
+        assertTrue(promoter.promote(event(APP_ID, Map.of())).isEmpty());
+    }
+}
@@ -2,8 +2,13 @@ package com.simpleAnalytics.Gateway.MQ;
 
 import com.simpleAnalytics.protobuf.EventProto;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 public interface EventProducer {
     public void sendEvent(String topic, EventProto.Event event)  throws ExecutionException, InterruptedException;
+    public void sendEvents(String topic, List<EventProto.Event> events) throws ExecutionException, InterruptedException;
+    public CompletableFuture<Void> sendEventAsync(String topic, EventProto.Event event);
+    public CompletableFuture<Void> sendEventsAsync(String topic, List<EventProto.Event> events);
 }
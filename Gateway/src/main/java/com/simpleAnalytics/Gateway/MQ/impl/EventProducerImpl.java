@@ -2,14 +2,16 @@ package com.simpleAnalytics.Gateway.MQ.impl;
 
 
 import com.simpleAnalytics.Gateway.MQ.EventProducer;
-import com.simpleAnalytics.Gateway.entity.Event;
-import com.simpleAnalytics.Gateway.service.EventMapper;
+import com.simpleAnalytics.Gateway.config.KafkaPublishConfig;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 import com.simpleAnalytics.protobuf.EventProto;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 @Slf4j
@@ -17,9 +19,42 @@ import java.util.concurrent.ExecutionException;
 @RequiredArgsConstructor
 public class EventProducerImpl implements EventProducer {
     private final KafkaTemplate<String, EventProto.Event> eventKafkaTemplate;
+    private final KafkaPublishConfig kafkaPublishConfig;
+
     @Override
     public void sendEvent(String topic, EventProto.Event event) throws ExecutionException, InterruptedException {
-        eventKafkaTemplate.send(topic, event).get();
+        sendEventAsync(topic, event).get();
 //        log.info("Event pushed to Kafka topic={} -> {}", topic, event.getId());
     }
+
+    @Override
+    public void sendEvents(String topic, List<EventProto.Event> events) throws ExecutionException, InterruptedException {
+        sendEventsAsync(topic, events).get();
+    }
+
+    @Override
+    public CompletableFuture<Void> sendEventAsync(String topic, EventProto.Event event) {
+        return awaitAck(eventKafkaTemplate.send(topic, event));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendEventsAsync(String topic, List<EventProto.Event> events) {
+        // hand every record to the producer first so they share broker round trips, then wait once
+        CompletableFuture<?>[] sends = events.stream()
+                .map(event -> awaitAck(eventKafkaTemplate.send(topic, event)))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(sends);
+    }
+
+    private CompletableFuture<Void> awaitAck(CompletableFuture<SendResult<String, EventProto.Event>> send) {
+        if (kafkaPublishConfig.getAckMode() == KafkaPublishConfig.AckMode.FIRE_AND_FORGET) {
+            send.whenComplete((result, e) -> {
+                if (e != null) {
+                    log.error("Error while sending event", e);
+                }
+            });
+            return CompletableFuture.completedFuture(null);
+        }
+        return send.thenApply(result -> null);
+    }
 }
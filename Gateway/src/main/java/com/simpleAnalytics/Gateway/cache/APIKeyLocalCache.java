@@ -0,0 +1,14 @@
+package com.simpleAnalytics.Gateway.cache;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+public interface APIKeyLocalCache {
+    /**
+     * Returns the application id for the api key, calling the loader on a miss.
+     * An empty result means the key is unknown and is cached as such for a shorter period.
+     */
+    public Optional<UUID> getApplicationId(UUID apikey, Function<UUID, Optional<UUID>> loader);
+    public void invalidate(UUID apikey);
+}
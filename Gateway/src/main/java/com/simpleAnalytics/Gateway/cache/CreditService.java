@@ -3,13 +3,24 @@ package com.simpleAnalytics.Gateway.cache;
 import com.simpleAnalytics.Gateway.entity.CreditInfo;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 public interface CreditService {
     public long getCreditLimit(UUID appId);
     public CreditInfo getCreditInfo(UUID appId) throws ExecutionException, InterruptedException;
+    public CompletableFuture<CreditInfo> getCreditInfoAsync(UUID appId);
     public long getDetlaCreditUtilization(UUID appId);
     public long getCreditUtilization(UUID appId);
     public void cacheCreditLimit(UUID appId, long creditLimit);
     public void cacheCreditUtilization(UUID appId,long creditUtilization);
+    /**
+     * Atomically reserves up to {@code requested} credits, returning how many were granted (0 when exhausted).
+     */
+    public CompletableFuture<Long> reserveCredits(UUID appId, long requested);
+    public CompletableFuture<Void> releaseCredits(UUID appId, long credits);
+    /**
+     * Atomically charges exactly {@code credits}, returning the remaining balance or -1 when the limit would be exceeded.
+     */
+    public CompletableFuture<Long> checkAndIncrementCredits(UUID appId, long credits);
 }
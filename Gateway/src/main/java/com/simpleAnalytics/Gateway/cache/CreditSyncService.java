@@ -3,8 +3,15 @@ package com.simpleAnalytics.Gateway.cache;
 import com.simpleAnalytics.Gateway.exception.InsufficientCreditsException;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 public interface CreditSyncService {
     public void checkAndIncrementCreditUtilization(UUID appId) throws InsufficientCreditsException, ExecutionException, InterruptedException;
+    public void checkAndIncrementCreditUtilization(UUID appId, long credits) throws InsufficientCreditsException, ExecutionException, InterruptedException;
+    public CompletableFuture<Void> checkAndIncrementCreditUtilizationAsync(UUID appId, long credits);
+    /**
+     * Gives back credits charged for events that were not accepted after all.
+     */
+    public CompletableFuture<Void> refundCreditUtilizationAsync(UUID appId, long credits);
 }
@@ -0,0 +1,55 @@
+package com.simpleAnalytics.Gateway.cache.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.simpleAnalytics.Gateway.cache.APIKeyLocalCache;
+import com.simpleAnalytics.Gateway.config.APIKeyCacheConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+@Slf4j
+@Service
+public class APIKeyLocalCacheImpl implements APIKeyLocalCache {
+
+    private final Cache<UUID, Optional<UUID>> cache;
+
+    public APIKeyLocalCacheImpl(APIKeyCacheConfig config) {
+        long ttlNanos = config.getTtl().toNanos();
+        long negativeTtlNanos = config.getNegativeTtl().toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfter(new Expiry<UUID, Optional<UUID>>() {
+                    @Override
+                    public long expireAfterCreate(UUID key, Optional<UUID> value, long currentTime) {
+                        return value.isPresent() ? ttlNanos : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(UUID key, Optional<UUID> value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(UUID key, Optional<UUID> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public Optional<UUID> getApplicationId(UUID apikey, Function<UUID, Optional<UUID>> loader) {
+        return cache.get(apikey, loader);
+    }
+
+    @Override
+    public void invalidate(UUID apikey) {
+        log.info("Invalidating cached api key {}", apikey);
+        cache.invalidate(apikey);
+    }
+}
@@ -3,7 +3,8 @@ package com.simpleAnalytics.Gateway.cache.impl;
 import com.simpleAnalytics.Gateway.cache.CreditService;
 import com.simpleAnalytics.Gateway.entity.CreditInfo;
 import com.simpleAnalytics.Gateway.rpc.CreditInfoService;
-import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.api.async.RedisAsyncCommands;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -12,7 +13,9 @@ import org.springframework.stereotype.Service;
 
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 //TODO: refactor to consolidate rpc calls and caching to a single method
 @Slf4j
 @RequiredArgsConstructor
@@ -21,6 +24,53 @@ public class CreditServiceImpl implements CreditService {
     private final RedisTemplate<String, Long> redisTemplate;
     private final RedisAsyncCommands<String, Long> redisAsync;
     private final CreditInfoService creditInfoService;
+    private final ExecutorService creditLookupExecutor;
+
+    private static final long MISSING_KEYS = -1;
+    private static final long REJECTED = -2;
+
+    // KEYS: limit, utilization, delta utilization. ARGV: requested credits
+    private static final String RESERVE_CREDITS_SCRIPT = """
+            local limit = redis.call('GET', KEYS[1])
+            local used = redis.call('GET', KEYS[2])
+            if not limit or not used then
+                return -1
+            end
+            local granted = math.min(tonumber(limit) - tonumber(used), tonumber(ARGV[1]))
+            if granted <= 0 then
+                return 0
+            end
+            redis.call('INCRBY', KEYS[2], granted)
+            redis.call('INCRBY', KEYS[3], granted)
+            return granted
+            """;
+
+    // KEYS: limit, utilization, delta utilization. ARGV: credits to charge. All or nothing
+    private static final String CHECK_AND_INCREMENT_SCRIPT = """
+            local limit = redis.call('GET', KEYS[1])
+            local used = redis.call('GET', KEYS[2])
+            if not limit or not used then
+                return -1
+            end
+            local credits = tonumber(ARGV[1])
+            local remaining = tonumber(limit) - tonumber(used) - credits
+            if remaining < 0 then
+                return -2
+            end
+            redis.call('INCRBY', KEYS[2], credits)
+            redis.call('INCRBY', KEYS[3], credits)
+            return remaining
+            """;
+
+    // KEYS: utilization, delta utilization. ARGV: credits to hand back
+    private static final String RELEASE_CREDITS_SCRIPT = """
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return 0
+            end
+            redis.call('DECRBY', KEYS[1], ARGV[1])
+            redis.call('DECRBY', KEYS[2], ARGV[1])
+            return 1
+            """;
 
     //TODO add cache invalidation/TTL
     @Override
@@ -39,19 +89,28 @@ public class CreditServiceImpl implements CreditService {
 
     @Override
     public CreditInfo getCreditInfo(UUID appId) throws ExecutionException, InterruptedException {
-        RedisFuture<Long> creditUtilF =  redisAsync.get("app:creditUtilization:" + appId);
-        RedisFuture<Long> creditLimitF = redisAsync.get("app:creditLimit:" + appId);
-
-        Long creditUtilization = creditUtilF.get();
-        Long creditLimit = creditLimitF.get();
-        if(creditLimit == null || creditUtilization == null) {
-            CreditInfo creditInfo = creditInfoService.getCreditInfo(appId);
-            cacheCreditLimit(appId, creditInfo.creditLimit());
-            cacheCreditUtilization(appId, creditInfo.creditsUsed());
-            return creditInfo;
-        }
-        return new CreditInfo(creditUtilization, creditLimit);
+        return getCreditInfoAsync(appId).get();
+    }
 
+    @Override
+    public CompletableFuture<CreditInfo> getCreditInfoAsync(UUID appId) {
+        CompletableFuture<Long> creditUtilF = redisAsync.get("app:creditUtilization:" + appId).toCompletableFuture();
+        CompletableFuture<Long> creditLimitF = redisAsync.get("app:creditLimit:" + appId).toCompletableFuture();
+
+        return creditLimitF.thenCombine(creditUtilF, (creditLimit, creditUtilization) ->
+                        creditLimit == null || creditUtilization == null ? null : new CreditInfo(creditLimit, creditUtilization))
+                .thenCompose(creditInfo -> {
+                    if (creditInfo != null) {
+                        return CompletableFuture.completedFuture(creditInfo);
+                    }
+                    // the gRPC stub is blocking, keep it off the Redis event loop
+                    return CompletableFuture.supplyAsync(() -> {
+                        CreditInfo fetched = creditInfoService.getCreditInfo(appId);
+                        cacheCreditLimit(appId, fetched.creditLimit());
+                        cacheCreditUtilization(appId, fetched.creditsUsed());
+                        return fetched;
+                    }, creditLookupExecutor);
+                });
     }
 
     @Override
@@ -86,4 +145,55 @@ public class CreditServiceImpl implements CreditService {
     public void cacheCreditUtilization(UUID appId, long creditUtilization) {
         redisAsync.set("app:creditUtilization:" + appId, creditUtilization);
     }
+
+    @Override
+    public CompletableFuture<Long> reserveCredits(UUID appId, long requested) {
+        return runReserve(appId, requested).thenCompose(granted -> {
+            if (granted != MISSING_KEYS) {
+                return CompletableFuture.completedFuture(granted);
+            }
+            // keys were evicted or never cached, load them from tenet-service and try once more
+            return getCreditInfoAsync(appId)
+                    .thenCompose(creditInfo -> runReserve(appId, requested))
+                    .thenApply(retried -> Math.max(retried, 0));
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> checkAndIncrementCredits(UUID appId, long credits) {
+        return runCheckAndIncrement(appId, credits)
+                .thenCompose(result -> result != MISSING_KEYS
+                        ? CompletableFuture.completedFuture(result)
+                        : getCreditInfoAsync(appId).thenCompose(creditInfo -> runCheckAndIncrement(appId, credits)))
+                .thenApply(result -> result < 0 ? -1L : result);
+    }
+
+    @Override
+    public CompletableFuture<Void> releaseCredits(UUID appId, long credits) {
+        String[] keys = {"app:creditUtilization:" + appId, "app:deltaCreditUtilization:" + appId};
+        return runScript(RELEASE_CREDITS_SCRIPT, keys, credits).thenAccept(ignored -> {});
+    }
+
+    private CompletableFuture<Long> runCheckAndIncrement(UUID appId, long credits) {
+        String[] keys = {"app:creditLimit:" + appId, "app:creditUtilization:" + appId, "app:deltaCreditUtilization:" + appId};
+        return runScript(CHECK_AND_INCREMENT_SCRIPT, keys, credits);
+    }
+
+    private CompletableFuture<Long> runReserve(UUID appId, long requested) {
+        String[] keys = {"app:creditLimit:" + appId, "app:creditUtilization:" + appId, "app:deltaCreditUtilization:" + appId};
+        return runScript(RESERVE_CREDITS_SCRIPT, keys, requested);
+    }
+
+    private CompletableFuture<Long> runScript(String script, String[] keys, Long... args) {
+        CompletableFuture<Long> result = redisAsync.<Long>evalsha(redisAsync.digest(script), ScriptOutputType.INTEGER, keys, args)
+                .toCompletableFuture();
+        // fall back to EVAL once when the script cache was flushed, which also loads it again
+        return result.exceptionallyCompose(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RedisNoScriptException) {
+                return redisAsync.<Long>eval(script, ScriptOutputType.INTEGER, keys, args).toCompletableFuture();
+            }
+            return CompletableFuture.failedFuture(cause);
+        });
+    }
 }
@@ -2,41 +2,172 @@ package com.simpleAnalytics.Gateway.cache.impl;
 
 import com.simpleAnalytics.Gateway.cache.CreditService;
 import com.simpleAnalytics.Gateway.cache.CreditSyncService;
-import com.simpleAnalytics.Gateway.entity.CreditInfo;
+import com.simpleAnalytics.Gateway.config.CreditLeaseConfig;
 import com.simpleAnalytics.Gateway.exception.InsufficientCreditsException;
-import io.lettuce.core.api.async.RedisAsyncCommands;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
-
+/**
+ * Serves credits from a block leased out of Redis, so only lease renewals go over the network.
+ * Leased credits are already counted as utilized; whatever is left is handed back on shutdown.
+ */
+@Slf4j
 @RequiredArgsConstructor
 @Service
 public class CreditSyncServiceImpl implements CreditSyncService {
 
     private final CreditService creditService;
-    private final RedisAsyncCommands<String, Long> redisAsync;
+    private final CreditLeaseConfig creditLeaseConfig;
+    private final Map<UUID, Lease> leases = new ConcurrentHashMap<>();
+
+    private static final class Lease {
+        private final AtomicLong remaining = new AtomicLong();
+        private CompletableFuture<Long> renewal = CompletableFuture.completedFuture(0L);
+        // System.nanoTime() until which Redis is known to have no credits left for the app
+        private volatile long exhaustedUntil;
+        private volatile boolean exhausted;
+
+        private boolean isExhausted() {
+            return exhausted && System.nanoTime() - exhaustedUntil < 0;
+        }
+
+        private boolean tryTake(long credits) {
+            long current;
+            do {
+                current = remaining.get();
+                if (current < credits) {
+                    return false;
+                }
+            } while (!remaining.compareAndSet(current, current - credits));
+            return true;
+        }
+    }
 
     @Override
     public void checkAndIncrementCreditUtilization(UUID appId) throws InsufficientCreditsException, ExecutionException, InterruptedException {
+        checkAndIncrementCreditUtilization(appId, 1);
+    }
+
+    @Override
+    public void checkAndIncrementCreditUtilization(UUID appId, long credits) throws InsufficientCreditsException, ExecutionException, InterruptedException {
+        try {
+            checkAndIncrementCreditUtilizationAsync(appId, credits).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InsufficientCreditsException insufficientCredits) {
+                throw insufficientCredits;
+            }
+            throw e;
+        }
+    }
 
-        CreditInfo creditInfo = creditService.getCreditInfo(appId);
+    @Override
+    public CompletableFuture<Void> checkAndIncrementCreditUtilizationAsync(UUID appId, long credits) {
+        // requests larger than a block would only drain the lease, charge them directly
+        if (!creditLeaseConfig.isEnabled() || credits > creditLeaseConfig.getBlockSize()) {
+            return chargeDirectly(appId, credits);
+        }
+
+        Lease lease = leases.computeIfAbsent(appId, id -> new Lease());
 
-        if (creditInfo.creditLimit() > creditInfo.creditsUsed()) {
-            incrementCredit(appId.toString());
-        } else {
-            throw new InsufficientCreditsException(appId);
+        if (lease.tryTake(credits)) {
+            if (lease.remaining.get() < creditLeaseConfig.getRenewThreshold() && !lease.isExhausted()) {
+                renew(appId, lease, creditLeaseConfig.getBlockSize());
+            }
+            return CompletableFuture.completedFuture(null);
         }
+
+        if (lease.isExhausted()) {
+            return CompletableFuture.failedFuture(new InsufficientCreditsException(appId));
+        }
+
+        long blockSize = creditLeaseConfig.getBlockSize();
+        return renew(appId, lease, blockSize)
+                .thenCompose(granted -> {
+                    if (lease.tryTake(credits)) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    if (granted < blockSize) {
+                        // Redis handed out all it had left, so the app really is out of credits
+                        return CompletableFuture.failedFuture(new InsufficientCreditsException(appId));
+                    }
+                    // a burst larger than the block drained the shared renewal before this caller
+                    return chargeDirectly(appId, credits);
+                });
     }
 
+    private CompletableFuture<Void> chargeDirectly(UUID appId, long credits) {
+        return creditService.checkAndIncrementCredits(appId, credits)
+                .thenAccept(remaining -> {
+                    if (remaining < 0) {
+                        throw new CompletionException(new InsufficientCreditsException(appId));
+                    }
+                });
+    }
 
-    private void incrementCredit(String appId) {
-        redisAsync.incr("app:deltaCreditUtilization:" + appId);
-        redisAsync.incr("app:creditUtilization:" + appId);
+    @Override
+    public CompletableFuture<Void> refundCreditUtilizationAsync(UUID appId, long credits) {
+        if (!creditLeaseConfig.isEnabled()) {
+            return creditService.releaseCredits(appId, credits);
+        }
+        // refunded credits stay counted as utilized and are served from the lease first
+        leases.computeIfAbsent(appId, id -> new Lease()).remaining.addAndGet(credits);
+        return CompletableFuture.completedFuture(null);
     }
 
+    /**
+     * Starts a lease renewal unless one is already running, in which case callers share it.
+     */
+    private CompletableFuture<Long> renew(UUID appId, Lease lease, long requested) {
+        synchronized (lease) {
+            if (!lease.renewal.isDone()) {
+                return lease.renewal;
+            }
+            lease.renewal = creditService.reserveCredits(appId, requested)
+                    .thenApply(granted -> {
+                        if (granted > 0) {
+                            lease.remaining.addAndGet(granted);
+                        }
+                        if (granted < requested) {
+                            lease.exhaustedUntil = System.nanoTime()
+                                    + TimeUnit.MILLISECONDS.toNanos(creditLeaseConfig.getExhaustedBackoffMs());
+                            lease.exhausted = true;
+                        } else {
+                            lease.exhausted = false;
+                        }
+                        return granted;
+                    });
+            return lease.renewal;
+        }
+    }
 
+    @PreDestroy
+    public void releaseLeases() {
+        leases.forEach((appId, lease) -> {
+            long unused = lease.remaining.getAndSet(0);
+            if (unused <= 0) {
+                return;
+            }
+            try {
+                creditService.releaseCredits(appId, unused).get(5, TimeUnit.SECONDS);
+                log.info("Returned {} unused credits for app {}", unused, appId);
+            } catch (ExecutionException | TimeoutException e) {
+                log.error("Failed to return {} unused credits for app {}", unused, appId, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        });
+    }
 }
@@ -0,0 +1,33 @@
+package com.simpleAnalytics.Gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "gateway.apikey-cache")
+public class APIKeyCacheConfig {
+
+    /**
+     * Maximum number of api keys held on heap
+     */
+    private long maxSize = 100_000;
+
+    /**
+     * How long a resolved api key stays cached locally
+     */
+    private Duration ttl = Duration.ofMinutes(5);
+
+    /**
+     * How long an unknown api key stays cached locally
+     */
+    private Duration negativeTtl = Duration.ofSeconds(30);
+
+    /**
+     * Redis channel TenetService publishes revoked api keys on
+     */
+    private String invalidationChannel = "apikey:invalidate";
+}
@@ -0,0 +1,31 @@
+package com.simpleAnalytics.Gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "gateway.credit-lease")
+public class CreditLeaseConfig {
+
+    /**
+     * When disabled every request is charged with a single atomic check-and-increment in Redis
+     */
+    private boolean enabled = true;
+
+    /**
+     * Number of credits reserved from Redis per lease
+     */
+    private long blockSize = 1000;
+
+    /**
+     * Remaining credits at which a lease is renewed in the background
+     */
+    private long renewThreshold = 200;
+
+    /**
+     * How long an app whose credits ran out is rejected locally before Redis is asked again
+     */
+    private long exhaustedBackoffMs = 1000;
+}
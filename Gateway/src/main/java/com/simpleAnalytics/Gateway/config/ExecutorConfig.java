@@ -0,0 +1,71 @@
+package com.simpleAnalytics.Gateway.config;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executors for work that may block and must stay off the Redis event loop
+ */
+@Slf4j
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "gateway.executor")
+public class ExecutorConfig {
+
+    /**
+     * Threads handing events to the Kafka producer, which blocks on metadata fetches or a full buffer
+     */
+    private int publishThreads = 8;
+
+    /**
+     * Publishes queued before new requests are rejected
+     */
+    private int publishQueueCapacity = 10000;
+
+    /**
+     * Threads running blocking gRPC credit lookups
+     */
+    private int creditLookupThreads = 4;
+
+    /**
+     * Credit lookups queued before new ones are rejected
+     */
+    private int creditLookupQueueCapacity = 1000;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService eventPublishExecutor() {
+        log.info("Event publish executor configured with {} threads", publishThreads);
+        return boundedPool("event-publish", publishThreads, publishQueueCapacity);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService creditLookupExecutor() {
+        return boundedPool("credit-lookup", creditLookupThreads, creditLookupQueueCapacity);
+    }
+
+    private static ExecutorService boundedPool(String prefix, int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads, threads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // fail the request instead of queueing without bound while Kafka or TenetService is slow
+                new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,55 @@
+package com.simpleAnalytics.Gateway.config;
+
+import lombok.Data;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "gateway.kafka")
+public class KafkaPublishConfig {
+
+    /**
+     * Acknowledgement semantics used when publishing events
+     */
+    private AckMode ackMode = AckMode.ALL;
+
+    public enum AckMode {
+        /**
+         * acks=0, the request completes as soon as the record is handed to the producer
+         */
+        FIRE_AND_FORGET("0"),
+        /**
+         * acks=1, the partition leader has written the record
+         */
+        LEADER("1"),
+        /**
+         * acks=all, every in-sync replica has written the record
+         */
+        ALL("all");
+
+        private final String acks;
+
+        AckMode(String acks) {
+            this.acks = acks;
+        }
+
+        public String getAcks() {
+            return acks;
+        }
+    }
+
+    @Bean
+    public DefaultKafkaProducerFactoryCustomizer ackModeCustomizer() {
+        // idempotence requires acks=all, so it has to be switched off for the weaker modes
+        return factory -> factory.updateConfigs(Map.of(
+                ProducerConfig.ACKS_CONFIG, ackMode.getAcks(),
+                ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, ackMode == AckMode.ALL
+        ));
+    }
+}
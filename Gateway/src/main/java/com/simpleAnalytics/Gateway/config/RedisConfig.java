@@ -1,5 +1,6 @@
 package com.simpleAnalytics.Gateway.config;
 
+import com.simpleAnalytics.Gateway.cache.APIKeyLocalCache;
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.api.async.RedisAsyncCommands;
@@ -8,9 +9,14 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericToStringSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
 @Configuration
 public class RedisConfig {
 
@@ -51,4 +57,17 @@ public class RedisConfig {
         template.afterPropertiesSet();
         return template;
     }
+
+    @Bean
+    public RedisMessageListenerContainer apiKeyInvalidationListener(RedisConnectionFactory connectionFactory,
+                                                                    APIKeyLocalCache apiKeyLocalCache,
+                                                                    APIKeyCacheConfig apiKeyCacheConfig) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        // TenetService publishes the revoked api key so every gateway instance drops its local copy
+        container.addMessageListener(
+                (message, pattern) -> apiKeyLocalCache.invalidate(UUID.fromString(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(apiKeyCacheConfig.getInvalidationChannel()));
+        return container;
+    }
 }
@@ -1,10 +1,13 @@
 package com.simpleAnalytics.Gateway.controller;
 
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.simpleAnalytics.Gateway.entity.Context;
 import com.simpleAnalytics.Gateway.entity.UserEvent;
 import com.simpleAnalytics.Gateway.exception.InsufficientCreditsException;
 import com.simpleAnalytics.Gateway.exception.InvalidAPIKeyException;
+import com.simpleAnalytics.Gateway.exception.InvalidUserEvent;
 import com.simpleAnalytics.Gateway.service.AuthenticationService;
 import com.simpleAnalytics.Gateway.service.EventPipelineService;
 import jakarta.servlet.http.HttpServletRequest;
@@ -12,11 +15,18 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ServerWebExchange;
 
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 @RestController
@@ -25,28 +35,74 @@ import java.util.UUID;
 public class EventController {
     private final EventPipelineService eventPipelineService;
     private final AuthenticationService authenticationService;
+    private final ObjectMapper objectMapper;
 
 
 
 
     @PostMapping
-    public ResponseEntity<String> postEvent(HttpServletRequest request, @RequestBody UserEvent event, @RequestHeader("X-Auth") UUID apikey) {
+    public CompletableFuture<ResponseEntity<String>> postEvent(HttpServletRequest request, @RequestBody UserEvent event, @RequestHeader("X-Auth") UUID apikey) {
 
         try {
             Context context = (Context) request.getAttribute("context");
 //            log.info("Context: {}", context);
             authenticationService.authenticate(apikey, event.getAppId());
-            eventPipelineService.processEvent(event, apikey, context);
-        } catch (InsufficientCreditsException e) {
-            return ResponseEntity.badRequest().body(e.getMessage());
+            // the servlet thread is released here, the response completes once the pipeline does
+            return eventPipelineService.processEvent(event, apikey, context)
+                    .thenApply(ignored -> new ResponseEntity<String>(HttpStatus.OK))
+                    .exceptionally(e -> toErrorResponse(e, "Error processing event"));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(toErrorResponse(e, "Error processing event"));
         }
-        catch(InvalidAPIKeyException e){
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
-        }
-        catch (Exception e) {
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<String>> postEvents(HttpServletRequest request, @RequestBody List<UserEvent> events, @RequestHeader("X-Auth") UUID apikey) {
+        return processBatch(request, events, apikey);
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public CompletableFuture<ResponseEntity<String>> postEventStream(HttpServletRequest request, @RequestHeader("X-Auth") UUID apikey) {
+        List<UserEvent> events;
+        try (MappingIterator<UserEvent> iterator = objectMapper.readerFor(UserEvent.class).readValues(request.getInputStream())) {
+            events = iterator.readAll();
+        } catch (IOException e) {
             log.error(e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error processing event");
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Malformed event stream"));
+        }
+        return processBatch(request, events, apikey);
+    }
+
+    private CompletableFuture<ResponseEntity<String>> processBatch(HttpServletRequest request, List<UserEvent> events, UUID apikey) {
+        try {
+            Context context = (Context) request.getAttribute("context");
+            // authenticate once per application instead of once per event
+            Set<UUID> appIds = new LinkedHashSet<>();
+            for (UserEvent event : events) {
+                if (event.getAppId() != null) {
+                    appIds.add(event.getAppId());
+                }
+            }
+            for (UUID appId : appIds) {
+                authenticationService.authenticate(apikey, appId);
+            }
+            return eventPipelineService.processEvents(events, apikey, context)
+                    .thenApply(ignored -> new ResponseEntity<String>(HttpStatus.OK))
+                    .exceptionally(e -> toErrorResponse(e, "Error processing events"));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(toErrorResponse(e, "Error processing events"));
+        }
+    }
+
+    private ResponseEntity<String> toErrorResponse(Throwable e, String fallbackMessage) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof InsufficientCreditsException || cause instanceof InvalidUserEvent) {
+            return ResponseEntity.badRequest().body(cause.getMessage());
+        }
+        if (cause instanceof InvalidAPIKeyException) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(cause.getMessage());
         }
-        return new ResponseEntity<>(HttpStatus.OK);
+        log.error(cause.getMessage(), cause);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(fallbackMessage);
     }
 }
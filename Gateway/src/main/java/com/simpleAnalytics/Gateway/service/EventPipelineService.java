@@ -3,9 +3,13 @@ package com.simpleAnalytics.Gateway.service;
 import com.simpleAnalytics.Gateway.entity.Context;
 import com.simpleAnalytics.Gateway.entity.UserEvent;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public interface EventPipelineService {
 
-    void processEvent(UserEvent event, UUID apiKey, Context context) throws Exception;
+    CompletableFuture<Void> processEvent(UserEvent event, UUID apiKey, Context context);
+
+    CompletableFuture<Void> processEvents(List<UserEvent> events, UUID apiKey, Context context);
 }
@@ -1,5 +1,6 @@
 package com.simpleAnalytics.Gateway.service.impl;
 
+import com.simpleAnalytics.Gateway.cache.APIKeyLocalCache;
 import com.simpleAnalytics.Gateway.cache.APIKeyValidityCheck;
 import com.simpleAnalytics.Gateway.exception.InvalidAPIKeyException;
 import com.simpleAnalytics.Gateway.rpc.APIKeyService;
@@ -8,6 +9,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.Optional;
 import java.util.UUID;
 
 
@@ -18,32 +20,37 @@ public class AuthenticationSerivceImpl implements AuthenticationService {
 
     private final APIKeyService apiKeyService;
     private final APIKeyValidityCheck apiKeyValidityCheck;
+    private final APIKeyLocalCache apiKeyLocalCache;
 
     @Override
     public void authenticate(UUID apiKey, UUID applicationId) throws InvalidAPIKeyException {
 
 //        log.info("API Key Validity Check Started");
-        String appIdFromCache = apiKeyValidityCheck.getCachedAPIKeyApplicationId(apiKey);
+        Optional<UUID> resolvedApplicationId = apiKeyLocalCache.getApplicationId(apiKey, this::resolveApplicationId);
+
+        if (resolvedApplicationId.isEmpty() || !resolvedApplicationId.get().equals(applicationId)) {
+            log.info("API Key Validity Check Failed");
+            throw new InvalidAPIKeyException(apiKey.toString());
+        }
+    }
 
-        if (appIdFromCache == null) {
-            log.info("Cache miss");
-            //If cache is null, get from tenet-service
-            String appIdFromTenetService = apiKeyService.getApplicationIdForAPIKey(apiKey);
-            UUID applicationIdFromTenetService = UUID.fromString(appIdFromTenetService);
-            if (!applicationIdFromTenetService.equals(applicationId)) {
-                log.info("API Key Validity Check Failed");
-                throw new InvalidAPIKeyException(apiKey.toString());
-            }
-            log.info("Caching apikey");
-            //cache the verified value if not already present
-            apiKeyValidityCheck.cacheAPIKeyApplicationId(apiKey, applicationId);
-        } else {
+    private Optional<UUID> resolveApplicationId(UUID apiKey) {
+        String appIdFromCache = apiKeyValidityCheck.getCachedAPIKeyApplicationId(apiKey);
+        if (appIdFromCache != null) {
 //            log.info("Cache hit");
-            UUID applicationIdFromCache = UUID.fromString(appIdFromCache);
-            if (!applicationIdFromCache.equals(applicationId)) {
-                log.info("API Key Validity Check Failed");
-                throw new InvalidAPIKeyException(apiKey.toString());
-            }
+            return Optional.of(UUID.fromString(appIdFromCache));
+        }
+
+        log.info("Cache miss");
+        //If cache is null, get from tenet-service
+        String appIdFromTenetService = apiKeyService.getApplicationIdForAPIKey(apiKey);
+        if (appIdFromTenetService == null || appIdFromTenetService.isEmpty()) {
+            //unknown keys are only cached locally, and for a shorter period
+            return Optional.empty();
         }
+        UUID applicationIdFromTenetService = UUID.fromString(appIdFromTenetService);
+        log.info("Caching apikey");
+        apiKeyValidityCheck.cacheAPIKeyApplicationId(apiKey, applicationIdFromTenetService);
+        return Optional.of(applicationIdFromTenetService);
     }
 }
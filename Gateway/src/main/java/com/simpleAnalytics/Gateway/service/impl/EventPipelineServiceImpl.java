@@ -6,19 +6,21 @@ import com.simpleAnalytics.Gateway.cache.CreditSyncService;
 import com.simpleAnalytics.Gateway.entity.Context;
 import com.simpleAnalytics.Gateway.entity.SchemaVersion;
 import com.simpleAnalytics.Gateway.entity.UserEvent;
-import com.simpleAnalytics.Gateway.exception.InsufficientCreditsException;
-import com.simpleAnalytics.Gateway.exception.InvalidAPIKeyException;
 import com.simpleAnalytics.Gateway.exception.InvalidUserEvent;
 import com.simpleAnalytics.Gateway.service.EventMapper;
 import com.simpleAnalytics.Gateway.service.EventPipelineService;
 import com.simpleAnalytics.protobuf.EventProto;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 @Slf4j
 @Service
@@ -28,24 +30,81 @@ public class EventPipelineServiceImpl implements EventPipelineService {
     private final EventProducer eventProducer;
     private final SchemaVersion CURRENT_SCHEMA_VERSION = SchemaVersion.V1_0_0;
     private final CreditSyncService creditSyncService;
+    // KafkaProducer.send can block, so it never runs on the thread that completed the reservation
+    private final ExecutorService eventPublishExecutor;
+    private static final int MAX_BATCH_SIZE = 1000;
 
-    @Retryable(retryFor = RuntimeException.class)
-    public void processEvent(UserEvent newUserEvent, UUID apiKey, Context context) throws InvalidUserEvent, InsufficientCreditsException, InvalidAPIKeyException,RuntimeException {
-        //throws invaliduserevent exception
-        validateUserEvent(newUserEvent);
+    @Override
+    public CompletableFuture<Void> processEvent(UserEvent newUserEvent, UUID apiKey, Context context) {
+        try {
+            validateUserEvent(newUserEvent);
+        } catch (InvalidUserEvent e) {
+            return CompletableFuture.failedFuture(e);
+        }
 
         EventProto.Event event = EventMapper.toProtoEvent(UUID.randomUUID(), CURRENT_SCHEMA_VERSION, newUserEvent, context);
 //        log.info("Processing event {}", event.getId());
 
-        //send to kafka
+        //reserve credits, then send to kafka
+        CompletableFuture<Void> reservation =
+                creditSyncService.checkAndIncrementCreditUtilizationAsync(newUserEvent.getAppId(), 1);
+        return reservation
+                .thenComposeAsync(ignored -> eventProducer.sendEventAsync("event", event), eventPublishExecutor)
+                .whenComplete((sent, e) -> {
+                    // also covers a publish rejected by a saturated executor
+                    if (e != null && !reservation.isCompletedExceptionally()) {
+                        refund(newUserEvent.getAppId(), 1);
+                    }
+                });
+    }
+
+    @Override
+    public CompletableFuture<Void> processEvents(List<UserEvent> newUserEvents, UUID apiKey, Context context) {
+        if (newUserEvents.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // validate the whole batch before reserving credits or publishing anything
+        Map<UUID, Long> creditsPerApp = new LinkedHashMap<>();
+        List<EventProto.Event> events = new ArrayList<>(newUserEvents.size());
         try {
-            eventProducer.sendEvent("event", event);
-            creditSyncService.checkAndIncrementCreditUtilization(newUserEvent.getAppId());
-        } catch (ExecutionException | InterruptedException e) {
-            log.error("Error while sending event", e);
-            throw new RuntimeException(e);
+            if (newUserEvents.size() > MAX_BATCH_SIZE) {
+                throw new InvalidUserEvent("Batch size exceeds " + MAX_BATCH_SIZE + " events");
+            }
+            for (UserEvent newUserEvent : newUserEvents) {
+                validateUserEvent(newUserEvent);
+                creditsPerApp.merge(newUserEvent.getAppId(), 1L, Long::sum);
+                events.add(EventMapper.toProtoEvent(UUID.randomUUID(), CURRENT_SCHEMA_VERSION, newUserEvent, context));
+            }
+        } catch (InvalidUserEvent e) {
+            return CompletableFuture.failedFuture(e);
         }
 
+        Map<UUID, CompletableFuture<Void>> reservations = new LinkedHashMap<>();
+        creditsPerApp.forEach((appId, credits) ->
+                reservations.put(appId, creditSyncService.checkAndIncrementCreditUtilizationAsync(appId, credits)));
+        // allOf waits for every reservation, so on failure all granted ones are known
+        return CompletableFuture.allOf(reservations.values().toArray(CompletableFuture[]::new))
+                .thenComposeAsync(ignored -> eventProducer.sendEventsAsync("event", events), eventPublishExecutor)
+                .whenComplete((ignored, e) -> {
+                    if (e == null) {
+                        return;
+                    }
+                    // the batch is all or nothing: hand back what the other apps were charged
+                    reservations.forEach((appId, reservation) -> {
+                        if (!reservation.isCompletedExceptionally()) {
+                            refund(appId, creditsPerApp.get(appId));
+                        }
+                    });
+                });
+    }
+
+    private void refund(UUID appId, long credits) {
+        creditSyncService.refundCreditUtilizationAsync(appId, credits)
+                .exceptionally(e -> {
+                    log.error("Failed to refund {} credits for app {}", credits, appId, e);
+                    return null;
+                });
     }
 
     private static void validateUserEvent(UserEvent newUserEvent) throws InvalidUserEvent{
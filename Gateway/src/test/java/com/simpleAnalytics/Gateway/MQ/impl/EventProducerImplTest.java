@@ -0,0 +1,92 @@
+package com.simpleAnalytics.Gateway.MQ.impl;
+
+import com.simpleAnalytics.Gateway.config.KafkaPublishConfig;
+import com.simpleAnalytics.protobuf.EventProto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EventProducerImplTest {
+
+    @Mock
+    private KafkaTemplate<String, EventProto.Event> eventKafkaTemplate;
+
+    private KafkaPublishConfig kafkaPublishConfig;
+    private EventProducerImpl eventProducer;
+
+    @BeforeEach
+    void setUp() {
+        kafkaPublishConfig = new KafkaPublishConfig();
+        eventProducer = new EventProducerImpl(eventKafkaTemplate, kafkaPublishConfig);
+    }
+
+    @Test
+    void acknowledgedModeCompletesOnlyOnceTheBrokerAcks() {
+        CompletableFuture<SendResult<String, EventProto.Event>> send = new CompletableFuture<>();
+        when(eventKafkaTemplate.send(eq("event"), any(EventProto.Event.class))).thenReturn(send);
+
+        CompletableFuture<Void> result = eventProducer.sendEventAsync("event", EventProto.Event.getDefaultInstance());
+
+        assertFalse(result.isDone());
+        send.complete(null);
+        assertTrue(result.isDone());
+    }
+
+    @Test
+    void acknowledgedModePropagatesSendFailure() {
+        when(eventKafkaTemplate.send(eq("event"), any(EventProto.Event.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+
+        CompletableFuture<Void> result = eventProducer.sendEventAsync("event", EventProto.Event.getDefaultInstance());
+
+        assertThrows(CompletionException.class, result::join);
+    }
+
+    @Test
+    void fireAndForgetCompletesBeforeTheAck() {
+        kafkaPublishConfig.setAckMode(KafkaPublishConfig.AckMode.FIRE_AND_FORGET);
+        CompletableFuture<SendResult<String, EventProto.Event>> send = new CompletableFuture<>();
+        when(eventKafkaTemplate.send(eq("event"), any(EventProto.Event.class))).thenReturn(send);
+
+        CompletableFuture<Void> result = eventProducer.sendEventAsync("event", EventProto.Event.getDefaultInstance());
+
+        assertTrue(result.isDone());
+        // a late failure is only logged
+        send.completeExceptionally(new IllegalStateException("broker down"));
+        result.join();
+    }
+
+    @Test
+    void batchHandsEveryRecordToTheProducerBeforeWaiting() {
+        CompletableFuture<SendResult<String, EventProto.Event>> first = new CompletableFuture<>();
+        CompletableFuture<SendResult<String, EventProto.Event>> second = new CompletableFuture<>();
+        when(eventKafkaTemplate.send(eq("event"), any(EventProto.Event.class))).thenReturn(first, second);
+
+        CompletableFuture<Void> result = eventProducer.sendEventsAsync("event",
+                List.of(EventProto.Event.getDefaultInstance(), EventProto.Event.getDefaultInstance()));
+
+        verify(eventKafkaTemplate, times(2)).send(eq("event"), any(EventProto.Event.class));
+        first.complete(null);
+        assertFalse(result.isDone());
+        second.completeExceptionally(new IllegalStateException("broker down"));
+        assertThrows(CompletionException.class, result::join);
+    }
+}
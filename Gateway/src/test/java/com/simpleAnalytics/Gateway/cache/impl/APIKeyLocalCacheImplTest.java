@@ -0,0 +1,69 @@
+package com.simpleAnalytics.Gateway.cache.impl;
+
+import com.simpleAnalytics.Gateway.config.APIKeyCacheConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class APIKeyLocalCacheImplTest {
+
+    private static final UUID API_KEY = UUID.randomUUID();
+    private static final UUID APP_ID = UUID.randomUUID();
+
+    private APIKeyLocalCacheImpl cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        APIKeyCacheConfig config = new APIKeyCacheConfig();
+        config.setTtl(Duration.ofMinutes(5));
+        config.setNegativeTtl(Duration.ofMillis(50));
+        cache = new APIKeyLocalCacheImpl(config);
+        loads = new AtomicInteger();
+    }
+
+    private Function<UUID, Optional<UUID>> loader(Optional<UUID> result) {
+        return apikey -> {
+            loads.incrementAndGet();
+            return result;
+        };
+    }
+
+    @Test
+    void resolvedKeyIsLoadedOnce() {
+        assertEquals(Optional.of(APP_ID), cache.getApplicationId(API_KEY, loader(Optional.of(APP_ID))));
+        assertEquals(Optional.of(APP_ID), cache.getApplicationId(API_KEY, loader(Optional.of(APP_ID))));
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void invalidatedKeyIsLoadedAgain() {
+        cache.getApplicationId(API_KEY, loader(Optional.of(APP_ID)));
+
+        cache.invalidate(API_KEY);
+
+        assertEquals(Optional.empty(), cache.getApplicationId(API_KEY, loader(Optional.empty())));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void unknownKeyIsCachedForTheShorterNegativeTtl() throws InterruptedException {
+        assertEquals(Optional.empty(), cache.getApplicationId(API_KEY, loader(Optional.empty())));
+        assertEquals(Optional.empty(), cache.getApplicationId(API_KEY, loader(Optional.empty())));
+        assertEquals(1, loads.get());
+
+        Thread.sleep(100);
+
+        // the key was created in the meantime
+        assertEquals(Optional.of(APP_ID), cache.getApplicationId(API_KEY, loader(Optional.of(APP_ID))));
+        assertEquals(2, loads.get());
+    }
+}
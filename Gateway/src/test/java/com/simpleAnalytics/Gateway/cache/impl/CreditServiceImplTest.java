@@ -0,0 +1,146 @@
+package com.simpleAnalytics.Gateway.cache.impl;
+
+import com.simpleAnalytics.Gateway.config.LongCodec;
+import com.simpleAnalytics.Gateway.entity.CreditInfo;
+import com.simpleAnalytics.Gateway.rpc.CreditInfoService;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the credit Lua scripts against a real Redis; skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class CreditServiceImplTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static RedisClient redisClient;
+    private static StatefulRedisConnection<String, Long> connection;
+    private static RedisAsyncCommands<String, Long> redis;
+    private static ExecutorService creditLookupExecutor;
+
+    private final CreditInfoService creditInfoService = mock(CreditInfoService.class);
+    private CreditServiceImpl creditService;
+    private UUID appId;
+
+    @BeforeAll
+    static void connect() {
+        redisClient = RedisClient.create("redis://" + REDIS.getHost() + ":" + REDIS.getMappedPort(6379));
+        connection = redisClient.connect(new LongCodec());
+        redis = connection.async();
+        creditLookupExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connection.close();
+        redisClient.shutdown();
+        creditLookupExecutor.shutdown();
+    }
+
+    @BeforeEach
+    void setUp() {
+        // the script paths only use the async commands and the gRPC fallback
+        creditService = new CreditServiceImpl(null, redis, creditInfoService, creditLookupExecutor);
+        appId = UUID.randomUUID();
+    }
+
+    @Test
+    void reserveGrantsWholeBlockAndCountsItAsUsed() throws Exception {
+        seed(1_000, 100);
+
+        assertEquals(500L, creditService.reserveCredits(appId, 500).get());
+
+        assertEquals(600L, value("app:creditUtilization:"));
+        assertEquals(500L, value("app:deltaCreditUtilization:"));
+    }
+
+    @Test
+    void reserveGrantsOnlyWhatIsLeft() throws Exception {
+        seed(1_000, 900);
+
+        assertEquals(100L, creditService.reserveCredits(appId, 500).get());
+        assertEquals(0L, creditService.reserveCredits(appId, 500).get());
+
+        assertEquals(1_000L, value("app:creditUtilization:"));
+    }
+
+    @Test
+    void reserveLoadsMissingKeysFromTenetService() throws Exception {
+        when(creditInfoService.getCreditInfo(appId)).thenReturn(new CreditInfo(1_000, 250));
+
+        assertEquals(500L, creditService.reserveCredits(appId, 500).get());
+
+        assertEquals(1_000L, value("app:creditLimit:"));
+        assertEquals(750L, value("app:creditUtilization:"));
+    }
+
+    @Test
+    void checkAndIncrementIsAllOrNothing() throws Exception {
+        seed(1_000, 990);
+
+        assertEquals(-1L, creditService.checkAndIncrementCredits(appId, 20).get());
+        assertEquals(990L, value("app:creditUtilization:"));
+
+        assertEquals(0L, creditService.checkAndIncrementCredits(appId, 10).get());
+        assertEquals(1_000L, value("app:creditUtilization:"));
+        assertEquals(10L, value("app:deltaCreditUtilization:"));
+    }
+
+    @Test
+    void releaseHandsCreditsBack() throws Exception {
+        seed(1_000, 100);
+        creditService.reserveCredits(appId, 300).get();
+
+        creditService.releaseCredits(appId, 200).get();
+
+        assertEquals(200L, value("app:creditUtilization:"));
+        assertEquals(100L, value("app:deltaCreditUtilization:"));
+    }
+
+    @Test
+    void releaseIgnoresEvictedKeys() throws Exception {
+        creditService.releaseCredits(appId, 200).get();
+
+        assertEquals(0L, (long) redis.exists("app:creditUtilization:" + appId).get());
+    }
+
+    @Test
+    void scriptsAreReloadedAfterScriptFlush() throws Exception {
+        seed(1_000, 0);
+        creditService.reserveCredits(appId, 10).get();
+
+        redis.scriptFlush().get();
+
+        assertEquals(10L, creditService.reserveCredits(appId, 10).get());
+    }
+
+    private void seed(long limit, long used) throws Exception {
+        redis.set("app:creditLimit:" + appId, limit).get();
+        redis.set("app:creditUtilization:" + appId, used).get();
+    }
+
+    private long value(String prefix) throws Exception {
+        Long value = redis.get(prefix + appId).get();
+        return value == null ? 0 : value;
+    }
+}
@@ -0,0 +1,103 @@
+package com.simpleAnalytics.Gateway.cache.impl;
+
+import com.simpleAnalytics.Gateway.cache.CreditService;
+import com.simpleAnalytics.Gateway.config.CreditLeaseConfig;
+import com.simpleAnalytics.Gateway.exception.InsufficientCreditsException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CreditSyncServiceImplTest {
+
+    private static final UUID APP_ID = UUID.randomUUID();
+    private static final long BLOCK_SIZE = 10;
+
+    @Mock
+    private CreditService creditService;
+
+    private CreditSyncServiceImpl creditSyncService;
+
+    @BeforeEach
+    void setUp() {
+        CreditLeaseConfig config = new CreditLeaseConfig();
+        config.setBlockSize(BLOCK_SIZE);
+        config.setRenewThreshold(0);
+        config.setExhaustedBackoffMs(60_000);
+        creditSyncService = new CreditSyncServiceImpl(creditService, config);
+    }
+
+    @Test
+    void burstLargerThanBlockFallsBackToDirectCharge() {
+        CompletableFuture<Long> renewal = new CompletableFuture<>();
+        when(creditService.reserveCredits(APP_ID, BLOCK_SIZE)).thenReturn(renewal);
+        when(creditService.checkAndIncrementCredits(eq(APP_ID), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(1_000L));
+
+        // every caller misses the empty lease and waits on the same renewal
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            calls.add(creditSyncService.checkAndIncrementCreditUtilizationAsync(APP_ID, 1));
+        }
+        renewal.complete(BLOCK_SIZE);
+
+        calls.forEach(CompletableFuture::join);
+        verify(creditService, times(1)).reserveCredits(APP_ID, BLOCK_SIZE);
+        verify(creditService, times(15)).checkAndIncrementCredits(APP_ID, 1);
+    }
+
+    @Test
+    void exhaustedAppIsRejectedWithoutAskingRedisAgain() {
+        when(creditService.reserveCredits(APP_ID, BLOCK_SIZE)).thenReturn(CompletableFuture.completedFuture(0L));
+
+        for (int i = 0; i < 100; i++) {
+            CompletableFuture<Void> call = creditSyncService.checkAndIncrementCreditUtilizationAsync(APP_ID, 1);
+            CompletionException e = assertThrows(CompletionException.class, call::join);
+            assertInstanceOf(InsufficientCreditsException.class, e.getCause());
+        }
+
+        verify(creditService, times(1)).reserveCredits(APP_ID, BLOCK_SIZE);
+        verify(creditService, never()).checkAndIncrementCredits(eq(APP_ID), anyLong());
+    }
+
+    @Test
+    void shortGrantIsServedThenRejected() {
+        when(creditService.reserveCredits(APP_ID, BLOCK_SIZE)).thenReturn(CompletableFuture.completedFuture(3L));
+
+        for (int i = 0; i < 3; i++) {
+            creditSyncService.checkAndIncrementCreditUtilizationAsync(APP_ID, 1).join();
+        }
+        CompletableFuture<Void> call = creditSyncService.checkAndIncrementCreditUtilizationAsync(APP_ID, 1);
+
+        CompletionException e = assertThrows(CompletionException.class, call::join);
+        assertInstanceOf(InsufficientCreditsException.class, e.getCause());
+        verify(creditService, times(1)).reserveCredits(APP_ID, BLOCK_SIZE);
+        verify(creditService, never()).checkAndIncrementCredits(eq(APP_ID), anyLong());
+    }
+
+    @Test
+    void refundedCreditsAreServedFromTheLease() {
+        creditSyncService.refundCreditUtilizationAsync(APP_ID, 2).join();
+
+        creditSyncService.checkAndIncrementCreditUtilizationAsync(APP_ID, 2).join();
+
+        verify(creditService, never()).reserveCredits(eq(APP_ID), anyLong());
+    }
+}
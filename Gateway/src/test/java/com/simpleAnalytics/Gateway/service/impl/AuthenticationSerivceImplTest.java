@@ -0,0 +1,81 @@
+package com.simpleAnalytics.Gateway.service.impl;
+
+import com.simpleAnalytics.Gateway.cache.APIKeyValidityCheck;
+import com.simpleAnalytics.Gateway.cache.impl.APIKeyLocalCacheImpl;
+import com.simpleAnalytics.Gateway.config.APIKeyCacheConfig;
+import com.simpleAnalytics.Gateway.exception.InvalidAPIKeyException;
+import com.simpleAnalytics.Gateway.rpc.APIKeyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AuthenticationSerivceImplTest {
+
+    private static final UUID API_KEY = UUID.randomUUID();
+    private static final UUID APP_ID = UUID.randomUUID();
+
+    @Mock
+    private APIKeyService apiKeyService;
+
+    @Mock
+    private APIKeyValidityCheck apiKeyValidityCheck;
+
+    private AuthenticationSerivceImpl authenticationService;
+
+    @BeforeEach
+    void setUp() {
+        authenticationService = new AuthenticationSerivceImpl(apiKeyService, apiKeyValidityCheck,
+                new APIKeyLocalCacheImpl(new APIKeyCacheConfig()));
+    }
+
+    @Test
+    void redisHitSkipsTenetServiceAndLaterCallsStayLocal() {
+        when(apiKeyValidityCheck.getCachedAPIKeyApplicationId(API_KEY)).thenReturn(APP_ID.toString());
+
+        assertDoesNotThrow(() -> authenticationService.authenticate(API_KEY, APP_ID));
+        assertDoesNotThrow(() -> authenticationService.authenticate(API_KEY, APP_ID));
+
+        verify(apiKeyValidityCheck, times(1)).getCachedAPIKeyApplicationId(API_KEY);
+        verify(apiKeyService, never()).getApplicationIdForAPIKey(any());
+    }
+
+    @Test
+    void redisMissResolvesThroughTenetServiceAndFillsRedis() {
+        when(apiKeyService.getApplicationIdForAPIKey(API_KEY)).thenReturn(APP_ID.toString());
+
+        assertDoesNotThrow(() -> authenticationService.authenticate(API_KEY, APP_ID));
+
+        verify(apiKeyValidityCheck).cacheAPIKeyApplicationId(API_KEY, APP_ID);
+    }
+
+    @Test
+    void unknownKeyIsRejectedAndCachedOnlyLocally() {
+        when(apiKeyService.getApplicationIdForAPIKey(API_KEY)).thenReturn("");
+
+        assertThrows(InvalidAPIKeyException.class, () -> authenticationService.authenticate(API_KEY, APP_ID));
+        assertThrows(InvalidAPIKeyException.class, () -> authenticationService.authenticate(API_KEY, APP_ID));
+
+        verify(apiKeyService, times(1)).getApplicationIdForAPIKey(API_KEY);
+        verify(apiKeyValidityCheck, never()).cacheAPIKeyApplicationId(any(), any());
+    }
+
+    @Test
+    void keyOfAnotherApplicationIsRejected() {
+        when(apiKeyValidityCheck.getCachedAPIKeyApplicationId(API_KEY)).thenReturn(APP_ID.toString());
+
+        assertThrows(InvalidAPIKeyException.class, () -> authenticationService.authenticate(API_KEY, UUID.randomUUID()));
+    }
+}
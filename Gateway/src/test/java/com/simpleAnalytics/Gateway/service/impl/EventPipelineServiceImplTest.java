@@ -0,0 +1,168 @@
+package com.simpleAnalytics.Gateway.service.impl;
+
+import com.simpleAnalytics.Gateway.MQ.EventProducer;
+import com.simpleAnalytics.Gateway.cache.CreditSyncService;
+import com.simpleAnalytics.Gateway.entity.Context;
+import com.simpleAnalytics.Gateway.entity.UserEvent;
+import com.simpleAnalytics.Gateway.exception.InsufficientCreditsException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EventPipelineServiceImplTest {
+
+    private static final UUID APP_A = UUID.randomUUID();
+    private static final UUID APP_B = UUID.randomUUID();
+
+    @Mock
+    private EventProducer eventProducer;
+
+    @Mock
+    private CreditSyncService creditSyncService;
+
+    private ExecutorService eventPublishExecutor;
+    private EventPipelineServiceImpl eventPipelineService;
+
+    @BeforeEach
+    void setUp() {
+        eventPublishExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "event-publish-test"));
+        eventPipelineService = new EventPipelineServiceImpl(eventProducer, creditSyncService, eventPublishExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventPublishExecutor.shutdownNow();
+    }
+
+    @Test
+    void batchRefundsOtherAppsWhenOneReservationFails() {
+        when(creditSyncService.checkAndIncrementCreditUtilizationAsync(APP_A, 2))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(creditSyncService.checkAndIncrementCreditUtilizationAsync(APP_B, 1))
+                .thenReturn(CompletableFuture.failedFuture(new InsufficientCreditsException(APP_B)));
+        when(creditSyncService.refundCreditUtilizationAsync(any(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        CompletableFuture<Void> result = eventPipelineService.processEvents(
+                List.of(event(APP_A), event(APP_B), event(APP_A)), UUID.randomUUID(), new Context());
+
+        assertThrows(CompletionException.class, result::join);
+        verify(eventProducer, never()).sendEventsAsync(any(), anyList());
+        verify(creditSyncService).refundCreditUtilizationAsync(APP_A, 2);
+        verify(creditSyncService, never()).refundCreditUtilizationAsync(eq(APP_B), anyLong());
+    }
+
+    @Test
+    void batchRefundsEveryAppWhenPublishFails() {
+        when(creditSyncService.checkAndIncrementCreditUtilizationAsync(any(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(eventProducer.sendEventsAsync(eq("event"), anyList()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+        when(creditSyncService.refundCreditUtilizationAsync(any(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        CompletableFuture<Void> result = eventPipelineService.processEvents(
+                List.of(event(APP_A), event(APP_B)), UUID.randomUUID(), new Context());
+
+        assertThrows(CompletionException.class, result::join);
+        verify(creditSyncService).refundCreditUtilizationAsync(APP_A, 1);
+        verify(creditSyncService).refundCreditUtilizationAsync(APP_B, 1);
+    }
+
+    @Test
+    void batchKeepsCreditsWhenPublished() {
+        when(creditSyncService.checkAndIncrementCreditUtilizationAsync(any(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(eventProducer.sendEventsAsync(eq("event"), anyList()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        eventPipelineService.processEvents(List.of(event(APP_A), event(APP_B)), UUID.randomUUID(), new Context())
+                .join();
+
+        verify(creditSyncService, never()).refundCreditUtilizationAsync(any(), anyLong());
+    }
+
+    @Test
+    void singleEventIsRefundedWhenPublishFails() {
+        when(creditSyncService.checkAndIncrementCreditUtilizationAsync(APP_A, 1))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(eventProducer.sendEventAsync(eq("event"), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+        when(creditSyncService.refundCreditUtilizationAsync(any(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        CompletableFuture<Void> result = eventPipelineService.processEvent(event(APP_A), UUID.randomUUID(), new Context());
+
+        assertThrows(CompletionException.class, result::join);
+        verify(creditSyncService).refundCreditUtilizationAsync(APP_A, 1);
+    }
+
+    @Test
+    void publishRunsOnThePublishExecutorNotTheReservingThread() {
+        // stands in for the Redis event loop completing the reservation
+        CompletableFuture<Void> reservation = new CompletableFuture<>();
+        when(creditSyncService.checkAndIncrementCreditUtilizationAsync(APP_A, 1)).thenReturn(reservation);
+        AtomicReference<String> publishThread = new AtomicReference<>();
+        when(eventProducer.sendEventAsync(eq("event"), any())).thenAnswer(invocation -> {
+            publishThread.set(Thread.currentThread().getName());
+            return CompletableFuture.completedFuture(null);
+        });
+
+        CompletableFuture<Void> result = eventPipelineService.processEvent(event(APP_A), UUID.randomUUID(), new Context());
+        reservation.complete(null);
+        result.join();
+
+        assertEquals("event-publish-test", publishThread.get());
+    }
+
+    @Test
+    void publishRejectedBySaturatedExecutorIsRefunded() {
+        eventPublishExecutor.shutdown();
+        when(creditSyncService.checkAndIncrementCreditUtilizationAsync(any(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(creditSyncService.refundCreditUtilizationAsync(any(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        CompletableFuture<Void> single = eventPipelineService.processEvent(event(APP_A), UUID.randomUUID(), new Context());
+        CompletableFuture<Void> batch = eventPipelineService.processEvents(
+                List.of(event(APP_B), event(APP_B)), UUID.randomUUID(), new Context());
+
+        CompletionException singleError = assertThrows(CompletionException.class, single::join);
+        assertInstanceOf(RejectedExecutionException.class, singleError.getCause());
+        assertThrows(CompletionException.class, batch::join);
+        verify(creditSyncService).refundCreditUtilizationAsync(APP_A, 1);
+        verify(creditSyncService).refundCreditUtilizationAsync(APP_B, 2);
+        verify(eventProducer, never()).sendEventAsync(any(), any());
+    }
+
+    private static UserEvent event(UUID appId) {
+        return new UserEvent(appId, UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+                new Timestamp(System.currentTimeMillis()), "page_view", "web", Map.of());
+    }
+}
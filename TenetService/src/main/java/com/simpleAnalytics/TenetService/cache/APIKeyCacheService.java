@@ -0,0 +1,7 @@
+package com.simpleAnalytics.TenetService.cache;
+
+import java.util.UUID;
+
+public interface APIKeyCacheService {
+    public void invalidateAPIKey(UUID apiKey);
+}
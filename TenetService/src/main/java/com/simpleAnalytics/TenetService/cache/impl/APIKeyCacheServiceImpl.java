@@ -0,0 +1,27 @@
+package com.simpleAnalytics.TenetService.cache.impl;
+
+import com.simpleAnalytics.TenetService.cache.APIKeyCacheService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class APIKeyCacheServiceImpl implements APIKeyCacheService {
+    private static final String INVALIDATION_CHANNEL = "apikey:invalidate";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Override
+    public void invalidateAPIKey(UUID apiKey) {
+        // drop the shared entry first so gateways reloading after the message cannot read it back
+        stringRedisTemplate.delete("apikey:" + apiKey);
+        stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, apiKey.toString());
+        log.info("Published invalidation for api key {}", apiKey);
+    }
+}
@@ -32,7 +32,8 @@ public class CreditSyncServiceImpl implements CreditSyncService {
         try (Cursor<String> cursor = redisTemplate.scan(options)) {
             cursor.forEachRemaining(key -> {
                 Long delta = redisTemplate.opsForValue().get(key);
-                if (delta != null && delta > 0) {
+                // gateways hand back unused leased credits, which can leave a negative delta
+                if (delta != null && delta != 0) {
                     UUID appId = UUID.fromString(key.split(":")[2]);
                     try {
 //                        log.info("Saving credits to database for appId: {}", appId);
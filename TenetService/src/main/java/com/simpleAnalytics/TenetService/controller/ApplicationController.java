@@ -4,6 +4,7 @@ import com.simpleAnalytics.TenetService.dto.APIKeyDTO;
 import com.simpleAnalytics.TenetService.dto.ApplicationDTO;
 import com.simpleAnalytics.TenetService.entity.Application;
 import com.simpleAnalytics.TenetService.exception.ApplicationNotFoundException;
+import com.simpleAnalytics.TenetService.service.APIKeyService;
 import com.simpleAnalytics.TenetService.service.ApplicationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,6 +23,7 @@ import java.util.stream.Collectors;
 public class ApplicationController {
 
     private final ApplicationService applicationService;
+    private final APIKeyService apiKeyService;
 
     @PostMapping("/tenet/{tenetId}")
     public ResponseEntity<UUID> createApplication(@PathVariable UUID tenetId, @RequestBody Application application) {
@@ -106,4 +108,19 @@ public class ApplicationController {
         }
     }
 
+    @DeleteMapping("/{id}/apikeys/{apiKeyId}")
+    public ResponseEntity<Void> revokeApiKey(@PathVariable UUID id, @PathVariable UUID apiKeyId) {
+        try {
+            if (!apiKeyService.getApplicationIdForAPIKey(apiKeyId).map(id::equals).orElse(false)) {
+                return ResponseEntity.notFound().build();
+            }
+            apiKeyService.deleteAPIKey(apiKeyId);
+            log.info("Revoked API key {} for application {}", apiKeyId, id);
+            return ResponseEntity.noContent().build();
+        } catch (Exception e) {
+            log.error("Error revoking API key {} for application {}: {}", apiKeyId, id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
 }
@@ -26,7 +26,7 @@ public class APIKeyValidationServiceImpl extends TenetServiceGrpc.TenetServiceIm
 
         Optional<UUID> applicationId = apiKeyService.getApplicationIdForAPIKey(UUID.fromString(request.getApikey()));
         TenetProto.APIKeyValidationResponse response = TenetProto.APIKeyValidationResponse.newBuilder()
-                .setApplicationId(applicationId.map(UUID::toString).orElse(null))
+                .setApplicationId(applicationId.map(UUID::toString).orElse(""))
                 .build();
         responseObserver.onNext(response);
         responseObserver.onCompleted();
@@ -1,5 +1,6 @@
 package com.simpleAnalytics.TenetService.service.impl;
 
+import com.simpleAnalytics.TenetService.cache.APIKeyCacheService;
 import com.simpleAnalytics.TenetService.entity.APIKey;
 import com.simpleAnalytics.TenetService.repository.APIKeyRepository;
 import com.simpleAnalytics.TenetService.service.APIKeyService;
@@ -15,6 +16,7 @@ import java.util.UUID;
 public class APIKeyServiceImpl implements APIKeyService {
 
     private final APIKeyRepository apiKeyRepository;
+    private final APIKeyCacheService apiKeyCacheService;
 
     @Override
     public APIKey createAPIKey(UUID appId, String APIKeyName) {
@@ -28,7 +30,8 @@ public class APIKeyServiceImpl implements APIKeyService {
 
     @Override
     public void deleteAPIKey(UUID id) {
-
+        apiKeyRepository.deleteById(id);
+        apiKeyCacheService.invalidateAPIKey(id);
     }
 
     @Override